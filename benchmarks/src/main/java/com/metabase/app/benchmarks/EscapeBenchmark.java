@@ -0,0 +1,73 @@
+package com.metabase.app.benchmarks;
+
+import com.metabase.app.Utils;
+import com.metabase.app.variables.SQLStringEscaper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass SQLStringEscaper with the two replaceAll calls SQLVariable used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EscapeBenchmark {
+
+    private static final int STRING_COUNT = 1000;
+
+    // Percentage of the strings that contain a character to escape
+    @Param({"0", "10", "100"})
+    public int escapedPercentage;
+
+    @Param({"POSTGRESQL", "MY_SQL"})
+    public Utils.SQLTranspilerType dialect;
+
+    private String[] strings;
+    private StringBuilder buffer;
+
+    @Setup
+    public void setUp() {
+        this.strings = new String[STRING_COUNT];
+        for (int i = 0; i < STRING_COUNT; i++) {
+            this.strings[i] = i % 100 < this.escapedPercentage
+                    ? "O'Brien \"" + i + "\""
+                    : "customer-name-" + i;
+        }
+        this.buffer = new StringBuilder(1 << 16);
+    }
+
+    @Benchmark
+    public int replaceAll() {
+        this.buffer.setLength(0);
+        for (String s : this.strings) {
+            s = s.replaceAll("'", "\\\\'");
+            s = s.replaceAll("\"", "\\\\\"");
+            this.buffer.append(String.format("'%s'", s)).append(", ");
+        }
+        return this.buffer.length();
+    }
+
+    @Benchmark
+    public int singlePass() {
+        this.buffer.setLength(0);
+        for (String s : this.strings) {
+            SQLStringEscaper.appendStringLiteral(this.buffer, s, this.dialect);
+            this.buffer.append(", ");
+        }
+        return this.buffer.length();
+    }
+}
@@ -0,0 +1,53 @@
+package com.metabase.app.benchmarks;
+
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a query for every dialect: three separate walks against a single walk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiDialectBenchmark {
+
+    @Param({"SIMPLE", "WIDE_IN", "DEEP_NESTING", "LITERAL_HEAVY"})
+    public Queries query;
+
+    private SQLTranspiler transpiler;
+
+    @Setup
+    public void setUp() {
+        this.transpiler = new SQLTranspiler(Queries.fieldMap(), this.query.argsMap());
+    }
+
+    @Benchmark
+    public void separateWalks(Blackhole blackhole) {
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            blackhole.consume(this.transpiler.generateSQL(type));
+        }
+    }
+
+    @Benchmark
+    public Map<Utils.SQLTranspilerType, String> singleWalk() {
+        return this.transpiler.generateSQL(Utils.SQLTranspilerType.values());
+    }
+}
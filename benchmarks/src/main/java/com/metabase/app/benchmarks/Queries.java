@@ -0,0 +1,86 @@
+package com.metabase.app.benchmarks;
+
+import com.metabase.app.Utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Query shapes used by the benchmarks, built the same way Main and the tests build them.
+ */
+public enum Queries {
+    SIMPLE {
+        @Override
+        Object where() {
+            return new Object[]{"=", new Object[]{"field", 2}, "cam"};
+        }
+    },
+    WIDE_IN {
+        @Override
+        Object where() {
+            Object[] ids = new Object[IN_LIST_SIZE + 2];
+            ids[0] = "=";
+            ids[1] = new Object[]{"field", 1};
+            for (int i = 0; i < IN_LIST_SIZE; i++) {
+                ids[i + 2] = i * 7;
+            }
+            Object[] names = new Object[IN_LIST_SIZE + 2];
+            names[0] = "!=";
+            names[1] = new Object[]{"field", 2};
+            for (int i = 0; i < IN_LIST_SIZE; i++) {
+                names[i + 2] = "customer-" + i;
+            }
+            return new Object[]{Utils.AND_OP, ids, names};
+        }
+    },
+    DEEP_NESTING {
+        @Override
+        Object where() {
+            Object node = new Object[]{"not-empty", new Object[]{"field", 3}};
+            for (int level = 0; level < NESTING_DEPTH; level++) {
+                node = new Object[]{
+                        level % 2 == 0 ? Utils.OR_OP : Utils.AND_OP,
+                        node,
+                        new Object[]{">", new Object[]{"field", 4}, level}
+                };
+            }
+            return node;
+        }
+    },
+    LITERAL_HEAVY {
+        @Override
+        Object where() {
+            Object[] filter = new Object[LITERAL_COUNT + 1];
+            filter[0] = Utils.OR_OP;
+            for (int i = 0; i < LITERAL_COUNT; i++) {
+                filter[i + 1] = i % 2 == 0
+                        ? new Object[]{"=", new Object[]{"field", 2}, "O'Brien \"" + i + "\""}
+                        : new Object[]{"<", new Object[]{"field", 4}, i + 0.5};
+            }
+            return filter;
+        }
+    };
+
+    static final int IN_LIST_SIZE = 1000;
+    static final int NESTING_DEPTH = 30;
+    static final int LITERAL_COUNT = 100;
+
+    abstract Object where();
+
+    Map<String, Object> argsMap() {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, this.where());
+        argsMap.put(Utils.LIMIT_CLAUSE, 10);
+        return argsMap;
+    }
+
+    static Map<Integer, String> fieldMap() {
+        Map<Integer, String> fieldMap = new HashMap<>();
+        fieldMap.put(1, "id");
+        fieldMap.put(2, "name");
+        fieldMap.put(3, "date_joined");
+        fieldMap.put(4, "age");
+        fieldMap.put(5, "update-at");
+        return fieldMap;
+    }
+}
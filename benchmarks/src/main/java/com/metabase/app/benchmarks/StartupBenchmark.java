@@ -0,0 +1,77 @@
+package com.metabase.app.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the cold start of the transpiler: runs Main end to end in a new JVM a number of times
+ * and reports the wall clock time of the runs, without and then with the AppCDS archive built by
+ * mvn package -Pcds when it is given. JMH measures warm code only, so this is a plain main:
+ * java -cp benchmarks/target/benchmarks.jar com.metabase.app.benchmarks.StartupBenchmark \
+ *     target/metabase-app-1.0-SNAPSHOT.jar [target/metabase-app.jsa] [runs]
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: StartupBenchmark jar [archive] [runs]");
+        }
+        String jar = args[0];
+        String archive = args.length > 1 ? args[1] : null;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        report("default CDS", measure(jar, null, runs));
+        if (archive != null) {
+            report("AppCDS", measure(jar, archive, runs));
+        }
+    }
+
+    /**
+     * Milliseconds taken by each run, sorted, after a first run warming the file system cache.
+     */
+    private static long[] measure(String jar, String archive, int runs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            // Fail rather than silently measure without the archive
+            command.add("-Xshare:on");
+        }
+        command.add("-cp");
+        command.add(jar);
+        command.add("com.metabase.app.Main");
+        File output = File.createTempFile("startup", ".log");
+        output.deleteOnExit();
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output);
+
+        run(builder);
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run(builder);
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static void run(ProcessBuilder builder) throws IOException, InterruptedException {
+        int exitCode = builder.start().waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Main exited with " + exitCode + ": " + builder.command());
+        }
+    }
+
+    private static void report(String name, long[] millis) {
+        long sum = 0;
+        for (long m : millis) {
+            sum += m;
+        }
+        System.out.printf("%-12s min %4d ms, median %4d ms, mean %4d ms over %d runs%n",
+                name, millis[0], millis[millis.length / 2], sum / millis.length, millis.length);
+    }
+}
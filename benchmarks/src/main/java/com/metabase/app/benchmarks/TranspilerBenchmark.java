@@ -0,0 +1,109 @@
+package com.metabase.app.benchmarks;
+
+import com.metabase.app.SQLParameterizedQuery;
+import com.metabase.app.SQLParameterizedTranspiler;
+import com.metabase.app.SQLObjectFactory;
+import com.metabase.app.SQLQueryCache;
+import com.metabase.app.SQLTranspileContext;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TranspilerBenchmark {
+
+    @Param({"SIMPLE", "WIDE_IN", "DEEP_NESTING", "LITERAL_HEAVY"})
+    public Queries query;
+
+    @Param({"POSTGRESQL", "MY_SQL", "SQL_SERVER"})
+    public Utils.SQLTranspilerType dialect;
+
+    private Map<Integer, String> fieldMap;
+    private Map<String, Object> argsMap;
+    private SQLTranspiler transpiler;
+    private SQLParameterizedTranspiler parameterizedTranspiler;
+    private SQLQueryCache cache;
+    private StringBuilder buffer;
+    private SQLTranspileContext context;
+
+    @Setup
+    public void setUp() {
+        this.fieldMap = Queries.fieldMap();
+        this.argsMap = this.query.argsMap();
+        this.transpiler = new SQLTranspiler(this.fieldMap, this.argsMap);
+        this.buffer = new StringBuilder(1 << 16);
+        this.parameterizedTranspiler = new SQLParameterizedTranspiler(this.fieldMap);
+        this.cache = new SQLQueryCache(16);
+        this.context = new SQLTranspileContext(new SQLObjectFactory(new SQLIdentifierTable(this.fieldMap)));
+    }
+
+    /**
+     * Builds the query tree (convertToSQLObject and the optimization pass), without rendering.
+     */
+    @Benchmark
+    public SQLTranspiler construct() {
+        return new SQLTranspiler(this.fieldMap, this.argsMap);
+    }
+
+    @Benchmark
+    public String render() {
+        return this.transpiler.generateSQL(this.dialect);
+    }
+
+    @Benchmark
+    public int renderIntoReusedBuffer() {
+        this.buffer.setLength(0);
+        this.transpiler.appendSQL(this.buffer, this.dialect);
+        return this.buffer.length();
+    }
+
+    @Benchmark
+    public String constructAndRender() {
+        return new SQLTranspiler(this.fieldMap, this.argsMap).generateSQL(this.dialect);
+    }
+
+    /**
+     * Same as constructAndRender, with the field table, scratch and buffers of a context reused
+     * from query to query.
+     */
+    @Benchmark
+    public String constructAndRenderInContext() {
+        return this.context.generateSQL(this.argsMap, SQLDialects.of(this.dialect));
+    }
+
+    /**
+     * Cached statement of an already seen shape: only the literal values are collected and bound.
+     */
+    @Benchmark
+    public SQLParameterizedQuery parameterized() {
+        return this.parameterizedTranspiler.generateSQL(this.dialect, this.argsMap);
+    }
+
+    /**
+     * Cache hit: the structural hash and equality check of the query and its field map.
+     */
+    @Benchmark
+    public String cached() {
+        return this.cache.generateSQL(this.dialect, this.fieldMap, this.argsMap);
+    }
+}
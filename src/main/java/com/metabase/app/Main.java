@@ -1,10 +1,20 @@
 package com.metabase.app;
 
+import com.metabase.app.parser.SQLQueryParser;
+import com.metabase.app.server.SQLTranspilerServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("server")) {
+            runServer(args);
+            return;
+        }
 
         System.out.println("\n[RUNNING SQL TRANSPILER]");
 
@@ -41,6 +51,64 @@ public class Main {
         System.out.println("(generate-sql :mysql fields {:where [:and [:or [:is-empty null] [:not-empty [\"field\", 3]] [:= [:field 2] \"cam\"]})");
         System.out.println(transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL));
 
+        String query = "{:where [:> [:field 4] 35] :limit 5}";
+        transpiler = new SQLQueryParser(fieldMap).parse(query);
+
+        System.out.println("\nParsing and generating SQL query for:");
+        System.out.println("(generate-sql :postgres fields " + query + ")");
+        System.out.println(transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+
         System.out.println("\nCheck out the SQLTranspilerTest file for multiple SQL generation examples.");
     }
+
+    /**
+     * Runs a SQLTranspilerServer until the JVM is stopped, with the options --host, --port, --http,
+     * --threads and --fields, e.g. --fields 1=id,2=name. The server has no authentication, so it
+     * only listens on the loopback address unless --host gives another one, e.g. 0.0.0.0.
+     */
+    private static void runServer(String[] args) throws IOException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = SQLTranspilerServer.DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        SQLTranspilerServer.Protocol protocol = SQLTranspilerServer.Protocol.LINE;
+        Map<Integer, String> fieldMap = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host":
+                    host = InetAddress.getByName(args[++i]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--http":
+                    protocol = SQLTranspilerServer.Protocol.HTTP;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--fields":
+                    for (String field : args[++i].split(",")) {
+                        String[] idAndName = field.split("=", 2);
+                        if (idAndName.length != 2) {
+                            throw new IllegalArgumentException("Fields are written id=name, not " + field);
+                        }
+                        fieldMap.put(Integer.parseInt(idAndName[0].trim()), idAndName[1].trim());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SQLTranspilerServer server = new SQLTranspilerServer(new SQLQueryParser(fieldMap), protocol, threads);
+        server.start(new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Stopping anyway
+            }
+        }));
+        System.out.println("Transpiling " + protocol + " requests on " + host.getHostAddress() + " port " + server.getPort());
+    }
 }
@@ -0,0 +1,111 @@
+package com.metabase.app;
+
+import com.metabase.app.variables.SQLIdentifierTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Transpiles many queries in parallel on an executor, a fork-join pool by default. Any executor
+ * works, e.g. a virtual thread per task executor on Java 21.
+ * Results come back in the order of the requests, and a query that cannot be transpiled only fails
+ * its own result instead of the whole batch, be it with an exception or an error such as a
+ * StackOverflowError. A query the executor rejects, e.g. once it is shut down or its queue is full,
+ * fails its result with the RejectedExecutionException while the others are still transpiled.
+ * Only the errors the JVM may not recover from, e.g. an OutOfMemoryError, fail the whole batch.
+ */
+public final class SQLBatchTranspiler {
+
+    public static final class Request {
+        private final SQLIdentifierTable fields;
+        private final Map<String, Object> argsMap;
+        private final Utils.SQLTranspilerType type;
+
+        public Request(Map<Integer, String> fieldMap, Map<String, Object> argsMap, Utils.SQLTranspilerType type) {
+            this(new SQLIdentifierTable(fieldMap), argsMap, type);
+        }
+
+        /**
+         * Requests built on the same field table share its resolved field names.
+         */
+        public Request(SQLIdentifierTable fields, Map<String, Object> argsMap, Utils.SQLTranspilerType type) {
+            this.fields = fields;
+            this.argsMap = argsMap;
+            this.type = type;
+        }
+    }
+
+    public static final class Result {
+        private final String sql;
+        private final Throwable error;
+
+        private Result(String sql, Throwable error) {
+            this.sql = sql;
+            this.error = error;
+        }
+
+        public boolean isSuccessful() {
+            return this.error == null;
+        }
+
+        /**
+         * Generated SQL, or null if the query could not be transpiled.
+         */
+        public String getSQL() {
+            return this.sql;
+        }
+
+        /**
+         * Reason the query could not be transpiled, or null if it was.
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+    }
+
+    private final Executor executor;
+
+    public SQLBatchTranspiler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SQLBatchTranspiler(Executor executor) {
+        this.executor = executor;
+    }
+
+    public List<Result> transpile(Collection<Request> requests) {
+        List<CompletableFuture<Result>> futures = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> transpile(request), this.executor));
+            } catch (RejectedExecutionException e) {
+                futures.add(CompletableFuture.completedFuture(new Result(null, e)));
+            }
+        }
+
+        List<Result> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<Result> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static Result transpile(Request request) {
+        try {
+            return new Result(new SQLTranspiler(request.fields, request.argsMap).generateSQL(request.type), null);
+        } catch (StackOverflowError e) {
+            return new Result(null, e);
+        } catch (VirtualMachineError e) {
+            // The JVM may not be able to go on
+            throw e;
+        } catch (RuntimeException | Error e) {
+            return new Result(null, e);
+        }
+    }
+}
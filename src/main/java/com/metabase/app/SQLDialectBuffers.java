@@ -0,0 +1,189 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.dialect.SQLRenderer;
+import com.metabase.app.dialect.SQLSharedRenderer;
+
+import java.util.Arrays;
+
+/**
+ * One output buffer per dialect, filled by a single walk of the query tree. Dialect neutral text
+ * is appended to every buffer at once, dialect specific text is written to each buffer on its own.
+ * Marks work like a stack and let a node find out whether its children wrote anything, to drop
+ * always true parts of the query the same way single dialect rendering does.
+ */
+public final class SQLDialectBuffers {
+    private final SQLDialect[] dialects;
+    private final StringBuilder[] buffers;
+    private final SQLNodeVisitor[] renderers;
+    // Walks the tree once for all dialects, null when one of them can't share the walk
+    private final SQLSharedRenderer sharedRenderer;
+    // Buffer lengths at every open mark, one row of buffers.length entries per mark
+    private int[] marks;
+    private int markCount = 0;
+
+    public SQLDialectBuffers(Utils.SQLTranspilerType... types) {
+        this(toDialects(types));
+    }
+
+    public SQLDialectBuffers(SQLDialect... dialects) {
+        if (dialects.length == 0) {
+            throw new IllegalArgumentException("At least one dialect must be rendered.");
+        }
+        this.dialects = dialects.clone();
+        this.buffers = new StringBuilder[dialects.length];
+        this.renderers = new SQLNodeVisitor[dialects.length];
+        SQLRenderer[] sharedRenderers = new SQLRenderer[dialects.length];
+        boolean shared = true;
+
+        for (int i = 0; i < dialects.length; i++) {
+            this.buffers[i] = new StringBuilder();
+            this.renderers[i] = dialects[i].newRenderer(this.buffers[i]);
+            if (this.renderers[i] instanceof SQLRenderer) {
+                sharedRenderers[i] = (SQLRenderer) this.renderers[i];
+            } else {
+                shared = false;
+            }
+        }
+        this.sharedRenderer = shared ? new SQLSharedRenderer(this, sharedRenderers) : null;
+        this.marks = new int[8 * dialects.length];
+    }
+
+    private static SQLDialect[] toDialects(Utils.SQLTranspilerType[] types) {
+        SQLDialect[] dialects = new SQLDialect[types.length];
+        for (int i = 0; i < types.length; i++) {
+            dialects[i] = SQLDialects.of(types[i]);
+        }
+        return dialects;
+    }
+
+    public int size() {
+        return this.buffers.length;
+    }
+
+    public SQLDialect getDialect(int i) {
+        return this.dialects[i];
+    }
+
+    /**
+     * SQLTranspilerType of the i-th dialect, or null when it is not a built in one.
+     */
+    public Utils.SQLTranspilerType getType(int i) {
+        return SQLDialects.typeOf(this.dialects[i]);
+    }
+
+    public StringBuilder get(int i) {
+        return this.buffers[i];
+    }
+
+    public SQLDialectBuffers append(String s) {
+        for (StringBuilder buffer : this.buffers) {
+            buffer.append(s);
+        }
+        return this;
+    }
+
+    public SQLDialectBuffers append(char c) {
+        for (StringBuilder buffer : this.buffers) {
+            buffer.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Renders the object into every buffer, in a single walk when all dialects can share it.
+     */
+    public void render(SQLObjectTranspiler object) {
+        if (this.sharedRenderer != null) {
+            object.accept(this.sharedRenderer);
+            return;
+        }
+        for (SQLNodeVisitor renderer : this.renderers) {
+            object.accept(renderer);
+        }
+    }
+
+    /**
+     * Writes the number into the first buffer and copies its digits to the others.
+     */
+    public SQLDialectBuffers append(long n) {
+        StringBuilder first = this.buffers[0];
+        int start = first.length();
+        first.append(n);
+        return this.copyToOthers(start);
+    }
+
+    public SQLDialectBuffers append(double n) {
+        StringBuilder first = this.buffers[0];
+        int start = first.length();
+        first.append(n);
+        return this.copyToOthers(start);
+    }
+
+    private SQLDialectBuffers copyToOthers(int start) {
+        StringBuilder first = this.buffers[0];
+        for (int i = 1; i < this.buffers.length; i++) {
+            this.buffers[i].append(first, start, first.length());
+        }
+        return this;
+    }
+
+    /**
+     * Removes the last count characters of every buffer, to take back dialect neutral text.
+     */
+    public void truncate(int count) {
+        for (StringBuilder buffer : this.buffers) {
+            buffer.setLength(buffer.length() - count);
+        }
+    }
+
+    public void mark() {
+        int row = this.markCount * this.buffers.length;
+        if (row + this.buffers.length > this.marks.length) {
+            this.marks = Arrays.copyOf(this.marks, this.marks.length * 2);
+        }
+        for (int i = 0; i < this.buffers.length; i++) {
+            this.marks[row + i] = this.buffers[i].length();
+        }
+        this.markCount++;
+    }
+
+    /**
+     * True when no buffer was written since the last mark.
+     */
+    public boolean isEmptySinceMark() {
+        int row = (this.markCount - 1) * this.buffers.length;
+        for (int i = 0; i < this.buffers.length; i++) {
+            if (this.buffers[i].length() != this.marks[row + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops everything written since the last mark, which stays open.
+     */
+    public void resetToMark() {
+        int row = (this.markCount - 1) * this.buffers.length;
+        for (int i = 0; i < this.buffers.length; i++) {
+            this.buffers[i].setLength(this.marks[row + i]);
+        }
+    }
+
+    public void unmark() {
+        this.markCount--;
+    }
+
+    /**
+     * Empties every buffer so they can be reused for the next query.
+     */
+    public void clear() {
+        for (StringBuilder buffer : this.buffers) {
+            buffer.setLength(0);
+        }
+        this.markCount = 0;
+    }
+}
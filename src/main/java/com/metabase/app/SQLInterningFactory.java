@@ -0,0 +1,346 @@
+package com.metabase.app;
+
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLFragments;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.dialect.SQLRenderer;
+import com.metabase.app.dialect.SQLStandardDialect;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLInListOptions;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLVariable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory building a single shared object for structurally identical clauses, e.g. the same
+ * [:not-empty [:field 3]] in many OR branches of a generated filter, before and after
+ * optimization. Two clauses built by the same factory are therefore structurally equal exactly
+ * when they are the same object, and so are the WHERE clauses of two equal queries.
+ * The SQL of the operators found more than once is kept per dialect and written again instead of
+ * walking them, for standard dialects.
+ * The factory keeps every object it built, so it is meant for a group of related queries, e.g. the
+ * filters of one generated segment, rather than for the lifetime of the application. It can be
+ * used by several threads at once. Bind parameters and other objects built outside of the factory
+ * are never shared, and neither are the clauses containing them.
+ */
+public final class SQLInterningFactory extends SQLObjectFactory {
+
+    /**
+     * Structure of an object: what it is, compared with equals, and its operands, which are
+     * already interned and compared by identity.
+     */
+    private static final class Key {
+        private final Object[] parts;
+        private final SQLObjectTranspiler[] operands;
+        private final int hash;
+
+        private Key(Object[] parts, SQLObjectTranspiler[] operands) {
+            this.parts = parts;
+            this.operands = operands;
+            int hash = Arrays.hashCode(parts);
+            for (SQLObjectTranspiler operand : operands) {
+                hash = 31 * hash + System.identityHashCode(operand);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            if (this.hash != key.hash || this.operands.length != key.operands.length || !Arrays.equals(this.parts, key.parts)) {
+                return false;
+            }
+            for (int i = 0; i < this.operands.length; i++) {
+                if (this.operands[i] != key.operands[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * Keeps the SQL of the objects built more than once.
+     */
+    private final class Fragments implements SQLFragments {
+        private final Map<SQLObjectTranspiler, String> fragments = new ConcurrentHashMap<>();
+
+        @Override
+        public String get(SQLObjectTranspiler operator) {
+            return this.fragments.get(operator);
+        }
+
+        @Override
+        public boolean keeps(SQLObjectTranspiler operator) {
+            return SQLInterningFactory.this.shared.contains(operator);
+        }
+
+        @Override
+        public void put(SQLObjectTranspiler operator, String sql) {
+            this.fragments.put(operator, sql);
+        }
+    }
+
+    private static final SQLObjectTranspiler[] NO_OPERANDS = new SQLObjectTranspiler[0];
+
+    private final Map<Key, SQLObjectTranspiler> objects = new ConcurrentHashMap<>();
+    // Objects returned by intern, which are their own shared instance
+    private final Set<SQLObjectTranspiler> interned = ConcurrentHashMap.newKeySet();
+    // Interned objects that were built again after their first time
+    private final Set<SQLObjectTranspiler> shared = ConcurrentHashMap.newKeySet();
+    private final Map<SQLDialect, SQLFragments> fragments = new ConcurrentHashMap<>();
+
+    public SQLInterningFactory(SQLIdentifierTable fields) {
+        super(fields);
+    }
+
+    public SQLInterningFactory(SQLIdentifierTable fields, SQLInListOptions inListOptions) {
+        super(fields, inListOptions);
+    }
+
+    public SQLInterningFactory(SQLIdentifierTable fields, SQLInListOptions inListOptions, SQLQueryLimits limits) {
+        super(fields, inListOptions, limits);
+    }
+
+    @Override
+    public SQLObjectTranspiler field(int id) {
+        return this.intern(super.field(id));
+    }
+
+    @Override
+    public SQLObjectTranspiler literal(Object value) {
+        return this.intern(super.literal(value));
+    }
+
+    @Override
+    public SQLObjectTranspiler literal(long value) {
+        return this.intern(super.literal(value));
+    }
+
+    @Override
+    public SQLObjectTranspiler literal(double value) {
+        return this.intern(super.literal(value));
+    }
+
+    @Override
+    public SQLObjectTranspiler operator(String op, SQLObjectTranspiler[] operands) {
+        return this.intern(super.operator(op, operands));
+    }
+
+    /**
+     * Optimizes the clause and interns the result, as optimizing builds new objects.
+     */
+    @Override
+    public SQLObjectTranspiler optimize(SQLObjectTranspiler clause) {
+        return this.intern(clause.optimize());
+    }
+
+    @Override
+    public SQLObjectTranspiler optimizeOver(SQLObjectTranspiler operator) {
+        return this.intern(super.optimizeOver(operator));
+    }
+
+    @Override
+    public SQLNodeVisitor newRenderer(SQLDialect dialect, StringBuilder out) {
+        if (!(dialect instanceof SQLStandardDialect)) {
+            return dialect.newRenderer(out);
+        }
+        SQLFragments fragments = this.fragments.computeIfAbsent(dialect, d -> new Fragments());
+        return new SQLRenderer((SQLStandardDialect) dialect, out, fragments);
+    }
+
+    /**
+     * Object whose operands are being interned.
+     */
+    private static final class Interning {
+        private final SQLObjectTranspiler object;
+        private final SQLObjectTranspiler[] operands;
+        private SQLObjectTranspiler[] internedOperands;
+        private int next = 0;
+
+        private Interning(SQLObjectTranspiler object, SQLObjectTranspiler[] operands) {
+            this.object = object;
+            this.operands = operands;
+            this.internedOperands = operands;
+        }
+    }
+
+    /**
+     * Shared instance of the object, interning its operands first. Objects that can't be shared
+     * are returned as they are. The operands are interned with a stack rather than by recursion.
+     */
+    public SQLObjectTranspiler intern(SQLObjectTranspiler object) {
+        Deque<Interning> pending = new ArrayDeque<>();
+        // Interned object of the top of the stack, or of the whole object once it is empty
+        SQLObjectTranspiler result = this.begin(object, pending);
+        while (!pending.isEmpty()) {
+            Interning top = pending.peek();
+            if (result != null) {
+                if (!this.interned.contains(result)) {
+                    pending.pop();
+                    result = top.object;
+                    continue;
+                }
+                if (result != top.operands[top.next]) {
+                    if (top.internedOperands == top.operands) {
+                        top.internedOperands = top.operands.clone();
+                    }
+                    top.internedOperands[top.next] = result;
+                }
+                top.next++;
+                result = null;
+            }
+            if (top.next < top.operands.length) {
+                result = this.begin(top.operands[top.next], pending);
+            } else {
+                pending.pop();
+                result = this.share(top.object, top.operands, top.internedOperands);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The object when it is already interned or can't be shared, otherwise null once it is pushed
+     * to have its operands interned.
+     */
+    private SQLObjectTranspiler begin(SQLObjectTranspiler object, Deque<Interning> pending) {
+        if (this.interned.contains(object)) {
+            return object;
+        }
+        SQLObjectTranspiler[] operands = operandsOf(object);
+        if (operands == null) {
+            return object;
+        }
+        pending.push(new Interning(object, operands));
+        return null;
+    }
+
+    private SQLObjectTranspiler share(SQLObjectTranspiler object, SQLObjectTranspiler[] operands,
+                                      SQLObjectTranspiler[] internedOperands) {
+        Key key = new Key(partsOf(object), internedOperands);
+        SQLObjectTranspiler existing = this.objects.get(key);
+        if (existing == null) {
+            SQLObjectTranspiler candidate = internedOperands == operands ? object : rebuild(object, internedOperands);
+            existing = this.objects.putIfAbsent(key, candidate);
+            if (existing == null) {
+                this.interned.add(candidate);
+                return candidate;
+            }
+        }
+        this.shared.add(existing);
+        return existing;
+    }
+
+    /**
+     * Operands of the objects that can be shared, null for the others.
+     */
+    private static SQLObjectTranspiler[] operandsOf(SQLObjectTranspiler object) {
+        if (object instanceof SQLLogicalOperator) {
+            return ((SQLLogicalOperator) object).getOperands();
+        }
+        if (object instanceof SQLEqualityOperator) {
+            SQLEqualityOperator operator = (SQLEqualityOperator) object;
+            SQLObjectTranspiler[] operands = new SQLObjectTranspiler[operator.getOperands().length + 1];
+            operands[0] = operator.getMainOperand();
+            System.arraycopy(operator.getOperands(), 0, operands, 1, operands.length - 1);
+            return operands;
+        }
+        if (object instanceof SQLBinaryOperator) {
+            SQLBinaryOperator operator = (SQLBinaryOperator) object;
+            return new SQLObjectTranspiler[]{operator.getOperand1(), operator.getOperand2()};
+        }
+        if (object instanceof SQLUnaryOperator) {
+            return new SQLObjectTranspiler[]{((SQLUnaryOperator) object).getOperand()};
+        }
+        if (object instanceof SQLWhereClause) {
+            return new SQLObjectTranspiler[]{((SQLWhereClause) object).getClause()};
+        }
+        if (object instanceof SQLLimitClause) {
+            return new SQLObjectTranspiler[]{((SQLLimitClause) object).getClause()};
+        }
+        if (object instanceof SQLLongLiteral || object instanceof SQLDoubleLiteral
+                || object instanceof SQLBooleanLiteral || object.getClass() == SQLVariable.class) {
+            return NO_OPERANDS;
+        }
+        return null;
+    }
+
+    private static Object[] partsOf(SQLObjectTranspiler object) {
+        if (object instanceof SQLLogicalOperator) {
+            SQLLogicalOperator operator = (SQLLogicalOperator) object;
+            return new Object[]{operator.getOperator(), operator.containsContradiction()};
+        }
+        if (object instanceof SQLEqualityOperator) {
+            SQLEqualityOperator operator = (SQLEqualityOperator) object;
+            return new Object[]{operator.getOperator(), operator.getOptions()};
+        }
+        if (object instanceof SQLBinaryOperator) {
+            return new Object[]{SQLBinaryOperator.class, ((SQLBinaryOperator) object).getOperator()};
+        }
+        if (object instanceof SQLUnaryOperator) {
+            return new Object[]{((SQLUnaryOperator) object).getOperator()};
+        }
+        if (object instanceof SQLLongLiteral) {
+            return new Object[]{SQLLongLiteral.class, ((SQLLongLiteral) object).getValue()};
+        }
+        if (object instanceof SQLDoubleLiteral) {
+            // By bits, 0.0 and -0.0 are not written the same
+            return new Object[]{SQLDoubleLiteral.class, Double.doubleToLongBits(((SQLDoubleLiteral) object).getValue())};
+        }
+        if (object instanceof SQLBooleanLiteral) {
+            return new Object[]{SQLBooleanLiteral.class, ((SQLBooleanLiteral) object).getValue()};
+        }
+        if (object instanceof SQLVariable) {
+            SQLVariable variable = (SQLVariable) object;
+            return new Object[]{SQLVariable.class, variable.getVariable(), variable.isFieldName(), variable.requiresQuotes()};
+        }
+        return new Object[]{object.getClass()};
+    }
+
+    private static SQLObjectTranspiler rebuild(SQLObjectTranspiler object, SQLObjectTranspiler[] operands) {
+        if (object instanceof SQLLogicalOperator) {
+            return ((SQLLogicalOperator) object).withOperands(operands);
+        }
+        if (object instanceof SQLEqualityOperator) {
+            SQLEqualityOperator operator = (SQLEqualityOperator) object;
+            return new SQLEqualityOperator(
+                    operator.getOperator(),
+                    operands[0],
+                    Arrays.copyOfRange(operands, 1, operands.length),
+                    operator.getOptions()
+            );
+        }
+        if (object instanceof SQLBinaryOperator) {
+            return new SQLBinaryOperator(((SQLBinaryOperator) object).getOperator(), operands[0], operands[1]);
+        }
+        if (object instanceof SQLUnaryOperator) {
+            return new SQLUnaryOperator(((SQLUnaryOperator) object).getOperator(), operands[0]);
+        }
+        if (object instanceof SQLWhereClause) {
+            return new SQLWhereClause(operands[0]);
+        }
+        return new SQLLimitClause(operands[0]);
+    }
+}
@@ -0,0 +1,143 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLInListOptions;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLVariable;
+
+import java.util.Arrays;
+
+/**
+ * Builds the objects of a query from the operators of the query DSL, checking their number of
+ * operands. Shared by the Object[] conversion of SQLTranspiler and by the text parser, so both
+ * accept exactly the same queries.
+ */
+public class SQLObjectFactory {
+    private final SQLIdentifierTable fields;
+    private final SQLInListOptions inListOptions;
+    private final SQLQueryLimits limits;
+
+    public SQLObjectFactory(SQLIdentifierTable fields) {
+        this(fields, SQLInListOptions.DEFAULT);
+    }
+
+    /**
+     * Factory whose = and != write their value lists as the options say.
+     */
+    public SQLObjectFactory(SQLIdentifierTable fields, SQLInListOptions inListOptions) {
+        this(fields, inListOptions, SQLQueryLimits.DEFAULT);
+    }
+
+    /**
+     * Factory of queries no deeper nor larger than the limits.
+     */
+    public SQLObjectFactory(SQLIdentifierTable fields, SQLInListOptions inListOptions, SQLQueryLimits limits) {
+        this.fields = fields;
+        this.inListOptions = inListOptions;
+        this.limits = limits;
+    }
+
+    public SQLQueryLimits getLimits() {
+        return this.limits;
+    }
+
+    public SQLObjectTranspiler field(int id) {
+        return this.fields.getField(id);
+    }
+
+    /**
+     * Builds a literal, keeping integral and floating point numbers as primitives.
+     */
+    public SQLObjectTranspiler literal(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return this.literal(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return this.literal(((Number) value).doubleValue());
+        }
+        return new SQLVariable(value, value instanceof String);
+    }
+
+    public SQLObjectTranspiler literal(long value) {
+        return new SQLLongLiteral(value);
+    }
+
+    public SQLObjectTranspiler literal(double value) {
+        return new SQLDoubleLiteral(value);
+    }
+
+    /**
+     * Builds the object of an operator of the DSL (without its leading ':') applied to the given
+     * operands.
+     */
+    public SQLObjectTranspiler operator(String op, SQLObjectTranspiler[] operands) {
+        switch (op) {
+            // Unary operators
+            case "is-empty":
+            case "not-empty":
+            case "not":
+                // check 1 other args
+                if (operands.length != 1) {
+                    throw new IllegalArgumentException("Unary operators can't have more than one operand.");
+                }
+                return new SQLUnaryOperator(SQLUnaryOperator.StringToOperatorType(op), operands[0]);
+            // Logical operators
+            case Utils.AND_OP:
+            case Utils.OR_OP:
+                if (operands.length < 1) {
+                    throw new IllegalArgumentException("Logical operators must have at least 1 operand.");
+                }
+                return new SQLLogicalOperator(SQLLogicalOperator.StringToSQLLogicalOperatorType(op), operands);
+            case "<":
+            case ">":
+                // check 2 other args
+                if (operands.length != 2) {
+                    throw new IllegalArgumentException("Binary operators must have two operand.");
+                }
+                return new SQLBinaryOperator(op, operands[0], operands[1]);
+            case "=":
+            case "!=":
+                // check >2 other args
+                if (operands.length < 2) {
+                    throw new IllegalArgumentException("Equality operators must have at least 2 operands.");
+                }
+                return new SQLEqualityOperator(
+                        SQLEqualityOperator.StringToSQLEqualityOperatorType(op),
+                        operands[0],
+                        Arrays.copyOfRange(operands, 1, operands.length),
+                        this.inListOptions
+                );
+            default:
+                throw new IllegalArgumentException("Invalid SQL query!");
+        }
+    }
+
+    /**
+     * Optimizes a clause of a query built by the factory, see SQLObjectTranspiler.optimize.
+     */
+    public SQLObjectTranspiler optimize(SQLObjectTranspiler clause) {
+        return clause.optimize();
+    }
+
+    /**
+     * Optimizes an operator built by the factory on operands it already optimized, which are
+     * taken as they are, so a clause is optimized a level at a time as it is built.
+     */
+    public SQLObjectTranspiler optimizeOver(SQLObjectTranspiler operator) {
+        return SQLOptimizer.optimizeOver(operator);
+    }
+
+    /**
+     * Renderer of the queries built by the factory.
+     */
+    public SQLNodeVisitor newRenderer(SQLDialect dialect, StringBuilder out) {
+        return dialect.newRenderer(out);
+    }
+}
@@ -1,18 +1,69 @@
 package com.metabase.app;
 
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.dialect.SQLNodeVisitor;
+
 public interface SQLObjectTranspiler {
     default String generateSQL(Utils.SQLTranspilerType type) {
-        switch (type) {
-            case MY_SQL:
-                return this.transpileToMySQL();
-            case POSTGRESQL:
-                return this.transpileToPostgreSQL();
-            case SQL_SERVER:
-                return this.transpileToServerSQL();
-        }
-        return null;
-    }
-    String transpileToPostgreSQL();
-    String transpileToMySQL();
-    String transpileToServerSQL();
+        return this.generateSQL(SQLDialects.of(type));
+    }
+
+    default String generateSQL(SQLDialect dialect) {
+        StringBuilder out = new StringBuilder();
+        this.appendSQL(out, dialect);
+        return out.toString();
+    }
+
+    default void appendSQL(StringBuilder out, Utils.SQLTranspilerType type) {
+        this.appendSQL(out, SQLDialects.of(type));
+    }
+
+    /**
+     * Writes the SQL of this object for the given dialect at the end of the buffer, so a whole
+     * statement can be rendered into a single (reusable) StringBuilder. Writing nothing means the
+     * object was optimized out because it is always true.
+     */
+    default void appendSQL(StringBuilder out, SQLDialect dialect) {
+        this.accept(dialect.newRenderer(out));
+    }
+
+    /**
+     * Writes the SQL of this object for every dialect of the buffers in a single walk, sharing the
+     * dialect neutral text.
+     */
+    default void appendSQL(SQLDialectBuffers out) {
+        out.render(this);
+    }
+
+    /**
+     * Calls back the visitor method for this kind of object. Objects that do not implement it are
+     * rendered through their transpileTo* methods, which they must implement then: rendering a
+     * legacy type whose method they don't implement throws an IllegalArgumentException.
+     */
+    default void accept(SQLNodeVisitor visitor) {
+        visitor.visitOther(this);
+    }
+
+    /**
+     * Returns an equivalent, normalized object: comparisons between literals are folded into a
+     * SQLBooleanLiteral and redundant negations are removed. Objects are immutable, so the result
+     * is a new tree whenever something changed. Runs once when the query is built, which leaves
+     * rendering as a plain walk of the tree for every dialect.
+     */
+    default SQLObjectTranspiler optimize() {
+        return this;
+    }
+
+    default String transpileToPostgreSQL() {
+        return this.generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+    }
+
+    default String transpileToMySQL() {
+        return this.generateSQL(Utils.SQLTranspilerType.MY_SQL);
+    }
+
+    default String transpileToServerSQL() {
+        return this.generateSQL(Utils.SQLTranspilerType.SQL_SERVER);
+    }
 }
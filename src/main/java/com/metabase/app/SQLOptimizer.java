@@ -0,0 +1,140 @@
+package com.metabase.app;
+
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+
+import java.util.Arrays;
+
+/**
+ * Optimizes a query tree bottom up with a stack of its own rather than by recursion, so trees of
+ * any depth can be optimized on threads with small stacks. Every clause and operator is optimized
+ * by its optimizeWith method once its operands are, other objects by their optimize method.
+ */
+public final class SQLOptimizer {
+
+    private SQLOptimizer() {}
+
+    public static SQLObjectTranspiler optimize(SQLObjectTranspiler root) {
+        if (operandCount(root) < 0) {
+            return root.optimize();
+        }
+        // Objects whose operands are being optimized and the index of their next operand
+        SQLObjectTranspiler[] objects = new SQLObjectTranspiler[16];
+        int[] nextOperands = new int[16];
+        int depth = 0;
+        // Optimized operands of these objects, in order
+        SQLObjectTranspiler[] results = new SQLObjectTranspiler[16];
+        int resultCount = 0;
+
+        objects[depth++] = root;
+        while (depth > 0) {
+            SQLObjectTranspiler object = objects[depth - 1];
+            int count = operandCount(object);
+            int next = nextOperands[depth - 1];
+
+            if (next < count) {
+                nextOperands[depth - 1]++;
+                SQLObjectTranspiler operand = operand(object, next);
+                if (operandCount(operand) >= 0) {
+                    if (depth == objects.length) {
+                        objects = Arrays.copyOf(objects, depth * 2);
+                        nextOperands = Arrays.copyOf(nextOperands, depth * 2);
+                    }
+                    objects[depth++] = operand;
+                    continue;
+                }
+                if (resultCount == results.length) {
+                    results = Arrays.copyOf(results, resultCount * 2);
+                }
+                results[resultCount++] = operand.optimize();
+                continue;
+            }
+            objects[--depth] = null;
+            nextOperands[depth] = 0;
+            resultCount -= count;
+            SQLObjectTranspiler optimized = optimizeWith(object, results, resultCount);
+            Arrays.fill(results, resultCount, resultCount + count, null);
+            results[resultCount++] = optimized;
+        }
+        return results[0];
+    }
+
+    /**
+     * Optimizes an object whose operands are already optimized, without walking them again.
+     */
+    public static SQLObjectTranspiler optimizeOver(SQLObjectTranspiler object) {
+        int count = operandCount(object);
+        if (count < 0) {
+            return object.optimize();
+        }
+        SQLObjectTranspiler[] operands = new SQLObjectTranspiler[count];
+        for (int i = 0; i < count; i++) {
+            operands[i] = operand(object, i);
+        }
+        return optimizeWith(object, operands, 0);
+    }
+
+    /**
+     * Number of operands of the objects optimized by optimizeWith, -1 for the others.
+     */
+    private static int operandCount(SQLObjectTranspiler object) {
+        if (object instanceof SQLLogicalOperator) {
+            return ((SQLLogicalOperator) object).getOperands().length;
+        }
+        if (object instanceof SQLEqualityOperator) {
+            return ((SQLEqualityOperator) object).getOperands().length + 1;
+        }
+        if (object instanceof SQLBinaryOperator) {
+            return 2;
+        }
+        if (object instanceof SQLUnaryOperator || object instanceof SQLWhereClause || object instanceof SQLLimitClause) {
+            return 1;
+        }
+        return -1;
+    }
+
+    private static SQLObjectTranspiler operand(SQLObjectTranspiler object, int i) {
+        if (object instanceof SQLLogicalOperator) {
+            return ((SQLLogicalOperator) object).getOperands()[i];
+        }
+        if (object instanceof SQLEqualityOperator) {
+            SQLEqualityOperator operator = (SQLEqualityOperator) object;
+            return i == 0 ? operator.getMainOperand() : operator.getOperands()[i - 1];
+        }
+        if (object instanceof SQLBinaryOperator) {
+            return i == 0 ? ((SQLBinaryOperator) object).getOperand1() : ((SQLBinaryOperator) object).getOperand2();
+        }
+        if (object instanceof SQLUnaryOperator) {
+            return ((SQLUnaryOperator) object).getOperand();
+        }
+        if (object instanceof SQLWhereClause) {
+            return ((SQLWhereClause) object).getClause();
+        }
+        return ((SQLLimitClause) object).getClause();
+    }
+
+    private static SQLObjectTranspiler optimizeWith(SQLObjectTranspiler object, SQLObjectTranspiler[] operands, int start) {
+        if (object instanceof SQLLogicalOperator) {
+            SQLLogicalOperator operator = (SQLLogicalOperator) object;
+            return operator.optimizeWith(Arrays.copyOfRange(operands, start, start + operator.getOperands().length));
+        }
+        if (object instanceof SQLEqualityOperator) {
+            SQLEqualityOperator operator = (SQLEqualityOperator) object;
+            return operator.optimizeWith(operands[start], Arrays.copyOfRange(operands, start + 1, start + 1 + operator.getOperands().length));
+        }
+        if (object instanceof SQLBinaryOperator) {
+            return ((SQLBinaryOperator) object).optimizeWith(operands[start], operands[start + 1]);
+        }
+        if (object instanceof SQLUnaryOperator) {
+            return ((SQLUnaryOperator) object).optimizeWith(operands[start]);
+        }
+        if (object instanceof SQLWhereClause) {
+            return ((SQLWhereClause) object).optimizeWith(operands[start]);
+        }
+        return ((SQLLimitClause) object).optimizeWith(operands[start]);
+    }
+}
@@ -0,0 +1,22 @@
+package com.metabase.app;
+
+/**
+ * A statement with "?" placeholders and the values to bind to them, in placeholder order.
+ */
+public final class SQLParameterizedQuery {
+    private final String sql;
+    private final Object[] parameters;
+
+    public SQLParameterizedQuery(String sql, Object[] parameters) {
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    public String getSQL() {
+        return this.sql;
+    }
+
+    public Object[] getParameters() {
+        return this.parameters;
+    }
+}
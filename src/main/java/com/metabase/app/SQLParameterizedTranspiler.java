@@ -0,0 +1,242 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.metrics.SQLInstrumentation;
+import com.metabase.app.metrics.SQLTranspilerListener;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLParameter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transpiles queries into parameterized statements: every non NULL literal of the WHERE clause is
+ * written as a "?" placeholder and returned as a bind parameter, in placeholder order.
+ * Compiled statements are cached by query shape (dialect, operators, fields, NULLs and LIMIT), so
+ * a query whose shape was seen before skips building and rendering the tree and only binds values.
+ * The cache is bounded and evicts the least recently used shape once full.
+ */
+public final class SQLParameterizedTranspiler {
+    public static final int DEFAULT_MAX_TEMPLATES = 1024;
+
+    /**
+     * Compiled statement of a query shape. parameterIndexes holds, for every placeholder, the
+     * position of its value among the literals of the query.
+     */
+    private static final class Template {
+        private final String sql;
+        private final int[] parameterIndexes;
+
+        private Template(String sql, int[] parameterIndexes) {
+            this.sql = sql;
+            this.parameterIndexes = parameterIndexes;
+        }
+
+        private Object[] bind(List<Object> literals) {
+            Object[] parameters = new Object[this.parameterIndexes.length];
+            for (int i = 0; i < this.parameterIndexes.length; i++) {
+                parameters[i] = literals.get(this.parameterIndexes[i]);
+            }
+            return parameters;
+        }
+    }
+
+    /**
+     * Operation of a WHERE clause and the index of its next operand.
+     */
+    private static final class Operation {
+        private final Object[] argsList;
+        private int next = 1;
+
+        private Operation(Object[] argsList) {
+            this.argsList = argsList;
+        }
+    }
+
+    private final SQLIdentifierTable fields;
+    // Accessed under the lock of the transpiler
+    private final LinkedHashMap<String, Template> templates;
+
+    public SQLParameterizedTranspiler(Map<Integer, String> fieldMap) {
+        this(new SQLIdentifierTable(fieldMap), DEFAULT_MAX_TEMPLATES);
+    }
+
+    /**
+     * Keeps the statements of at most maxTemplates shapes, the least recently used one being
+     * evicted for a new shape.
+     */
+    public SQLParameterizedTranspiler(SQLIdentifierTable fields, int maxTemplates) {
+        if (maxTemplates < 1) {
+            throw new IllegalArgumentException("Cache must be able to hold at least 1 template.");
+        }
+        this.fields = fields;
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return this.size() > maxTemplates;
+            }
+        };
+    }
+
+    public SQLParameterizedQuery generateSQL(Utils.SQLTranspilerType type, Map<String, Object> argsMap) {
+        return this.generateSQL(SQLDialects.of(type), argsMap);
+    }
+
+    public SQLParameterizedQuery generateSQL(SQLDialect dialect, Map<String, Object> argsMap) {
+        String name = dialect.getName();
+        StringBuilder shape = new StringBuilder().append(name.length()).append(':').append(name);
+        List<Object> literals = new ArrayList<>();
+
+        if (argsMap.containsKey(Utils.WHERE_CLAUSE)) {
+            shape.append('W');
+            appendShape(shape, argsMap.get(Utils.WHERE_CLAUSE), literals);
+        }
+        if (argsMap.containsKey(Utils.LIMIT_CLAUSE)) {
+            shape.append('L');
+            appendValue(shape, argsMap.get(Utils.LIMIT_CLAUSE));
+        }
+        String key = shape.toString();
+
+        Template template;
+        synchronized (this) {
+            template = this.templates.get(key);
+        }
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        if (listener != null) {
+            listener.onCacheLookup(SQLTranspilerListener.TEMPLATE_CACHE, dialect, template != null);
+        }
+        if (template == null) {
+            // Compiled outside of the lock, two threads missing the same shape both compile it
+            template = this.compile(dialect, argsMap);
+            synchronized (this) {
+                this.templates.put(key, template);
+            }
+        }
+        return new SQLParameterizedQuery(template.sql, template.bind(literals));
+    }
+
+    public synchronized int getTemplateCount() {
+        return this.templates.size();
+    }
+
+    private Template compile(SQLDialect dialect, Map<String, Object> argsMap) {
+        List<Integer> renderedIndexes = new ArrayList<>();
+        Map<String, Object> parameterizedArgsMap = new HashMap<>(argsMap);
+
+        if (argsMap.containsKey(Utils.WHERE_CLAUSE)) {
+            parameterizedArgsMap.put(
+                    Utils.WHERE_CLAUSE,
+                    parameterize(argsMap.get(Utils.WHERE_CLAUSE), renderedIndexes)
+            );
+        }
+        String sql = new SQLTranspiler(this.fields, parameterizedArgsMap).generateSQL(dialect);
+
+        int[] parameterIndexes = new int[renderedIndexes.size()];
+        for (int i = 0; i < parameterIndexes.length; i++) {
+            parameterIndexes[i] = renderedIndexes.get(i);
+        }
+        return new Template(sql, parameterIndexes);
+    }
+
+    /**
+     * Copy of the WHERE clause with every non NULL literal replaced by a SQLParameter, numbered in
+     * the same order appendShape collects the literals.
+     */
+    private static Object parameterize(Object obj, List<Integer> renderedIndexes) {
+        if (!isOperation(obj)) {
+            return obj == null ? null : new SQLParameter(0, renderedIndexes);
+        }
+        if (((Object[]) obj)[0].equals("field")) {
+            return obj;
+        }
+        int nextIndex = 0;
+        Object[] parameterized = ((Object[]) obj).clone();
+        // Copies of the operations whose operands are being replaced, from the innermost
+        Deque<Operation> pending = new ArrayDeque<>();
+        pending.push(new Operation(parameterized));
+        while (!pending.isEmpty()) {
+            Operation operation = pending.peek();
+            if (operation.next == operation.argsList.length) {
+                pending.pop();
+                continue;
+            }
+            int i = operation.next++;
+            Object arg = operation.argsList[i];
+            if (isOperation(arg)) {
+                if (!((Object[]) arg)[0].equals("field")) {
+                    operation.argsList[i] = ((Object[]) arg).clone();
+                    pending.push(new Operation((Object[]) operation.argsList[i]));
+                }
+            } else if (arg != null) {
+                operation.argsList[i] = new SQLParameter(nextIndex++, renderedIndexes);
+            }
+        }
+        return parameterized;
+    }
+
+    /**
+     * Writes the shape of a WHERE clause, leaving out the value of its non NULL literals, which are
+     * collected in order instead.
+     */
+    private static void appendShape(StringBuilder shape, Object obj, List<Object> literals) {
+        // Operations whose operands are being written, from the innermost
+        Deque<Operation> pending = new ArrayDeque<>();
+        while (true) {
+            if (isOperation(obj)) {
+                Object[] argsList = (Object[]) obj;
+                String op = (String) argsList[0];
+                shape.append('[').append(op.length()).append(':').append(op);
+                if (op.equals("field")) {
+                    for (int i = 1; i < argsList.length; i++) {
+                        appendValue(shape, argsList[i]);
+                    }
+                    shape.append(']');
+                } else {
+                    pending.push(new Operation(argsList));
+                }
+            } else if (obj == null) {
+                shape.append('n');
+            } else {
+                shape.append('?');
+                literals.add(obj);
+            }
+
+            while (!pending.isEmpty() && pending.peek().next == pending.peek().argsList.length) {
+                pending.pop();
+                shape.append(']');
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            Operation operation = pending.peek();
+            obj = operation.argsList[operation.next++];
+        }
+    }
+
+    /**
+     * Writes a value that is part of the shape itself, tagged with its type so that e.g. 10 and
+     * "10" do not share a statement.
+     */
+    private static void appendValue(StringBuilder shape, Object value) {
+        if (value == null) {
+            shape.append('n');
+            return;
+        }
+        if (value instanceof Integer) {
+            shape.append('i').append(((Integer) value).intValue()).append(';');
+            return;
+        }
+        String s = value.toString();
+        shape.append('<').append(value.getClass().getName()).append(' ').append(s.length()).append(':').append(s).append('>');
+    }
+
+    private static boolean isOperation(Object obj) {
+        return obj instanceof Object[] && ((Object[]) obj).length > 0 && ((Object[]) obj)[0] instanceof String;
+    }
+}
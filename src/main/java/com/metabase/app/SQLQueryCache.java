@@ -0,0 +1,209 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.metrics.SQLInstrumentation;
+import com.metabase.app.metrics.SQLTranspilerListener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread safe cache of generated SQL in front of SQLTranspiler.generateSQL, evicting the
+ * least recently used query once full.
+ * Queries are compared structurally: nested Object[] clauses are equal when their contents are,
+ * not when they are the same array, and the field map is compared by its entries. Clauses are
+ * hashed, compared and copied with a stack rather than by recursion, so deep clauses reach the
+ * limits of SQLTranspiler instead of overflowing the stack.
+ */
+public final class SQLQueryCache {
+
+    // Stands for a clause missing from the query, which is not the same as a nil clause
+    private static final Object NO_CLAUSE = new Object();
+    // Stands for null on the stacks of hash and equal, as they can't hold it
+    private static final Object NULL = new Object();
+
+    /**
+     * Structural key of a query. The hash is computed once, as it walks the whole query.
+     */
+    private static final class Key {
+        private final Utils.SQLTranspilerType type;
+        private final Map<Integer, String> fieldMap;
+        private final Object[] clauses;
+        private final int hash;
+
+        private Key(Utils.SQLTranspilerType type, Map<Integer, String> fieldMap, Object[] clauses) {
+            this.type = type;
+            this.fieldMap = fieldMap;
+            this.clauses = clauses;
+            this.hash = 31 * (31 * type.hashCode() + fieldMap.hashCode()) + hash(clauses);
+        }
+
+        /**
+         * Copy to keep in the cache, so callers can reuse or change their arrays and maps afterwards.
+         */
+        private Key copy() {
+            return new Key(this.type, new HashMap<>(this.fieldMap), deepCopy(this.clauses));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return this.hash == key.hash
+                    && this.type == key.type
+                    && equal(this.clauses, key.clauses)
+                    && this.fieldMap.equals(key.fieldMap);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private final LinkedHashMap<Key, String> entries;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public SQLQueryCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must be able to hold at least 1 query.");
+        }
+        this.entries = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                if (this.size() > maxEntries) {
+                    SQLQueryCache.this.evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String generateSQL(Utils.SQLTranspilerType type, Map<Integer, String> fieldMap, Map<String, Object> argsMap) {
+        Key key = new Key(type, fieldMap, new Object[]{
+                argsMap.containsKey(Utils.WHERE_CLAUSE) ? argsMap.get(Utils.WHERE_CLAUSE) : NO_CLAUSE,
+                argsMap.containsKey(Utils.LIMIT_CLAUSE) ? argsMap.get(Utils.LIMIT_CLAUSE) : NO_CLAUSE
+        });
+
+        String cached;
+        synchronized (this) {
+            cached = this.entries.get(key);
+            if (cached != null) {
+                this.hitCount++;
+            } else {
+                this.missCount++;
+            }
+        }
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        if (listener != null) {
+            listener.onCacheLookup(SQLTranspilerListener.QUERY_CACHE, SQLDialects.of(type), cached != null);
+        }
+        if (cached != null) {
+            return cached;
+        }
+
+        // Rendered outside of the lock, two threads missing the same query both render it
+        String sql = new SQLTranspiler(fieldMap, argsMap).generateSQL(type);
+        Key storedKey = key.copy();
+        synchronized (this) {
+            this.entries.put(storedKey, sql);
+        }
+        return sql;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Hash of the arrays in the clauses and of everything else in them, in order, with the length of
+     * every array, so that differently nested clauses hash differently.
+     */
+    private static int hash(Object[] clauses) {
+        Deque<Object> pending = new ArrayDeque<>();
+        int hash = 1;
+        pending.push(clauses);
+        while (!pending.isEmpty()) {
+            Object obj = pending.pop();
+            if (obj instanceof Object[]) {
+                Object[] array = (Object[]) obj;
+                hash = 31 * hash + array.length;
+                for (int i = array.length - 1; i >= 0; i--) {
+                    pending.push(array[i] == null ? NULL : array[i]);
+                }
+            } else {
+                hash = 31 * hash + (obj == NULL ? 0 : obj.hashCode());
+            }
+        }
+        return hash;
+    }
+
+    private static boolean equal(Object[] clauses1, Object[] clauses2) {
+        // Pairs of objects left to compare
+        Deque<Object> pairs = new ArrayDeque<>();
+        Object a = clauses1;
+        Object b = clauses2;
+        while (true) {
+            if (a != b) {
+                if (a instanceof Object[] && b instanceof Object[]) {
+                    Object[] array1 = (Object[]) a;
+                    Object[] array2 = (Object[]) b;
+                    if (array1.length != array2.length) {
+                        return false;
+                    }
+                    for (int i = 0; i < array1.length; i++) {
+                        pairs.push(array1[i] == null ? NULL : array1[i]);
+                        pairs.push(array2[i] == null ? NULL : array2[i]);
+                    }
+                } else if (a instanceof Object[] || b instanceof Object[] || !a.equals(b)) {
+                    return false;
+                }
+            }
+            if (pairs.isEmpty()) {
+                return true;
+            }
+            b = pairs.pop();
+            a = pairs.pop();
+        }
+    }
+
+    private static Object[] deepCopy(Object[] clauses) {
+        Object[] copy = clauses.clone();
+        // Copies whose nested arrays are still those of the original
+        Deque<Object[]> pending = new ArrayDeque<>();
+        pending.push(copy);
+        while (!pending.isEmpty()) {
+            Object[] array = pending.pop();
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] instanceof Object[]) {
+                    array[i] = ((Object[]) array[i]).clone();
+                    pending.push((Object[]) array[i]);
+                }
+            }
+        }
+        return copy;
+    }
+}
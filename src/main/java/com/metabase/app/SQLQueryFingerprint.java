@@ -0,0 +1,255 @@
+package com.metabase.app;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 128 bit fingerprint of a query, for cache keys, sharding or grouping queries in logs. It is
+ * computed in a single walk of the nested Object[] clauses, with a stack rather than by
+ * recursion, feeding operators, field names and literals to a MurmurHash3 style hash as numbers
+ * and chars, without building any string.
+ * Fields are hashed by the name the field map gives them, so queries read as the same SQL get the
+ * same fingerprint whatever else is in their field map. With Mode.SHAPE, literals other than NULL
+ * only count as being there, so [:= [:field 2] "cam"] and [:= [:field 2] "bob"] share a
+ * fingerprint, as do LIMIT 10 and LIMIT 20. With Mode.LITERALS, integral numbers are hashed by
+ * value whatever their type, as the transpiler writes them.
+ * Fingerprints only depend on the query, so they are the same in every JVM and from one version
+ * to the next, except for literals of other types, hashed by their toString, and for already
+ * built objects such as bind parameters, hashed by their class name and hashCode.
+ */
+public final class SQLQueryFingerprint {
+
+    public enum Mode {
+        // Literal values left out
+        SHAPE,
+        LITERALS
+    }
+
+    // Fed before every part so that differently nested queries hash differently
+    private static final long WHERE = 1;
+    private static final long LIMIT = 2;
+    private static final long OPERATION = 3;
+    private static final long OPERATION_END = 4;
+    private static final long FIELD = 5;
+    private static final long UNKNOWN_FIELD = 6;
+    private static final long NULL = 7;
+    private static final long LITERAL = 8;
+    private static final long INTEGER = 9;
+    private static final long DOUBLE = 10;
+    private static final long STRING = 11;
+    private static final long OBJECT = 12;
+    private static final long OTHER = 13;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long high;
+    private final long low;
+
+    private SQLQueryFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static SQLQueryFingerprint of(Map<Integer, String> fieldMap, Map<String, Object> argsMap, Mode mode) {
+        Hash hash = new Hash();
+        if (argsMap.containsKey(Utils.WHERE_CLAUSE)) {
+            hash.add(WHERE);
+            hashClause(hash, argsMap.get(Utils.WHERE_CLAUSE), fieldMap, mode);
+        }
+        if (argsMap.containsKey(Utils.LIMIT_CLAUSE)) {
+            hash.add(LIMIT);
+            hashClause(hash, argsMap.get(Utils.LIMIT_CLAUSE), fieldMap, mode);
+        }
+        return hash.finish();
+    }
+
+    public long getHigh() {
+        return this.high;
+    }
+
+    public long getLow() {
+        return this.low;
+    }
+
+    /**
+     * 64 bit fingerprint, as likely to tell queries apart as any 64 bits hash.
+     */
+    public long asLong() {
+        return this.low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SQLQueryFingerprint)) return false;
+        SQLQueryFingerprint that = (SQLQueryFingerprint) o;
+        return this.high == that.high && this.low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) this.low;
+    }
+
+    /**
+     * The 32 hex digits of the fingerprint.
+     */
+    @Override
+    public String toString() {
+        char[] digits = new char[32];
+        for (int i = 0; i < 16; i++) {
+            digits[i] = Character.forDigit((int) (this.high >>> (60 - 4 * i)) & 0xf, 16);
+            digits[i + 16] = Character.forDigit((int) (this.low >>> (60 - 4 * i)) & 0xf, 16);
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Hashes a clause in the order its operators, fields and literals are written, with the
+     * number of operands at the end of every operation.
+     */
+    private static void hashClause(Hash hash, Object clause, Map<Integer, String> fieldMap, Mode mode) {
+        // Operations whose operands are being hashed and the index of their next operand
+        Object[][] operations = new Object[16][];
+        int[] nextOperands = new int[16];
+        int depth = 0;
+        Object obj = clause;
+        while (true) {
+            if (isOperation(obj)) {
+                Object[] argsList = (Object[]) obj;
+                String op = (String) argsList[0];
+                if (op.equals("field")) {
+                    hashField(hash, argsList, fieldMap);
+                } else {
+                    hash.add(OPERATION);
+                    hash.add(op);
+                    if (depth == operations.length) {
+                        operations = Arrays.copyOf(operations, depth * 2);
+                        nextOperands = Arrays.copyOf(nextOperands, depth * 2);
+                    }
+                    operations[depth] = argsList;
+                    nextOperands[depth++] = 1;
+                }
+            } else if (obj == null) {
+                hash.add(NULL);
+            } else if (mode == Mode.SHAPE) {
+                hash.add(LITERAL);
+            } else {
+                hashLiteral(hash, obj);
+            }
+
+            while (depth > 0 && nextOperands[depth - 1] == operations[depth - 1].length) {
+                hash.add(OPERATION_END);
+                hash.add(operations[depth - 1].length - 1);
+                operations[--depth] = null;
+            }
+            if (depth == 0) {
+                return;
+            }
+            obj = operations[depth - 1][nextOperands[depth - 1]++];
+        }
+    }
+
+    private static void hashField(Hash hash, Object[] argsList, Map<Integer, String> fieldMap) {
+        String name = argsList.length == 2 && argsList[1] instanceof Integer ? fieldMap.get(argsList[1]) : null;
+        if (name != null) {
+            hash.add(FIELD);
+            hash.add(name);
+            return;
+        }
+        // Refused by the transpiler, but still told apart
+        hash.add(UNKNOWN_FIELD);
+        hash.add(argsList.length);
+        if (argsList.length > 1 && argsList[1] instanceof Integer) {
+            hash.add((Integer) argsList[1]);
+        }
+    }
+
+    /**
+     * Hashes a literal as SQLObjectFactory.literal reads it.
+     */
+    private static void hashLiteral(Hash hash, Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            hash.add(INTEGER);
+            hash.add(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            hash.add(DOUBLE);
+            hash.add(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof String) {
+            hash.add(STRING);
+            hash.add((String) value);
+        } else if (value instanceof SQLObjectTranspiler) {
+            hash.add(OBJECT);
+            hash.add(value.getClass().getName());
+            hash.add(value.hashCode());
+        } else {
+            hash.add(OTHER);
+            hash.add(value.toString());
+        }
+    }
+
+    private static boolean isOperation(Object obj) {
+        return obj instanceof Object[] && ((Object[]) obj).length > 0 && ((Object[]) obj)[0] instanceof String;
+    }
+
+    /**
+     * The two 64 bit lanes of MurmurHash3 x64 128, fed a long at a time.
+     */
+    private static final class Hash {
+        private long h1 = 0;
+        private long h2 = 0;
+        private long count = 0;
+
+        private void add(long k) {
+            this.h1 ^= Long.rotateLeft(k * C1, 31) * C2;
+            this.h1 = Long.rotateLeft(this.h1, 27) + this.h2;
+            this.h1 = this.h1 * 5 + 0x52dce729;
+
+            this.h2 ^= Long.rotateLeft(k * C2, 33) * C1;
+            this.h2 = Long.rotateLeft(this.h2, 31) + this.h1;
+            this.h2 = this.h2 * 5 + 0x38495ab5;
+            this.count++;
+        }
+
+        /**
+         * Adds the length of the text, then its chars four at a time.
+         */
+        private void add(String s) {
+            int length = s.length();
+            this.add(length);
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                this.add(s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+            }
+            if (i < length) {
+                long k = 0;
+                for (int shift = 0; i < length; i++, shift += 16) {
+                    k |= (long) s.charAt(i) << shift;
+                }
+                this.add(k);
+            }
+        }
+
+        private SQLQueryFingerprint finish() {
+            long h1 = this.h1 ^ this.count;
+            long h2 = this.h2 ^ this.count;
+            h1 += h2;
+            h2 += h1;
+            h1 = mix(h1);
+            h2 = mix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new SQLQueryFingerprint(h1, h2);
+        }
+
+        private static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb53fe1a85ec3L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
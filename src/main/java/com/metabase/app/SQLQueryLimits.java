@@ -0,0 +1,96 @@
+package com.metabase.app;
+
+import java.util.Arrays;
+
+/**
+ * Largest query accepted, checked on the clauses before anything is built so that pathological
+ * inputs, e.g. a generated filter nested a million levels deep, fail early with a clear error.
+ * Building, optimizing and rendering don't recurse, so the depth is otherwise only bounded by the
+ * heap. The depth counts the nested clauses, a literal or a field alone being at depth 1, and the
+ * size counts every clause and literal. A limit of 0 turns the check off.
+ */
+public final class SQLQueryLimits {
+    public static final SQLQueryLimits DEFAULT = new SQLQueryLimits(100_000, 1_000_000);
+    public static final SQLQueryLimits NONE = new SQLQueryLimits(0, 0);
+
+    private final int maxDepth;
+    private final int maxSize;
+
+    public SQLQueryLimits(int maxDepth, int maxSize) {
+        if (maxDepth < 0 || maxSize < 0) {
+            throw new IllegalArgumentException("Query limits can't be negative.");
+        }
+        this.maxDepth = maxDepth;
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Throws when a clause written as Object[] operations is deeper or larger than the limits,
+     * walking it without building anything.
+     */
+    public void check(Object clause) {
+        if (this.maxDepth == 0 && this.maxSize == 0) {
+            return;
+        }
+        // Operations being walked and the index of their next operand
+        Object[][] operations = new Object[16][];
+        int[] nextOperands = new int[16];
+        int depth = 0;
+        int size = 1;
+
+        if (isOperation(clause)) {
+            operations[depth++] = (Object[]) clause;
+        }
+        this.checkDepth(1);
+        while (depth > 0) {
+            Object[] operation = operations[depth - 1];
+            int next = ++nextOperands[depth - 1];
+            if (next >= operation.length || operation[0].equals("field")) {
+                nextOperands[depth - 1] = 0;
+                operations[--depth] = null;
+                continue;
+            }
+            this.checkSize(++size);
+            if (isOperation(operation[next])) {
+                this.checkDepth(depth + 1);
+                if (depth == operations.length) {
+                    operations = Arrays.copyOf(operations, depth * 2);
+                    nextOperands = Arrays.copyOf(nextOperands, depth * 2);
+                }
+                operations[depth++] = (Object[]) operation[next];
+            } else {
+                this.checkDepth(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Throws when a clause at the given depth is too deep, for parsers counting as they read.
+     */
+    public void checkDepth(int depth) {
+        if (this.maxDepth > 0 && depth > this.maxDepth) {
+            throw new IllegalArgumentException("The query is nested more than " + this.maxDepth + " levels deep");
+        }
+    }
+
+    /**
+     * Throws when a query of the given number of clauses and literals is too large.
+     */
+    public void checkSize(int size) {
+        if (this.maxSize > 0 && size > this.maxSize) {
+            throw new IllegalArgumentException("The query has more than " + this.maxSize + " clauses and literals");
+        }
+    }
+
+    private static boolean isOperation(Object obj) {
+        return obj instanceof Object[] && ((Object[]) obj).length > 0 && ((Object[]) obj)[0] instanceof String;
+    }
+}
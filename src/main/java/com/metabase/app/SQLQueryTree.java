@@ -0,0 +1,257 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.dialect.SQLFragments;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.dialect.SQLRenderer;
+import com.metabase.app.dialect.SQLStandardDialect;
+import com.metabase.app.variables.SQLIdentifierTable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Query that is edited a clause at a time, e.g. by a filter builder, and rendered after every edit.
+ * A tree never changes: replace returns a new tree sharing every node off the edited path, whose
+ * optimized objects are kept. Only the nodes from the edit up to the root are built and optimized
+ * again, and as all versions share the SQL rendered for the operators of the tree, only that path
+ * is rendered again for standard dialects.
+ * Fragments are only kept while their operator is used by a tree. Each operator keeps the whole
+ * text of its subtree, so memory grows with the depth of the filter times its length.
+ */
+public final class SQLQueryTree {
+
+    /**
+     * Clause of the query as it was written, with its optimized object.
+     */
+    private static final class Node {
+        private final String operator;
+        private final Node[] operands;
+        private final SQLObjectTranspiler optimized;
+
+        private Node(String operator, Node[] operands, SQLObjectTranspiler optimized) {
+            this.operator = operator;
+            this.operands = operands;
+            this.optimized = optimized;
+        }
+    }
+
+    /**
+     * Object already optimized, which its parent gets back as it is instead of optimizing it again.
+     */
+    private static final class Optimized implements SQLObjectTranspiler {
+        private final SQLObjectTranspiler object;
+
+        private Optimized(SQLObjectTranspiler object) {
+            this.object = object;
+        }
+
+        @Override
+        public void accept(SQLNodeVisitor visitor) {
+            this.object.accept(visitor);
+        }
+
+        @Override
+        public SQLObjectTranspiler optimize() {
+            return this.object;
+        }
+    }
+
+    /**
+     * Fragments of every operator rendered, kept while the operator is in a tree.
+     */
+    private static final class Fragments implements SQLFragments {
+        private final Map<SQLObjectTranspiler, String> fragments = Collections.synchronizedMap(new WeakHashMap<>());
+
+        @Override
+        public String get(SQLObjectTranspiler operator) {
+            return this.fragments.get(operator);
+        }
+
+        @Override
+        public boolean keeps(SQLObjectTranspiler operator) {
+            return true;
+        }
+
+        @Override
+        public void put(SQLObjectTranspiler operator, String sql) {
+            this.fragments.put(operator, sql);
+        }
+    }
+
+    private final SQLObjectFactory factory;
+    private final Node where;
+    private final Node limit;
+    private final SQLTranspiler transpiler;
+    // Shared by all versions of the tree
+    private final ConcurrentMap<SQLDialect, SQLFragments> fragments;
+
+    public SQLQueryTree(Map<Integer, String> fieldMap, Map<String, Object> argsMap) {
+        this(new SQLObjectFactory(new SQLIdentifierTable(fieldMap)), argsMap);
+    }
+
+    public SQLQueryTree(SQLObjectFactory factory, Map<String, Object> argsMap) {
+        this(
+                factory,
+                argsMap.containsKey(Utils.WHERE_CLAUSE) ? build(factory, argsMap.get(Utils.WHERE_CLAUSE)) : null,
+                argsMap.containsKey(Utils.LIMIT_CLAUSE) ? build(factory, argsMap.get(Utils.LIMIT_CLAUSE)) : null,
+                new ConcurrentHashMap<>()
+        );
+    }
+
+    private SQLQueryTree(SQLObjectFactory factory, Node where, Node limit,
+                         ConcurrentMap<SQLDialect, SQLFragments> fragments) {
+        this.factory = factory;
+        this.where = where;
+        this.limit = limit;
+        this.fragments = fragments;
+        this.transpiler = new SQLTranspiler(
+                where == null ? null : new Optimized(where.optimized),
+                limit == null ? null : new Optimized(limit.optimized)
+        );
+    }
+
+    /**
+     * Tree whose WHERE clause has the clause at the path replaced, the path being the index of
+     * the operand at every level: {} is the whole clause, {1, 0} the first operand of the second
+     * operand of the top operator.
+     */
+    public SQLQueryTree replace(int[] path, Object clause) {
+        if (this.where == null) {
+            throw new IllegalArgumentException("The query has no WHERE clause.");
+        }
+        Node where = this.replace(this.where, path, build(this.factory, clause));
+        return new SQLQueryTree(this.factory, where, this.limit, this.fragments);
+    }
+
+    /**
+     * Tree with another LIMIT clause, or none when null.
+     */
+    public SQLQueryTree withLimit(Object limit) {
+        Node node = limit == null ? null : build(this.factory, limit);
+        return new SQLQueryTree(this.factory, this.where, node, this.fragments);
+    }
+
+    public SQLTranspiler getTranspiler() {
+        return this.transpiler;
+    }
+
+    public String generateSQL(Utils.SQLTranspilerType type) {
+        return this.generateSQL(SQLDialects.of(type));
+    }
+
+    /**
+     * Renders the query, reusing the SQL of the operators rendered for an earlier version of the
+     * tree. Dialects with their own renderers render the whole query.
+     */
+    public String generateSQL(SQLDialect dialect) {
+        if (!(dialect instanceof SQLStandardDialect)) {
+            return this.transpiler.generateSQL(dialect);
+        }
+        SQLFragments fragments = this.fragments.computeIfAbsent(dialect, d -> new Fragments());
+        StringBuilder out = new StringBuilder();
+        this.transpiler.accept(new SQLRenderer((SQLStandardDialect) dialect, out, fragments));
+        return out.toString();
+    }
+
+    private Node replace(Node node, int[] path, Node replacement) {
+        // Nodes from the root down to the parent of the replaced one
+        Node[] parents = new Node[path.length];
+        for (int depth = 0; depth < path.length; depth++) {
+            if (node.operands == null || path[depth] < 0 || path[depth] >= node.operands.length) {
+                throw new IllegalArgumentException("No clause at index " + path[depth] + " of level " + depth);
+            }
+            parents[depth] = node;
+            node = node.operands[path[depth]];
+        }
+        node = replacement;
+        for (int depth = path.length - 1; depth >= 0; depth--) {
+            Node[] operands = parents[depth].operands.clone();
+            operands[path[depth]] = node;
+            node = operator(this.factory, parents[depth].operator, operands);
+        }
+        return node;
+    }
+
+    /**
+     * Builds the node of a clause as SQLTranspiler would, optimizing it from its optimized operands.
+     * As there, the clause is checked against the limits of the factory and built with a stack.
+     */
+    private static Node build(SQLObjectFactory factory, Object clause) {
+        factory.getLimits().check(clause);
+        if (!isOperation(clause)) {
+            return leaf(factory, clause);
+        }
+        // Operations being built, with their operands and how many of them are built
+        Object[][] argsLists = new Object[16][];
+        Node[][] operands = new Node[16][];
+        int[] builtCounts = new int[16];
+        int depth = 0;
+
+        argsLists[depth] = (Object[]) clause;
+        operands[depth++] = new Node[((Object[]) clause).length - 1];
+        while (true) {
+            Object[] argsList = argsLists[depth - 1];
+            Node node;
+            if (argsList[0].equals("field")) {
+                if (argsList.length < 2 || !(argsList[1] instanceof Integer)) {
+                    throw new IllegalArgumentException("Invalid field id");
+                }
+                node = new Node(null, null, factory.optimize(factory.field((Integer) argsList[1])));
+            } else {
+                Node[] built = operands[depth - 1];
+                int i = builtCounts[depth - 1];
+                if (i < built.length) {
+                    Object arg = argsList[i + 1];
+                    if (isOperation(arg)) {
+                        if (depth == argsLists.length) {
+                            argsLists = Arrays.copyOf(argsLists, depth * 2);
+                            operands = Arrays.copyOf(operands, depth * 2);
+                            builtCounts = Arrays.copyOf(builtCounts, depth * 2);
+                        }
+                        argsLists[depth] = (Object[]) arg;
+                        operands[depth++] = new Node[((Object[]) arg).length - 1];
+                    } else {
+                        built[i] = leaf(factory, arg);
+                        builtCounts[depth - 1]++;
+                    }
+                    continue;
+                }
+                node = operator(factory, (String) argsList[0], built);
+            }
+            depth--;
+            argsLists[depth] = null;
+            operands[depth] = null;
+            builtCounts[depth] = 0;
+            if (depth == 0) {
+                return node;
+            }
+            operands[depth - 1][builtCounts[depth - 1]++] = node;
+        }
+    }
+
+    private static Node leaf(SQLObjectFactory factory, Object clause) {
+        SQLObjectTranspiler leaf = clause instanceof SQLObjectTranspiler
+                ? (SQLObjectTranspiler) clause
+                : factory.literal(clause);
+        return new Node(null, null, factory.optimize(leaf));
+    }
+
+    private static boolean isOperation(Object clause) {
+        return clause instanceof Object[] && ((Object[]) clause).length > 0 && ((Object[]) clause)[0] instanceof String;
+    }
+
+    private static Node operator(SQLObjectFactory factory, String op, Node[] operands) {
+        SQLObjectTranspiler[] objects = new SQLObjectTranspiler[operands.length];
+        for (int i = 0; i < operands.length; i++) {
+            objects[i] = operands[i].optimized;
+        }
+        // Built on the optimized operands themselves, so a factory sharing objects shares these too
+        return new Node(op, operands, factory.optimizeOver(factory.operator(op, objects)));
+    }
+}
@@ -0,0 +1,160 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLStatementSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a statement streamed by SQLRenderer to a Writer, or encoded in UTF-8 to a channel. The
+ * chars are copied in pieces to a small array, then encoded into a direct buffer written to the
+ * channel whenever it is full, so the statement never exists whole, as a String or as bytes.
+ * Every thread keeps the buffers of its channel streams for the statements it writes one after
+ * the other, as SQLWorkStack does.
+ */
+abstract class SQLStatementStream implements SQLStatementSink {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private long length = 0;
+
+    /**
+     * Number of chars of the statement written so far.
+     */
+    long getLength() {
+        return this.length;
+    }
+
+    @Override
+    public final void write(StringBuilder sql, int start, int end) {
+        this.length += end - start;
+        try {
+            this.writeChars(sql, start, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    abstract void writeChars(StringBuilder sql, int start, int end) throws IOException;
+
+    /**
+     * Writes what is still buffered once the whole statement was handed to the stream.
+     */
+    abstract void finish() throws IOException;
+
+    static SQLStatementStream to(Writer out) {
+        return new WriterStream(out);
+    }
+
+    /**
+     * Stream to a blocking channel, to release once the statement is written.
+     */
+    static ChannelStream to(WritableByteChannel out) {
+        ChannelStream stream = ChannelStream.THREAD_STREAM.get();
+        if (stream == null) {
+            stream = new ChannelStream();
+            ChannelStream.THREAD_STREAM.set(stream);
+        }
+        if (stream.channel != null) {
+            // A statement written while another is, e.g. by a Writer adapter, gets its own buffers
+            stream = new ChannelStream();
+        }
+        stream.channel = out;
+        stream.encoder.reset();
+        return stream;
+    }
+
+    private static final class WriterStream extends SQLStatementStream {
+        private final Writer out;
+        private final char[] chars = new char[CHUNK_SIZE];
+
+        private WriterStream(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        void writeChars(StringBuilder sql, int start, int end) throws IOException {
+            while (start < end) {
+                int count = Math.min(end - start, this.chars.length);
+                sql.getChars(start, start + count, this.chars, 0);
+                this.out.write(this.chars, 0, count);
+                start += count;
+            }
+        }
+
+        @Override
+        void finish() {
+        }
+    }
+
+    static final class ChannelStream extends SQLStatementStream {
+        private static final ThreadLocal<ChannelStream> THREAD_STREAM = new ThreadLocal<>();
+
+        // Lone surrogates are written as '?', as String.getBytes does
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final char[] array = new char[CHUNK_SIZE];
+        // Chars not encoded yet, in write mode: at most the first half of a surrogate pair
+        private final CharBuffer chars = CharBuffer.wrap(this.array);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(4 * CHUNK_SIZE);
+        // Null while the stream is not in use
+        private WritableByteChannel channel;
+
+        @Override
+        void writeChars(StringBuilder sql, int start, int end) throws IOException {
+            while (start < end) {
+                int count = Math.min(end - start, this.chars.remaining());
+                sql.getChars(start, start + count, this.array, this.chars.position());
+                this.chars.position(this.chars.position() + count);
+                start += count;
+                this.chars.flip();
+                this.encode(false);
+                this.chars.compact();
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            this.chars.flip();
+            this.encode(true);
+            this.chars.clear();
+            while (this.encoder.flush(this.bytes).isOverflow()) {
+                this.writeBytes();
+            }
+            this.writeBytes();
+        }
+
+        void release() {
+            this.channel = null;
+            this.chars.clear();
+            this.bytes.clear();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            CoderResult result;
+            while ((result = this.encoder.encode(this.chars, this.bytes, endOfInput)).isOverflow()) {
+                this.writeBytes();
+            }
+            if (result.isError()) {
+                // Not reached with REPLACE actions
+                result.throwException();
+            }
+        }
+
+        private void writeBytes() throws IOException {
+            this.bytes.flip();
+            while (this.bytes.hasRemaining()) {
+                this.channel.write(this.bytes);
+            }
+            this.bytes.clear();
+        }
+    }
+}
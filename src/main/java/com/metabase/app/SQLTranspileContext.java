@@ -0,0 +1,156 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.parser.SQLQueryParser;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * What transpiling a query needs besides the query itself: the factory and its field table, the
+ * buffers of the parser, the stack building the query objects, the output buffer and a renderer
+ * per dialect writing into it. All of them are kept from query to query, so once warm, a context
+ * only allocates the query objects and the statement returned.
+ * A context is used by one thread at a time. Services handling a query per request get one from
+ * a Pool for the request, which suits virtual threads as well, where a ThreadLocal would give
+ * every request a context of its own.
+ */
+public final class SQLTranspileContext {
+    // Output buffers grown past this size are replaced by small ones on reset
+    private static final int MAX_KEPT_SIZE = 64 * 1024;
+
+    private final SQLQueryParser parser;
+    private final SQLObjectFactory factory;
+    private final SQLQueryParser.Scratch parseScratch = new SQLQueryParser.Scratch();
+    private final SQLTranspiler.BuildStack buildStack = new SQLTranspiler.BuildStack();
+    private StringBuilder out = new StringBuilder(256);
+    // Renderers writing into out, by dialect
+    private final Map<SQLDialect, SQLNodeVisitor> renderers = new IdentityHashMap<>();
+
+    public SQLTranspileContext(SQLObjectFactory factory) {
+        this(new SQLQueryParser(factory));
+    }
+
+    public SQLTranspileContext(SQLQueryParser parser) {
+        this.parser = parser;
+        this.factory = parser.getFactory();
+    }
+
+    public SQLObjectFactory getFactory() {
+        return this.factory;
+    }
+
+    /**
+     * Builds a query from its clauses as SQLTranspiler(SQLObjectFactory, Map) does.
+     */
+    public SQLTranspiler build(Map<String, Object> argsMap) {
+        return new SQLTranspiler(this.factory, argsMap, this.buildStack);
+    }
+
+    /**
+     * Reads a query of the DSL, see SQLQueryParser.
+     */
+    public SQLTranspiler parse(CharSequence text) {
+        return this.parser.parse(text, this.parseScratch);
+    }
+
+    /**
+     * Reads a UTF-8 encoded query of the DSL, without moving the position of the buffer.
+     */
+    public SQLTranspiler parse(ByteBuffer utf8) {
+        return this.parser.parse(utf8, this.parseScratch);
+    }
+
+    /**
+     * Renders the statement into the buffer of the context, which is returned and holds it until
+     * the next call or reset.
+     */
+    public CharSequence render(SQLTranspiler query, SQLDialect dialect) {
+        this.out.setLength(0);
+        if (query.getFactory() != this.factory) {
+            // Other factories may render their queries their own way
+            query.appendSQL(this.out, dialect);
+            return this.out;
+        }
+        SQLNodeVisitor renderer = this.renderers.get(dialect);
+        if (renderer == null) {
+            renderer = this.factory.newRenderer(dialect, this.out);
+            this.renderers.put(dialect, renderer);
+        }
+        try {
+            query.appendSQL(this.out, dialect, renderer);
+        } catch (RuntimeException e) {
+            // The renderer may be left in the middle of a walk
+            this.renderers.remove(dialect);
+            throw e;
+        }
+        return this.out;
+    }
+
+    /**
+     * Parses and renders a UTF-8 encoded query, see render.
+     */
+    public CharSequence transpile(ByteBuffer utf8, SQLDialect dialect) {
+        return this.render(this.parse(utf8), dialect);
+    }
+
+    public String generateSQL(Map<String, Object> argsMap, SQLDialect dialect) {
+        return this.render(this.build(argsMap), dialect).toString();
+    }
+
+    /**
+     * Empties the output buffer, replacing it by a small one when a huge statement grew it.
+     */
+    public void reset() {
+        this.out.setLength(0);
+        if (this.out.capacity() > MAX_KEPT_SIZE) {
+            this.out = new StringBuilder(256);
+            this.renderers.clear();
+        }
+    }
+
+    /**
+     * Contexts sharing a factory, lent to a thread or request at a time. A context is created
+     * when none is idle, and at most maxIdle of them are kept once returned, so a pool holds
+     * about as many contexts as there are threads transpiling at once, i.e. carrier threads when
+     * requests are served by virtual threads.
+     */
+    public static final class Pool {
+        private final SQLQueryParser parser;
+        private final BlockingQueue<SQLTranspileContext> idle;
+
+        public Pool(SQLObjectFactory factory) {
+            this(new SQLQueryParser(factory), Runtime.getRuntime().availableProcessors() * 2);
+        }
+
+        public Pool(SQLQueryParser parser, int maxIdle) {
+            if (maxIdle < 1) {
+                throw new IllegalArgumentException("The pool must keep at least one context.");
+            }
+            this.parser = parser;
+            this.idle = new ArrayBlockingQueue<>(maxIdle);
+        }
+
+        public SQLTranspileContext acquire() {
+            SQLTranspileContext context = this.idle.poll();
+            return context != null ? context : new SQLTranspileContext(this.parser);
+        }
+
+        /**
+         * Returns a context acquired from the pool, which is reset and not used by the caller
+         * anymore.
+         */
+        public void release(SQLTranspileContext context) {
+            if (context.parser != this.parser) {
+                throw new IllegalArgumentException("The context doesn't belong to this pool.");
+            }
+            context.reset();
+            // Dropped when the pool is full
+            this.idle.offer(context);
+        }
+    }
+}
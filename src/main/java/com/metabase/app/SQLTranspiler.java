@@ -2,159 +2,367 @@ package com.metabase.app;
 
 import com.metabase.app.clauses.SQLLimitClause;
 import com.metabase.app.clauses.SQLWhereClause;
-import com.metabase.app.operators.SQLBinaryOperator;
-import com.metabase.app.operators.SQLEqualityOperator;
-import com.metabase.app.operators.SQLLogicalOperator;
-import com.metabase.app.operators.SQLUnaryOperator;
-import com.metabase.app.variables.SQLVariable;
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.dialect.SQLRenderer;
+import com.metabase.app.dialect.SQLStandardDialect;
+import com.metabase.app.metrics.SQLInstrumentation;
+import com.metabase.app.metrics.SQLTranspilerListener;
+import com.metabase.app.variables.SQLIdentifierTable;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * Hello world!
- *
+ * Builds the SQL clauses of a query and renders them for a dialect.
+ * The query tree is built and optimized in the constructor and never changes afterwards, so a
+ * transpiler can be rendered from several threads at once.
+ * The time of every phase and the size of the output are reported to the listener set in
+ * SQLInstrumentation, if any.
  */
 public final class SQLTranspiler implements SQLObjectTranspiler
 {
-    private final Map<Integer, String> fieldMap;
-    private final Map<String, Object> argsMap;
-    private final Map<String, SQLObjectTranspiler> sqlClausesMap = new HashMap<>();
+    // Optimized clauses, null when the query has none
+    private final SQLObjectTranspiler where;
+    private final SQLObjectTranspiler limit;
+    // Optimizes and renders the clauses, null for the default behavior
+    private final SQLObjectFactory factory;
 
 
     public SQLTranspiler(Map<Integer, String> fieldMap, Map<String, Object> argsMap) {
-        this.fieldMap = fieldMap;
-        this.argsMap = argsMap;
+        this(new SQLIdentifierTable(fieldMap), argsMap);
+    }
 
-        this.createSQLClausesMap();
+    /**
+     * Builds the query on an already resolved field table, so queries sharing a field map do not
+     * resolve and quote the field names again.
+     */
+    public SQLTranspiler(SQLIdentifierTable fields, Map<String, Object> argsMap) {
+        this(new SQLObjectFactory(fields), argsMap);
     }
 
+    /**
+     * Builds the query with a configured factory, e.g. one with IN list options.
+     */
+    public SQLTranspiler(SQLObjectFactory factory, Map<String, Object> argsMap) {
+        this(factory, argsMap, new BuildStack());
+    }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        StringBuilder query = new StringBuilder("SELECT * FROM data");
-        if (this.sqlClausesMap.containsKey(Utils.WHERE_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.WHERE_CLAUSE).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
-        }
-        if (this.sqlClausesMap.containsKey(Utils.LIMIT_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.LIMIT_CLAUSE).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    /**
+     * Builds the query with the stack of a SQLTranspileContext, reused from query to query.
+     */
+    SQLTranspiler(SQLObjectFactory factory, Map<String, Object> argsMap, BuildStack stack) {
+        this.factory = factory;
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+
+        SQLObjectTranspiler where = argsMap.containsKey(Utils.WHERE_CLAUSE)
+                ? convertToSQLObject(factory, argsMap.get(Utils.WHERE_CLAUSE), stack)
+                : null;
+        SQLObjectTranspiler limit = argsMap.containsKey(Utils.LIMIT_CLAUSE)
+                ? convertToSQLObject(factory, argsMap.get(Utils.LIMIT_CLAUSE), stack)
+                : null;
+
+        if (listener != null) {
+            listener.onPhase(SQLTranspilerListener.Phase.BUILD, null, System.nanoTime() - start);
+            start = System.nanoTime();
         }
-        query.append(";");
-        return query.toString();
+        this.where = where == null ? null : this.optimize(new SQLWhereClause(where));
+        this.limit = limit == null ? null : this.optimize(new SQLLimitClause(limit));
+        this.onOptimized(listener, start);
+    }
+
+    /**
+     * Builds the query from already built WHERE and LIMIT objects, e.g. read by SQLQueryParser.
+     * Either of them is null when the query has no such clause.
+     */
+    public SQLTranspiler(SQLObjectTranspiler where, SQLObjectTranspiler limit) {
+        this(null, where, limit);
+    }
+
+    /**
+     * Builds the query from WHERE and LIMIT objects built by the factory, which optimizes and
+     * renders them. Either of them is null when the query has no such clause.
+     */
+    public SQLTranspiler(SQLObjectFactory factory, SQLObjectTranspiler where, SQLObjectTranspiler limit) {
+        this.factory = factory;
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+
+        this.where = where == null ? null : this.optimize(new SQLWhereClause(where));
+        this.limit = limit == null ? null : this.optimize(new SQLLimitClause(limit));
+        this.onOptimized(listener, start);
+    }
+
+
+    /**
+     * The optimized WHERE clause, or null when the query has none.
+     */
+    public SQLObjectTranspiler getWhereClause() {
+        return this.where;
     }
 
+    /**
+     * The LIMIT clause, or null when the query has none.
+     */
+    public SQLObjectTranspiler getLimitClause() {
+        return this.limit;
+    }
+
+    /**
+     * Renders the whole "SELECT ... ;" statement. Through appendSQL, callers rendering many queries
+     * can reuse the same buffer by resetting its length between statements.
+     */
     @Override
-    public String transpileToMySQL() {
-        StringBuilder query = new StringBuilder("SELECT * FROM data");
-        if (this.sqlClausesMap.containsKey(Utils.WHERE_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.WHERE_CLAUSE).generateSQL(Utils.SQLTranspilerType.MY_SQL));
-        }
-        if (this.sqlClausesMap.containsKey(Utils.LIMIT_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.LIMIT_CLAUSE).generateSQL(Utils.SQLTranspilerType.MY_SQL));
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitSelect(this);
+    }
+
+    @Override
+    public void appendSQL(StringBuilder out, SQLDialect dialect) {
+        this.appendSQL(out, dialect, this.newRenderer(dialect, out));
+    }
+
+    /**
+     * Renders the statement with a renderer writing into out, e.g. one kept by a
+     * SQLTranspileContext.
+     */
+    void appendSQL(StringBuilder out, SQLDialect dialect, SQLNodeVisitor renderer) {
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        if (listener == null) {
+            this.accept(renderer);
+            return;
         }
-        query.append(";");
-        return query.toString();
+        int length = out.length();
+        long start = System.nanoTime();
+        this.accept(renderer);
+        listener.onPhase(SQLTranspilerListener.Phase.RENDER, dialect, System.nanoTime() - start);
+        listener.onRendered(dialect, out.length() - length);
     }
 
     @Override
-    public String transpileToServerSQL() {
-        StringBuilder query = new StringBuilder("SELECT");
-        if (this.sqlClausesMap.containsKey(Utils.LIMIT_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.LIMIT_CLAUSE).generateSQL(Utils.SQLTranspilerType.SQL_SERVER));
+    public void appendSQL(SQLDialectBuffers out) {
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        if (listener == null) {
+            out.render(this);
+            return;
+        }
+        int[] lengths = new int[out.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = out.get(i).length();
         }
-        query.append(" ").append("* FROM data");
-        if (this.sqlClausesMap.containsKey(Utils.WHERE_CLAUSE)) {
-            query.append(this.sqlClausesMap.get(Utils.WHERE_CLAUSE).generateSQL(Utils.SQLTranspilerType.SQL_SERVER));
+        long start = System.nanoTime();
+        out.render(this);
+        listener.onPhase(SQLTranspilerListener.Phase.RENDER, null, System.nanoTime() - start);
+        for (int i = 0; i < lengths.length; i++) {
+            listener.onRendered(out.getDialect(i), out.get(i).length() - lengths[i]);
         }
-        query.append(";");
-        return query.toString();
     }
 
-    private void createSQLClausesMap() {
-        this.argsMap.forEach((k, v) -> {
-            if (k.equals(Utils.WHERE_CLAUSE)) {
-                sqlClausesMap.put(k, new SQLWhereClause(this.convertToSQLObject(v)));
+    /**
+     * Streams the statement to the writer while it is rendered, so that a huge statement, e.g.
+     * with long IN lists, never sits whole in memory. The fragments a factory keeps are neither
+     * used nor kept, and dialects with their own renderers are rendered whole before being
+     * written. The writer is not flushed.
+     */
+    public void writeSQL(Writer out, SQLDialect dialect) throws IOException {
+        this.writeSQL(SQLStatementStream.to(out), dialect);
+    }
+
+    /**
+     * Streams the statement encoded in UTF-8, see writeSQL(Writer, SQLDialect).
+     */
+    public void writeSQL(OutputStream out, SQLDialect dialect) throws IOException {
+        this.writeSQL(Channels.newChannel(out), dialect);
+    }
+
+    /**
+     * Streams the statement encoded in UTF-8 to a blocking channel, through a direct buffer
+     * reused by the statements the thread writes, see writeSQL(Writer, SQLDialect).
+     */
+    public void writeSQL(WritableByteChannel out, SQLDialect dialect) throws IOException {
+        SQLStatementStream.ChannelStream stream = SQLStatementStream.to(out);
+        try {
+            this.writeSQL(stream, dialect);
+        } finally {
+            stream.release();
+        }
+    }
+
+    private void writeSQL(SQLStatementStream stream, SQLDialect dialect) throws IOException {
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        // Holds the end of the statement, which may still be taken back
+        StringBuilder out = new StringBuilder();
+        try {
+            if (dialect instanceof SQLStandardDialect) {
+                this.accept(new SQLRenderer((SQLStandardDialect) dialect, out, null, stream));
+            } else {
+                this.accept(this.newRenderer(dialect, out));
             }
-            else if (k.equals(Utils.LIMIT_CLAUSE)) {
-                sqlClausesMap.put(k, new SQLLimitClause(this.convertToSQLObject(v)));
+            stream.write(out, 0, out.length());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        stream.finish();
+        if (listener != null) {
+            listener.onPhase(SQLTranspilerListener.Phase.RENDER, dialect, System.nanoTime() - start);
+            listener.onRendered(dialect, (int) Math.min(stream.getLength(), Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Renders the statement for several dialects in a single walk of the query tree.
+     */
+    public Map<Utils.SQLTranspilerType, String> generateSQL(Utils.SQLTranspilerType... types) {
+        SQLDialectBuffers out = new SQLDialectBuffers(types);
+        this.appendSQL(out);
+
+        Map<Utils.SQLTranspilerType, String> statements = new EnumMap<>(Utils.SQLTranspilerType.class);
+        for (int i = 0; i < out.size(); i++) {
+            statements.put(out.getType(i), out.get(i).toString());
+        }
+        return statements;
+    }
+
+    /**
+     * Renders the statement for several dialects, in a single walk of the query tree when all of
+     * them use an SQLRenderer.
+     */
+    public Map<SQLDialect, String> generateSQL(SQLDialect... dialects) {
+        SQLDialectBuffers out = new SQLDialectBuffers(dialects);
+        this.appendSQL(out);
+
+        Map<SQLDialect, String> statements = new LinkedHashMap<>();
+        for (int i = 0; i < out.size(); i++) {
+            statements.put(out.getDialect(i), out.get(i).toString());
+        }
+        return statements;
+    }
+
+    /**
+     * Factory of the query, null for the default behavior.
+     */
+    SQLObjectFactory getFactory() {
+        return this.factory;
+    }
+
+    private void onOptimized(SQLTranspilerListener listener, long start) {
+        if (listener != null) {
+            listener.onPhase(SQLTranspilerListener.Phase.OPTIMIZE, null, System.nanoTime() - start);
+            listener.onQueryBuilt(this);
+        }
+    }
+
+    private SQLObjectTranspiler optimize(SQLObjectTranspiler clause) {
+        return this.factory == null ? clause.optimize() : this.factory.optimize(clause);
+    }
+
+    private SQLNodeVisitor newRenderer(SQLDialect dialect, StringBuilder out) {
+        return this.factory == null ? dialect.newRenderer(out) : this.factory.newRenderer(dialect, out);
+    }
+
+    /**
+     * Builds the objects of a clause bottom up, with a stack of the operations being built rather
+     * than by recursion, so the depth of the clause is only bounded by the limits of the factory,
+     * which are checked first.
+     */
+    private static SQLObjectTranspiler convertToSQLObject(SQLObjectFactory factory, Object obj, BuildStack stack) {
+        factory.getLimits().check(obj);
+        if (!isOperation(obj) || isField(obj)) {
+            return convertLeaf(factory, obj);
+        }
+        try {
+            return convertOperation(factory, (Object[]) obj, stack);
+        } catch (RuntimeException e) {
+            // The next query starts from an empty stack, and doesn't keep this one alive
+            stack.clear();
+            throw e;
+        }
+    }
+
+    private static SQLObjectTranspiler convertOperation(SQLObjectFactory factory, Object[] obj, BuildStack stack) {
+        int depth = 0;
+        stack.push(depth++, obj);
+        while (true) {
+            Object[] argsList = stack.argsLists[depth - 1];
+            SQLObjectTranspiler[] built = stack.operands[depth - 1];
+            int i = stack.builtCounts[depth - 1];
+
+            if (i < built.length) {
+                Object arg = argsList[i + 1];
+                if (isOperation(arg) && !isField(arg)) {
+                    stack.push(depth++, (Object[]) arg);
+                } else {
+                    built[i] = convertLeaf(factory, arg);
+                    stack.builtCounts[depth - 1]++;
+                }
+                continue;
             }
-        });
-    }
-
-    private SQLObjectTranspiler convertToSQLObject(Object obj) {
-
-        if (obj instanceof Object[] && ((Object[]) obj).length > 0 && ((Object[]) obj)[0] instanceof String) {
-            Object[] argsList = ((Object[]) obj);
-            String op = (String) argsList[0];
-            switch (op) {
-                // Field case
-                case "field":
-                    if (argsList[1] instanceof Integer) {
-                        return new SQLVariable(this.fieldMap.get((Integer) argsList[1]), false);
-                    }
-                    break;
-                // Unary operators
-                case "is-empty":
-                case "not-empty":
-                case "not":
-                    // check 1 other args
-                    if (argsList.length != 2) {
-                        throw new IllegalArgumentException("Unary operators can't have more than one operand.");
-                    }
-                    return new SQLUnaryOperator(
-                            SQLUnaryOperator.StringToOperatorType(op),
-                            this.convertToSQLObject(argsList[1])
-                    );
-                // Logical operators
-                case Utils.AND_OP:
-                case Utils.OR_OP:
-                    if (argsList.length < 2) {
-                        throw new IllegalArgumentException("Logical operators must have at least 1 operand.");
-                    }
-                    SQLObjectTranspiler[] logicalOperands = new SQLObjectTranspiler[argsList.length-1];
-
-                    for (int i = 1; i < argsList.length; i++) {
-                        logicalOperands[i-1] = this.convertToSQLObject(argsList[i]);
-                    }
-                    return new SQLLogicalOperator(
-                          SQLLogicalOperator.StringToSQLLogicalOperatorType(op),
-                          logicalOperands
-                    );
-                case "<":
-                case ">":
-                    // check 2 other args
-                    if (argsList.length != 3) {
-                        throw new IllegalArgumentException("Binary operators must have two operand.");
-                    }
-                    return new SQLBinaryOperator(
-                            op,
-                            this.convertToSQLObject(argsList[1]),
-                            this.convertToSQLObject(argsList[2])
-                    );
-                case "=":
-                case "!=":
-                    // check >2 other args
-                    if (argsList.length < 3) {
-                        throw new IllegalArgumentException("Equality operators must have at least 2 operands.");
-                    }
-                    SQLObjectTranspiler[] equalityOperands = new SQLObjectTranspiler[argsList.length-2];
-                    SQLObjectTranspiler mainOperand = this.convertToSQLObject(argsList[1]);
-
-                    for (int i = 2; i < argsList.length; i++) {
-                        equalityOperands[i-2] = this.convertToSQLObject(argsList[i]);
-                    }
-                    return new SQLEqualityOperator(
-                            SQLEqualityOperator.StringToSQLEqualityOperatorType(op),
-                            mainOperand,
-                            equalityOperands
-                    );
-                default:
-                    throw new IllegalArgumentException("Invalid SQL query!");
+            SQLObjectTranspiler operation = factory.operator((String) argsList[0], built);
+            depth--;
+            stack.argsLists[depth] = null;
+            stack.operands[depth] = null;
+            if (depth == 0) {
+                return operation;
             }
+            stack.operands[depth - 1][stack.builtCounts[depth - 1]++] = operation;
+        }
+    }
+
+    private static SQLObjectTranspiler convertLeaf(SQLObjectFactory factory, Object obj) {
+        if (isField(obj)) {
+            Object[] argsList = (Object[]) obj;
+            return argsList[1] instanceof Integer
+                    ? factory.field((int) (Integer) argsList[1])
+                    : null;
+        } else if (obj instanceof SQLObjectTranspiler) {
+            // Already built objects, such as bind parameters, are used as they are
+            return (SQLObjectTranspiler) obj;
         } else {
-            return new SQLVariable(obj, obj instanceof String);
+            return factory.literal(obj);
         }
+    }
 
-        return null;
+    private static boolean isOperation(Object obj) {
+        return obj instanceof Object[] && ((Object[]) obj).length > 0 && ((Object[]) obj)[0] instanceof String;
+    }
+
+    private static boolean isField(Object obj) {
+        return isOperation(obj) && ((Object[]) obj)[0].equals("field");
+    }
+
+    /**
+     * Operations being built by convertToSQLObject, with their operands and how many of them are
+     * built, at every depth.
+     */
+    static final class BuildStack {
+        private Object[][] argsLists = new Object[16][];
+        private SQLObjectTranspiler[][] operands = new SQLObjectTranspiler[16][];
+        private int[] builtCounts = new int[16];
+
+        private void push(int depth, Object[] argsList) {
+            if (depth == this.argsLists.length) {
+                this.argsLists = Arrays.copyOf(this.argsLists, depth * 2);
+                this.operands = Arrays.copyOf(this.operands, depth * 2);
+                this.builtCounts = Arrays.copyOf(this.builtCounts, depth * 2);
+            }
+            this.argsLists[depth] = argsList;
+            this.operands[depth] = new SQLObjectTranspiler[argsList.length - 1];
+            this.builtCounts[depth] = 0;
+        }
+
+        private void clear() {
+            Arrays.fill(this.argsLists, null);
+            Arrays.fill(this.operands, null);
+        }
     }
 }
@@ -13,4 +13,18 @@ public class Utils {
     public final static String OR_OP = "or";
     public final static String AND_OP_UP = "AND";
     public final static String OR_OP_UP = "OR";
+
+    /**
+     * Compares two number literals, exactly when both are integral.
+     */
+    public static int compareNumbers(Number n1, Number n2) {
+        if (isIntegral(n1) && isIntegral(n2)) {
+            return Long.compare(n1.longValue(), n2.longValue());
+        }
+        return Double.compare(n1.doubleValue(), n2.doubleValue());
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+    }
 }
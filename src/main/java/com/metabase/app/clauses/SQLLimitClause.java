@@ -1,7 +1,8 @@
 package com.metabase.app.clauses;
 
 import com.metabase.app.SQLObjectTranspiler;
-import com.metabase.app.Utils;
+import com.metabase.app.SQLOptimizer;
+import com.metabase.app.dialect.SQLNodeVisitor;
 
 public final class SQLLimitClause implements SQLObjectTranspiler {
     private final SQLObjectTranspiler clause;
@@ -10,18 +11,24 @@ public final class SQLLimitClause implements SQLObjectTranspiler {
         this.clause = clause;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return String.format(" LIMIT %s", this.clause.generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    public SQLObjectTranspiler getClause() {
+        return this.clause;
     }
 
     @Override
-    public String transpileToMySQL() {
-        return String.format(" LIMIT %s", this.clause.generateSQL(Utils.SQLTranspilerType.MY_SQL));
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitLimit(this);
     }
 
     @Override
-    public String transpileToServerSQL() {
-        return String.format(" TOP %s", this.clause.generateSQL(Utils.SQLTranspilerType.MY_SQL));
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
+    }
+
+    /**
+     * Optimizes the clause once its value was optimized into the given one.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler optimizedClause) {
+        return optimizedClause == this.clause ? this : new SQLLimitClause(optimizedClause);
     }
 }
@@ -1,7 +1,9 @@
 package com.metabase.app.clauses;
 
 import com.metabase.app.SQLObjectTranspiler;
-import com.metabase.app.Utils;
+import com.metabase.app.SQLOptimizer;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.operators.SQLSimplifier;
 
 public final class SQLWhereClause implements SQLObjectTranspiler {
     private final SQLObjectTranspiler clause;
@@ -10,25 +12,26 @@ public final class SQLWhereClause implements SQLObjectTranspiler {
         this.clause = clause;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    public SQLObjectTranspiler getClause() {
+        return this.clause;
     }
 
     @Override
-    public String transpileToMySQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.MY_SQL);
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitWhere(this);
     }
 
     @Override
-    public String transpileToServerSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.SQL_SERVER);
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
     }
 
-    private String transpileEquivalentQuery(Utils.SQLTranspilerType type) {
-        String whereQuery = this.clause.generateSQL(type);
-        return !whereQuery.isEmpty()
-            ? String.format(" WHERE %s", whereQuery)
-            : "";
+    /**
+     * Optimizes the clause once its condition was optimized into the given one.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler optimizedClause) {
+        // Nothing is above the condition of the WHERE, where NULL filters the row out as false does
+        SQLObjectTranspiler condition = SQLSimplifier.foldContradictions(optimizedClause);
+        return condition == this.clause ? this : new SQLWhereClause(condition);
     }
 }
@@ -0,0 +1,12 @@
+package com.metabase.app.dialect;
+
+/**
+ * DuckDB follows PostgreSQL: double quoted identifiers, doubled quotes in strings and LIMIT.
+ */
+public final class DuckDBDialect extends SQLStandardDialect {
+
+    @Override
+    public String getName() {
+        return "duckdb";
+    }
+}
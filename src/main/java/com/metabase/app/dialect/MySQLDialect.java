@@ -0,0 +1,40 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.Utils;
+import com.metabase.app.variables.SQLStringEscaper;
+
+/**
+ * MySQL quotes identifiers with backticks, escapes strings with backslashes and has no VALUES
+ * table to compare with, so long IN lists are only split into chunks.
+ */
+public final class MySQLDialect extends SQLStandardDialect {
+
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    protected void appendIdentifier(StringBuilder out, String name, boolean requiresQuotes) {
+        if (requiresQuotes) {
+            out.append('`').append(name).append('`');
+        } else {
+            out.append(name);
+        }
+    }
+
+    @Override
+    protected void appendString(StringBuilder out, String value) {
+        SQLStringEscaper.appendBackslashEscaped(out, value);
+    }
+
+    @Override
+    protected boolean supportsValuesTable() {
+        return false;
+    }
+
+    @Override
+    protected Utils.SQLTranspilerType getLegacyType() {
+        return Utils.SQLTranspilerType.MY_SQL;
+    }
+}
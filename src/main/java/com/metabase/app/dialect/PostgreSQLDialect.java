@@ -0,0 +1,20 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.Utils;
+
+/**
+ * PostgreSQL writes standard SQL: double quoted identifiers, quotes escaped by doubling them and
+ * LIMIT at the end of the statement.
+ */
+public final class PostgreSQLDialect extends SQLStandardDialect {
+
+    @Override
+    public String getName() {
+        return "postgresql";
+    }
+
+    @Override
+    protected Utils.SQLTranspilerType getLegacyType() {
+        return Utils.SQLTranspilerType.POSTGRESQL;
+    }
+}
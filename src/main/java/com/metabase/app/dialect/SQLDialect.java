@@ -0,0 +1,19 @@
+package com.metabase.app.dialect;
+
+/**
+ * A SQL dialect, supplying the renderer that writes queries for it. Dialects are looked up by
+ * name in SQLDialects, and can be added there, or through a
+ * META-INF/services/com.metabase.app.dialect.SQLDialect file, without changing any query object.
+ */
+public interface SQLDialect {
+    /**
+     * Lower case name the dialect is registered under, e.g. "postgresql".
+     */
+    String getName();
+
+    /**
+     * Renderer writing into the given buffer. The SQLRenderer of a SQLStandardDialect can share
+     * a single walk of the query tree with other dialects.
+     */
+    SQLNodeVisitor newRenderer(StringBuilder out);
+}
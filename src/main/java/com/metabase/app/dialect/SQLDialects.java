@@ -0,0 +1,121 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the dialects queries can be rendered for. The built in dialects are always there,
+ * others are registered by hand or found with ServiceLoader. The class path is only scanned for
+ * them when a dialect is registered or listed, or a name is not one of the built in dialects, so
+ * short runs using the built in dialects don't pay for the scan.
+ */
+public final class SQLDialects {
+    public static final SQLDialect POSTGRESQL = new PostgreSQLDialect();
+    public static final SQLDialect MY_SQL = new MySQLDialect();
+    public static final SQLDialect SQL_SERVER = new SQLServerDialect();
+    public static final SQLDialect SQLITE = new SQLiteDialect();
+    public static final SQLDialect DUCKDB = new DuckDBDialect();
+
+    // Dialect of every SQLTranspilerType, indexed by ordinal
+    private static final SQLDialect[] BY_TYPE = new SQLDialect[Utils.SQLTranspilerType.values().length];
+    private static final Map<String, SQLDialect> BY_NAME = new ConcurrentHashMap<>();
+    private static volatile boolean servicesLoaded = false;
+    // Set while the thread holding the lock loads the services, which may register dialects
+    private static boolean servicesLoading = false;
+
+    static {
+        BY_TYPE[Utils.SQLTranspilerType.POSTGRESQL.ordinal()] = POSTGRESQL;
+        BY_TYPE[Utils.SQLTranspilerType.MY_SQL.ordinal()] = MY_SQL;
+        BY_TYPE[Utils.SQLTranspilerType.SQL_SERVER.ordinal()] = SQL_SERVER;
+
+        for (SQLDialect dialect : new SQLDialect[]{POSTGRESQL, MY_SQL, SQL_SERVER, SQLITE, DUCKDB}) {
+            add(dialect);
+        }
+    }
+
+    private SQLDialects() {}
+
+    /**
+     * Adds a dialect, which can't take the name of one already registered.
+     */
+    public static void register(SQLDialect dialect) {
+        loadServices();
+        add(dialect);
+    }
+
+    private static void add(SQLDialect dialect) {
+        SQLDialect previous = BY_NAME.putIfAbsent(key(dialect.getName()), dialect);
+        if (previous != null && previous != dialect) {
+            throw new IllegalArgumentException("Dialect " + dialect.getName() + " is already registered.");
+        }
+    }
+
+    public static SQLDialect get(String name) {
+        SQLDialect dialect = BY_NAME.get(key(name));
+        if (dialect == null && !servicesLoaded) {
+            loadServices();
+            dialect = BY_NAME.get(key(name));
+        }
+        if (dialect == null) {
+            throw new IllegalArgumentException("Unknown dialect " + name);
+        }
+        return dialect;
+    }
+
+    public static Collection<SQLDialect> getAll() {
+        loadServices();
+        return Collections.unmodifiableCollection(BY_NAME.values());
+    }
+
+    public static SQLDialect of(Utils.SQLTranspilerType type) {
+        return BY_TYPE[type.ordinal()];
+    }
+
+    /**
+     * SQLTranspilerType of a built in dialect, or null for the others.
+     */
+    public static Utils.SQLTranspilerType typeOf(SQLDialect dialect) {
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            if (BY_TYPE[type.ordinal()] == dialect) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the dialects found with ServiceLoader, once they all could be. Other threads wait
+     * for them to be registered, and a failed load is tried again on the next call.
+     */
+    private static synchronized void loadServices() {
+        if (servicesLoaded || servicesLoading) {
+            return;
+        }
+        servicesLoading = true;
+        try {
+            // All found before any is registered, so a provider failing to load leaves none behind
+            List<SQLDialect> dialects = new ArrayList<>();
+            for (SQLDialect dialect : ServiceLoader.load(SQLDialect.class)) {
+                dialects.add(dialect);
+            }
+            for (SQLDialect dialect : dialects) {
+                add(dialect);
+            }
+            servicesLoaded = true;
+        } finally {
+            servicesLoading = false;
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
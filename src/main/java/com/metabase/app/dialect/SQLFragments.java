@@ -0,0 +1,22 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.SQLObjectTranspiler;
+
+/**
+ * SQL already written for some operators of a tree in one dialect, which SQLRenderer writes again
+ * instead of walking the operator. Objects are never changed once built, so a fragment stays valid
+ * as long as the same object is in the tree.
+ */
+public interface SQLFragments {
+    /**
+     * SQL kept for the operator, or null.
+     */
+    String get(SQLObjectTranspiler operator);
+
+    /**
+     * True when the SQL written for the operator is worth keeping.
+     */
+    boolean keeps(SQLObjectTranspiler operator);
+
+    void put(SQLObjectTranspiler operator, String sql);
+}
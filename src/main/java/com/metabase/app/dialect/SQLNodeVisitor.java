@@ -0,0 +1,50 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLParameter;
+import com.metabase.app.variables.SQLVariable;
+
+/**
+ * Visitor over the objects of a query, called back by SQLObjectTranspiler.accept.
+ */
+public interface SQLNodeVisitor {
+    void visitSelect(SQLTranspiler query);
+
+    void visitWhere(SQLWhereClause where);
+
+    void visitLimit(SQLLimitClause limit);
+
+    void visitLogical(SQLLogicalOperator operator);
+
+    void visitUnary(SQLUnaryOperator operator);
+
+    void visitBinary(SQLBinaryOperator operator);
+
+    void visitEquality(SQLEqualityOperator operator);
+
+    void visitVariable(SQLVariable variable);
+
+    void visitLong(SQLLongLiteral literal);
+
+    void visitDouble(SQLDoubleLiteral literal);
+
+    void visitBoolean(SQLBooleanLiteral literal);
+
+    void visitParameter(SQLParameter parameter);
+
+    /**
+     * Objects that do not implement accept, such as objects written before dialects could be
+     * plugged in, which only implement the transpileTo* methods.
+     */
+    void visitOther(SQLObjectTranspiler object);
+}
@@ -0,0 +1,651 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLInListOptions;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLParameter;
+import com.metabase.app.variables.SQLVariable;
+
+/**
+ * Writes a query into a buffer for a SQLStandardDialect. The structure of the statement is the same
+ * for every dialect, what differs is asked to the dialect, so several dialects can be rendered in a
+ * single walk of the tree (see SQLSharedRenderer). Being the only renderer class of the standard
+ * dialects keeps the accept calls of the query objects monomorphic.
+ * Writing nothing for a condition means it was optimized out because it is always true.
+ * Past MAX_RECURSION nested operands, the tree is walked with a stack of what is left to do for
+ * every node being written rather than by recursion, so queries of any depth can be rendered on
+ * threads with small stacks while the usual shallow ones don't pay for the stack.
+ * With a sink, the statement is streamed: once the buffer holds DRAIN_SIZE chars which can't be
+ * taken back anymore, they are handed to the sink and removed from the buffer, so huge statements
+ * never sit whole in memory. Positions in the statement are kept from its start, drained or not.
+ */
+public final class SQLRenderer implements SQLNodeVisitor {
+    private static final String WHERE = " WHERE ";
+
+    // Steps to resume a node at once an operand is written, in the low bits, the operand index above
+    private static final int WHERE_END = 0;
+    private static final int LOGICAL_OPERAND = 1;
+    private static final int UNARY_END = 2;
+    private static final int BINARY_OPERAND = 3;
+    private static final int EQUALITY_OPERAND = 4;
+    private static final int STEP_BITS = 3;
+    private static final int STEP_MASK = (1 << STEP_BITS) - 1;
+    // Nested operands visited by recursion, the deeper ones are visited from a work stack
+    private static final int MAX_RECURSION = 128;
+    // Chars buffered before handing them to the sink, when there is one
+    private static final int DRAIN_SIZE = 8 * 1024;
+    // Whether objects of a class implement the transpileTo* method of a legacy type, by its ordinal:
+    // the default ones render through accept, which would call visitOther back for ever
+    private static final ClassValue<boolean[]> TRANSPILED = new ClassValue<boolean[]>() {
+        @Override
+        protected boolean[] computeValue(Class<?> type) {
+            Utils.SQLTranspilerType[] types = Utils.SQLTranspilerType.values();
+            boolean[] transpiled = new boolean[types.length];
+            for (Utils.SQLTranspilerType legacyType : types) {
+                try {
+                    transpiled[legacyType.ordinal()] = !type.getMethod(transpileMethod(legacyType)).isDefault();
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return transpiled;
+        }
+    };
+
+    private final SQLStandardDialect dialect;
+    private final StringBuilder out;
+    // SQL already written for operators of the tree in this dialect, null when not memoized
+    private final SQLFragments fragments;
+    // Gets the statement as it is written, null when it is only written in out
+    private final SQLStatementSink sink;
+    // Chars handed to the sink and removed from the start of out
+    private int drained = 0;
+    // Start of the WHERE keyword, separators and parentheses written since the last condition,
+    // which are taken back with the operand they precede when it writes nothing, -1 when none
+    private int prefixStart = -1;
+    // OR operators being written which may still take back everything they wrote, since one of
+    // their operands may be optimized out, and what the outermost one may take back from
+    private int pins = 0;
+    private int pinStart = 0;
+    // Operands being visited by recursion
+    private int depth = 0;
+    // Stack of the walk once deeper than MAX_RECURSION, null until then
+    private SQLWorkStack stack;
+    // Visited before resuming the top of the stack, null when there is none
+    private SQLObjectTranspiler next;
+
+    public SQLRenderer(SQLStandardDialect dialect, StringBuilder out) {
+        this(dialect, out, null);
+    }
+
+    /**
+     * Renderer writing again the fragment kept for an operator instead of walking it, and keeping
+     * the fragments of the operators it walks.
+     */
+    public SQLRenderer(SQLStandardDialect dialect, StringBuilder out, SQLFragments fragments) {
+        this(dialect, out, fragments, null);
+    }
+
+    /**
+     * Renderer streaming the statement to the sink. Once the walk is done, the end of the
+     * statement is left in out for the caller to hand to the sink.
+     */
+    public SQLRenderer(SQLStandardDialect dialect, StringBuilder out, SQLFragments fragments, SQLStatementSink sink) {
+        this.dialect = dialect;
+        this.out = out;
+        this.fragments = fragments;
+        this.sink = sink;
+    }
+
+    public SQLStandardDialect getDialect() {
+        return this.dialect;
+    }
+
+    /**
+     * Calls the visit method of the node as its accept method would. Every node of the walk is
+     * visited from here, where calling accept would dispatch through the interface each time.
+     */
+    private void visit(SQLObjectTranspiler node) {
+        Class<?> type = node.getClass();
+        if (type == SQLVariable.class) {
+            this.visitVariable((SQLVariable) node);
+        } else if (type == SQLLongLiteral.class) {
+            this.visitLong((SQLLongLiteral) node);
+        } else if (type == SQLEqualityOperator.class) {
+            this.visitEquality((SQLEqualityOperator) node);
+        } else if (type == SQLLogicalOperator.class) {
+            this.visitLogical((SQLLogicalOperator) node);
+        } else if (type == SQLUnaryOperator.class) {
+            this.visitUnary((SQLUnaryOperator) node);
+        } else if (type == SQLBinaryOperator.class) {
+            this.visitBinary((SQLBinaryOperator) node);
+        } else if (type == SQLWhereClause.class) {
+            this.visitWhere((SQLWhereClause) node);
+        } else if (type == SQLLimitClause.class) {
+            this.visitLimit((SQLLimitClause) node);
+        } else {
+            node.accept(this);
+        }
+    }
+
+    /**
+     * Whether the object is written without visiting operands of its own.
+     */
+    static boolean isLeaf(SQLObjectTranspiler object) {
+        Class<?> type = object.getClass();
+        return type == SQLVariable.class || type == SQLLongLiteral.class || type == SQLDoubleLiteral.class
+                || type == SQLBooleanLiteral.class || type == SQLParameter.class;
+    }
+
+    /**
+     * Visits the operand, then resumes the node at the step. Always the last thing a node does,
+     * so past MAX_RECURSION nested operands the rest of the walk can be done from a stack.
+     */
+    private void visitOperand(SQLObjectTranspiler operand, Object node, int step, int index, int start, int mark) {
+        if (this.depth < MAX_RECURSION) {
+            this.depth++;
+            this.visit(operand);
+            this.resume(node, step, index, start, mark);
+            this.depth--;
+        } else {
+            this.pushOperand(operand, node, step, index, start, mark);
+        }
+    }
+
+    /**
+     * The first operand past the limit walks the rest, the others are pushed for it.
+     */
+    private void pushOperand(SQLObjectTranspiler operand, Object node, int step, int index, int start, int mark) {
+        boolean walks = this.stack == null;
+        if (walks) {
+            this.stack = SQLWorkStack.acquire();
+        }
+        this.stack.push(node, step | index << STEP_BITS, start, mark);
+        this.next = operand;
+        if (walks) {
+            this.walkStack();
+        }
+    }
+
+    /**
+     * Visits the next operand or resumes the top of the stack until both are done.
+     */
+    private void walkStack() {
+        try {
+            while (true) {
+                if (this.next != null) {
+                    SQLObjectTranspiler node = this.next;
+                    this.next = null;
+                    this.visit(node);
+                } else if (this.stack.pop()) {
+                    this.resume(this.stack.node, this.stack.step & STEP_MASK, this.stack.step >>> STEP_BITS, this.stack.start, this.stack.mark);
+                } else {
+                    return;
+                }
+            }
+        } finally {
+            this.next = null;
+            this.stack.release();
+            this.stack = null;
+        }
+    }
+
+    private void resume(Object node, int step, int index, int start, int mark) {
+        switch (step) {
+            case WHERE_END:
+                // Nothing written means the whole clause was optimized out
+                if (this.position() == start + WHERE.length()) {
+                    this.truncate(start);
+                }
+                break;
+            case LOGICAL_OPERAND:
+                this.endLogicalOperand((SQLLogicalOperator) node, index, start, mark);
+                break;
+            case UNARY_END:
+                this.endUnary((SQLUnaryOperator) node, start, mark);
+                break;
+            case BINARY_OPERAND:
+                this.appendBinary((SQLBinaryOperator) node, index, start);
+                break;
+            case EQUALITY_OPERAND:
+                this.appendEquality((SQLEqualityOperator) node, index, start);
+                break;
+        }
+    }
+
+    @Override
+    public void visitSelect(SQLTranspiler query) {
+        SQLObjectTranspiler whereClause = query.getWhereClause();
+        SQLObjectTranspiler limitClause = query.getLimitClause();
+        boolean limitBeforeColumns = limitClause != null && this.dialect.isLimitBeforeColumns();
+
+        this.out.append("SELECT");
+        if (limitBeforeColumns) {
+            this.visit(limitClause);
+        }
+        this.out.append(" * FROM data");
+        if (whereClause != null) {
+            this.visit(whereClause);
+        }
+        if (limitClause != null && !limitBeforeColumns) {
+            this.visit(limitClause);
+        }
+        this.out.append(';');
+    }
+
+    @Override
+    public void visitWhere(SQLWhereClause where) {
+        int start = this.position();
+        this.startPrefix(start);
+        this.out.append(WHERE);
+        this.visitOperand(where.getClause(), where, WHERE_END, 0, start, 0);
+    }
+
+    @Override
+    public void visitLimit(SQLLimitClause limit) {
+        this.out.append(this.dialect.getLimitKeyword());
+        this.visit(limit.getClause());
+    }
+
+    @Override
+    public void visitLogical(SQLLogicalOperator operator) {
+        if (this.appendFragment(operator)) {
+            return;
+        }
+        int start = this.position();
+        if (this.sink != null && mayTakeBack(operator) && this.pins++ == 0) {
+            this.pinStart = this.prefixStart >= 0 ? this.prefixStart : start;
+        }
+        this.appendLogicalOperand(operator, 0, start);
+    }
+
+    /**
+     * Writes the i-th operand of a logical operator written from start, preceded by the operator
+     * when an operand was written before, and in parenthesis if the precedence of the child
+     * logical statement is less than that of the father operation.
+     */
+    private void appendLogicalOperand(SQLLogicalOperator operator, int i, int start) {
+        SQLObjectTranspiler[] operands = operator.getOperands();
+        if (i == operands.length) {
+            this.unpin(operator);
+            this.keepFragment(operator, start);
+            return;
+        }
+        int operandStart = this.position();
+        this.startPrefix(operandStart);
+        if (operandStart > start) {
+            this.out.append(operator.getOperator().getSeparator());
+        }
+        if (SQLLogicalOperator.needsParentheses(operator, operands[i])) {
+            this.out.append('(');
+        }
+        this.visitOperand(operands[i], operator, LOGICAL_OPERAND, i, start, operandStart);
+    }
+
+    private void endLogicalOperand(SQLLogicalOperator operator, int i, int start, int operandStart) {
+        // Something was written before the operand exactly when it is preceded by the operator
+        int operandQueryStart = operandStart > start
+                ? operandStart + operator.getOperator().getSeparator().length()
+                : operandStart;
+        if (SQLLogicalOperator.needsParentheses(operator, operator.getOperands()[i])) {
+            if (this.position() == operandQueryStart + 1) {
+                this.truncate(operandQueryStart);
+            } else {
+                this.out.append(')');
+            }
+        }
+
+        // Empty means the query was optimized and is always true
+        // => OR will always be true, AND will simply ignore
+        if (this.position() == operandQueryStart) {
+            if (operator.getOperator() == SQLLogicalOperator.OperatorType.OR) {
+                this.truncate(start);
+                this.unpin(operator);
+                this.keepFragment(operator, start);
+                return;
+            }
+            this.truncate(operandStart);
+        }
+        this.appendLogicalOperand(operator, i + 1, start);
+    }
+
+    @Override
+    public void visitUnary(SQLUnaryOperator operator) {
+        if (this.appendFragment(operator)) {
+            return;
+        }
+        int start = this.position();
+        if (operator.getOperator() == SQLUnaryOperator.OperatorType.NOT) {
+            this.out.append("NOT ");
+        }
+        if (operator.needsParentheses()) {
+            // Taken back when the operand writes nothing
+            this.startPrefix(this.position());
+            this.out.append('(');
+        }
+        this.visitOperand(operator.getOperand(), operator, UNARY_END, 0, start, this.position());
+    }
+
+    private void endUnary(SQLUnaryOperator operator, int start, int operandStart) {
+        switch (operator.getOperator()) {
+            case NOT:
+                if (this.position() == operandStart) {
+                    if (operator.needsParentheses()) {
+                        this.truncate(operandStart - 1);
+                    }
+                    this.out.append("TRUE");
+                } else if (operator.needsParentheses()) {
+                    this.out.append(')');
+                }
+                break;
+            case IS_NOT_NULL:
+            case IS_NULL:
+                this.out.append(' ').append(operator.getOperator());
+                break;
+        }
+        this.prefixStart = -1;
+        this.keepFragment(operator, start);
+    }
+
+    @Override
+    public void visitBinary(SQLBinaryOperator operator) {
+        if (this.appendFragment(operator)) {
+            return;
+        }
+        this.appendBinary(operator, 0, this.position());
+    }
+
+    private void appendBinary(SQLBinaryOperator operator, int i, int start) {
+        switch (i) {
+            case 0:
+                this.visitOperand(operator.getOperand1(), operator, BINARY_OPERAND, 1, start, 0);
+                break;
+            case 1:
+                this.out.append(' ').append(operator.getOperator()).append(' ');
+                if (this.sink != null) {
+                    this.drainIfFull();
+                }
+                this.visitOperand(operator.getOperand2(), operator, BINARY_OPERAND, 2, start, 0);
+                break;
+            default:
+                this.prefixStart = -1;
+                this.keepFragment(operator, start);
+        }
+    }
+
+    @Override
+    public void visitEquality(SQLEqualityOperator operator) {
+        if (this.appendFragment(operator)) {
+            return;
+        }
+        this.appendEquality(operator, 0, this.position());
+    }
+
+    private void appendEquality(SQLEqualityOperator operator, int part, int start) {
+        while (true) {
+            SQLObjectTranspiler operand = this.appendEqualityText(operator, part++);
+            if (operand == null) {
+                this.prefixStart = -1;
+                this.keepFragment(operator, start);
+                return;
+            }
+            if (this.sink != null && part > 1) {
+                this.drainIfFull();
+            }
+            // Literals and fields of long lists are written in a loop, without being resumed
+            if (!isLeaf(operand)) {
+                this.visitOperand(operand, operator, EQUALITY_OPERAND, part, start, 0);
+                return;
+            }
+            this.visit(operand);
+        }
+    }
+
+    /**
+     * Writes the text of the operator before its part-th operand and returns that operand, the
+     * main operand being written again before every chunk of a chunked list. Once all operands are
+     * written, writes the end of the operator and returns null.
+     */
+    private SQLObjectTranspiler appendEqualityText(SQLEqualityOperator operator, int part) {
+        SQLObjectTranspiler mainOperand = operator.getMainOperand();
+        SQLObjectTranspiler[] operands = operator.getOperands();
+        boolean equals = operator.getOperator() == SQLEqualityOperator.OperatorType.EQUALS;
+        String in = equals ? " IN (" : " NOT IN (";
+
+        // Acts as a binary operator if there is only 1 comparison
+        if (operands.length == 1) {
+            if (part == 0) {
+                return mainOperand;
+            }
+            if (part == 1) {
+                this.out.append(' ').append(operator.getOperator()).append(' ');
+                return operands[0];
+            }
+            return null;
+        }
+        if (this.usesValuesTable(operator)) {
+            if (part == 0) {
+                return mainOperand;
+            }
+            if (part > operands.length) {
+                this.out.append(')').append(this.dialect.getValuesTableEnd()).append(')');
+                return null;
+            }
+            if (part == 1) {
+                this.out.append(in).append(this.dialect.getValuesTableStart()).append('(');
+            } else {
+                this.out.append("), (");
+            }
+            return operands[part - 1];
+        }
+        if (!operator.isChunked()) {
+            // Case where there is a list of elements to compare it with
+            if (part == 0) {
+                return mainOperand;
+            }
+            if (part > operands.length) {
+                this.out.append(')');
+                return null;
+            }
+            this.out.append(part == 1 ? in : ", ");
+            return operands[part - 1];
+        }
+        // (x IN (chunk) OR x IN (chunk)...), (x NOT IN (chunk) AND x NOT IN (chunk)...)
+        int chunkSize = operator.getOptions().getChunkSize();
+        int chunkCount = (operands.length + chunkSize - 1) / chunkSize;
+        if (part == chunkCount + operands.length) {
+            this.out.append("))");
+            return null;
+        }
+        int chunk = part / (chunkSize + 1);
+        int position = part % (chunkSize + 1);
+        if (position == 0) {
+            this.out.append(chunk == 0 ? "(" : equals ? ") OR " : ") AND ");
+            return mainOperand;
+        }
+        this.out.append(position == 1 ? in : ", ");
+        return operands[chunk * chunkSize + position - 1];
+    }
+
+    private boolean usesValuesTable(SQLEqualityOperator operator) {
+        SQLInListOptions options = operator.getOptions();
+        return options.getValuesThreshold() > 0
+                && operator.getOperands().length > options.getValuesThreshold()
+                && this.dialect.supportsValuesTable();
+    }
+
+    /**
+     * Length of the statement written so far, drained or not.
+     */
+    private int position() {
+        return this.drained + this.out.length();
+    }
+
+    /**
+     * Takes back what was written from the position, which was never drained.
+     */
+    private void truncate(int position) {
+        this.out.setLength(position - this.drained);
+    }
+
+    private void startPrefix(int position) {
+        if (this.prefixStart < 0) {
+            this.prefixStart = position;
+        }
+    }
+
+    private void unpin(SQLLogicalOperator operator) {
+        if (this.sink != null && mayTakeBack(operator)) {
+            this.pins--;
+        }
+    }
+
+    /**
+     * Hands the buffer to the sink when it holds enough of the statement, up to the start of the
+     * outermost OR being written, if any. Only called while writing a comparison, which is never
+     * taken back by the nodes it is in apart from those OR, which may also take back the prefix
+     * written before them.
+     */
+    private void drainIfFull() {
+        int end = this.pins == 0 ? this.position() : this.pinStart;
+        if (end - this.drained >= DRAIN_SIZE) {
+            this.sink.write(this.out, 0, end - this.drained);
+            this.out.delete(0, end - this.drained);
+            this.drained = end;
+        }
+    }
+
+    /**
+     * Whether the operator takes back all it wrote when an operand writes nothing, and an operand
+     * may write nothing. Nested logical operators are only looked at a few levels deep.
+     */
+    private static boolean mayTakeBack(SQLLogicalOperator operator) {
+        if (operator.getOperator() != SQLLogicalOperator.OperatorType.OR) {
+            return false;
+        }
+        for (SQLObjectTranspiler operand : operator.getOperands()) {
+            if (mayWriteNothing(operand, 3)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mayWriteNothing(SQLObjectTranspiler object, int levels) {
+        Class<?> type = object.getClass();
+        if (type == SQLBooleanLiteral.class) {
+            return ((SQLBooleanLiteral) object).getValue();
+        }
+        if (isLeaf(object) || type == SQLEqualityOperator.class || type == SQLBinaryOperator.class
+                || type == SQLUnaryOperator.class) {
+            return false;
+        }
+        if (type != SQLLogicalOperator.class || levels == 0) {
+            return true;
+        }
+        // AND writes nothing when all its operands write nothing, OR when any does
+        boolean and = ((SQLLogicalOperator) object).getOperator() == SQLLogicalOperator.OperatorType.AND;
+        for (SQLObjectTranspiler operand : ((SQLLogicalOperator) object).getOperands()) {
+            if (mayWriteNothing(operand, levels - 1) != and) {
+                return !and;
+            }
+        }
+        return and;
+    }
+
+    private boolean appendFragment(SQLObjectTranspiler operator) {
+        String fragment = this.fragments == null ? null : this.fragments.get(operator);
+        if (fragment == null) {
+            return false;
+        }
+        this.out.append(fragment);
+        return true;
+    }
+
+    private void keepFragment(SQLObjectTranspiler operator, int start) {
+        if (this.fragments != null && start >= this.drained && this.fragments.keeps(operator)) {
+            this.fragments.put(operator, this.out.substring(start - this.drained));
+        }
+    }
+
+    @Override
+    public void visitVariable(SQLVariable variable) {
+        Object value = variable.getVariable();
+        if (variable.isFieldName()) {
+            this.dialect.appendIdentifier(this.out, (String) value, variable.requiresQuotes());
+        } else if (value == null) {
+            this.out.append("NULL");
+        } else if (value instanceof String) {
+            this.dialect.appendString(this.out, (String) value);
+        } else {
+            this.out.append(value);
+        }
+    }
+
+    @Override
+    public void visitLong(SQLLongLiteral literal) {
+        this.out.append(literal.getValue());
+    }
+
+    @Override
+    public void visitDouble(SQLDoubleLiteral literal) {
+        this.out.append(literal.getValue());
+    }
+
+    @Override
+    public void visitBoolean(SQLBooleanLiteral literal) {
+        if (!literal.getValue()) {
+            this.dialect.appendFalse(this.out);
+        }
+    }
+
+    @Override
+    public void visitParameter(SQLParameter parameter) {
+        this.out.append('?');
+        parameter.recordRendered();
+    }
+
+    @Override
+    public void visitOther(SQLObjectTranspiler object) {
+        Utils.SQLTranspilerType type = this.dialect.getLegacyType();
+        if (type == null) {
+            throw new IllegalArgumentException(object.getClass().getName() + " can't be rendered for this dialect.");
+        }
+        if (!TRANSPILED.get(object.getClass())[type.ordinal()]) {
+            throw new IllegalArgumentException(object.getClass().getName()
+                    + " implements neither accept nor " + transpileMethod(type) + ".");
+        }
+        switch (type) {
+            case MY_SQL:
+                this.out.append(object.transpileToMySQL());
+                break;
+            case POSTGRESQL:
+                this.out.append(object.transpileToPostgreSQL());
+                break;
+            case SQL_SERVER:
+                this.out.append(object.transpileToServerSQL());
+                break;
+        }
+    }
+
+    private static String transpileMethod(Utils.SQLTranspilerType type) {
+        switch (type) {
+            case MY_SQL:
+                return "transpileToMySQL";
+            case POSTGRESQL:
+                return "transpileToPostgreSQL";
+            default:
+                return "transpileToServerSQL";
+        }
+    }
+}
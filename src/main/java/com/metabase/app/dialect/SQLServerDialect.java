@@ -0,0 +1,45 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.Utils;
+
+/**
+ * SQL Server limits rows with TOP right after SELECT, has no boolean literals and only takes a
+ * VALUES list as a derived table.
+ */
+public final class SQLServerDialect extends SQLStandardDialect {
+
+    @Override
+    public String getName() {
+        return "sqlserver";
+    }
+
+    @Override
+    protected void appendFalse(StringBuilder out) {
+        out.append("1 = 0");
+    }
+
+    @Override
+    protected boolean isLimitBeforeColumns() {
+        return true;
+    }
+
+    @Override
+    protected String getLimitKeyword() {
+        return " TOP ";
+    }
+
+    @Override
+    protected String getValuesTableStart() {
+        return "SELECT v FROM (VALUES ";
+    }
+
+    @Override
+    protected String getValuesTableEnd() {
+        return ") AS t(v)";
+    }
+
+    @Override
+    protected Utils.SQLTranspilerType getLegacyType() {
+        return Utils.SQLTranspilerType.SQL_SERVER;
+    }
+}
@@ -0,0 +1,364 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.SQLDialectBuffers;
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLParameter;
+import com.metabase.app.variables.SQLVariable;
+
+/**
+ * Renders a query for every dialect of the buffers in a single walk of the tree. Dialect neutral
+ * text is appended to every buffer at once, and what differs (identifiers, strings, FALSE, the
+ * place of the limit, long IN lists) is written by the SQLRenderer of each dialect into its own
+ * buffer. Produces exactly what each SQLRenderer writes on its own.
+ * As SQLRenderer, walks deep trees with a stack rather than by recursion.
+ */
+public final class SQLSharedRenderer implements SQLNodeVisitor {
+    // Steps to resume a node at once an operand is written, in the low bits, the operand index above
+    private static final int WHERE_END = 0;
+    private static final int LOGICAL_OPERAND = 1;
+    private static final int UNARY_END = 2;
+    private static final int BINARY_OPERAND = 3;
+    private static final int EQUALITY_OPERAND = 4;
+    private static final int STEP_BITS = 3;
+    private static final int STEP_MASK = (1 << STEP_BITS) - 1;
+    // Nested operands visited by recursion, the deeper ones are visited from a work stack
+    private static final int MAX_RECURSION = 128;
+
+    private final SQLDialectBuffers out;
+    private final SQLRenderer[] renderers;
+    // Operands being visited by recursion
+    private int depth = 0;
+    // Stack of the walk once deeper than MAX_RECURSION, null until then
+    private SQLWorkStack stack;
+    // Visited before resuming the top of the stack, null when there is none
+    private SQLObjectTranspiler next;
+
+    public SQLSharedRenderer(SQLDialectBuffers out, SQLRenderer[] renderers) {
+        this.out = out;
+        this.renderers = renderers;
+    }
+
+    private void renderEach(SQLObjectTranspiler object) {
+        for (SQLRenderer renderer : this.renderers) {
+            object.accept(renderer);
+        }
+    }
+
+    /**
+     * Calls the visit method of the node as its accept method would, without dispatching through
+     * the interface for the usual nodes.
+     */
+    private void visit(SQLObjectTranspiler node) {
+        Class<?> type = node.getClass();
+        if (type == SQLVariable.class) {
+            this.visitVariable((SQLVariable) node);
+        } else if (type == SQLLongLiteral.class) {
+            this.visitLong((SQLLongLiteral) node);
+        } else if (type == SQLEqualityOperator.class) {
+            this.visitEquality((SQLEqualityOperator) node);
+        } else if (type == SQLLogicalOperator.class) {
+            this.visitLogical((SQLLogicalOperator) node);
+        } else if (type == SQLUnaryOperator.class) {
+            this.visitUnary((SQLUnaryOperator) node);
+        } else if (type == SQLBinaryOperator.class) {
+            this.visitBinary((SQLBinaryOperator) node);
+        } else if (type == SQLWhereClause.class) {
+            this.visitWhere((SQLWhereClause) node);
+        } else {
+            node.accept(this);
+        }
+    }
+
+    /**
+     * Visits the operand, then resumes the node at the step. Always the last thing a node does,
+     * so past MAX_RECURSION nested operands the rest of the walk can be done from a stack.
+     */
+    private void visitOperand(SQLObjectTranspiler operand, Object node, int step, int index, int flag) {
+        if (this.depth < MAX_RECURSION) {
+            this.depth++;
+            this.visit(operand);
+            this.resume(node, step, index, flag);
+            this.depth--;
+        } else {
+            this.pushOperand(operand, node, step, index, flag);
+        }
+    }
+
+    /**
+     * The first operand past the limit walks the rest, the others are pushed for it.
+     */
+    private void pushOperand(SQLObjectTranspiler operand, Object node, int step, int index, int flag) {
+        boolean walks = this.stack == null;
+        if (walks) {
+            this.stack = SQLWorkStack.acquire();
+        }
+        this.stack.push(node, step | index << STEP_BITS, flag, 0);
+        this.next = operand;
+        if (walks) {
+            this.walkStack();
+        }
+    }
+
+    /**
+     * Visits the next operand or resumes the top of the stack until both are done.
+     */
+    private void walkStack() {
+        try {
+            while (true) {
+                if (this.next != null) {
+                    SQLObjectTranspiler node = this.next;
+                    this.next = null;
+                    this.visit(node);
+                } else if (this.stack.pop()) {
+                    this.resume(this.stack.node, this.stack.step & STEP_MASK, this.stack.step >>> STEP_BITS, this.stack.start);
+                } else {
+                    return;
+                }
+            }
+        } finally {
+            this.next = null;
+            this.stack.release();
+            this.stack = null;
+        }
+    }
+
+    private void resume(Object node, int step, int index, int flag) {
+        switch (step) {
+            case WHERE_END:
+                boolean optimizedOut = this.out.isEmptySinceMark();
+                this.out.unmark();
+                if (optimizedOut) {
+                    this.out.truncate(" WHERE ".length());
+                }
+                break;
+            case LOGICAL_OPERAND:
+                this.endLogicalOperand((SQLLogicalOperator) node, index, flag != 0);
+                break;
+            case UNARY_END:
+                this.endUnary((SQLUnaryOperator) node);
+                break;
+            case BINARY_OPERAND:
+                if (index == 0) {
+                    this.out.append(' ').append(((SQLBinaryOperator) node).getOperator()).append(' ');
+                    this.visitOperand(((SQLBinaryOperator) node).getOperand2(), node, BINARY_OPERAND, 1, 0);
+                }
+                break;
+            case EQUALITY_OPERAND:
+                this.appendEquality((SQLEqualityOperator) node, index);
+                break;
+        }
+    }
+
+    @Override
+    public void visitSelect(SQLTranspiler query) {
+        SQLObjectTranspiler whereClause = query.getWhereClause();
+        SQLObjectTranspiler limitClause = query.getLimitClause();
+
+        this.out.append("SELECT");
+        if (limitClause != null) {
+            for (SQLRenderer renderer : this.renderers) {
+                if (renderer.getDialect().isLimitBeforeColumns()) {
+                    limitClause.accept(renderer);
+                }
+            }
+        }
+        this.out.append(" * FROM data");
+        if (whereClause != null) {
+            this.visit(whereClause);
+        }
+        if (limitClause != null) {
+            for (SQLRenderer renderer : this.renderers) {
+                if (!renderer.getDialect().isLimitBeforeColumns()) {
+                    limitClause.accept(renderer);
+                }
+            }
+        }
+        this.out.append(';');
+    }
+
+    @Override
+    public void visitWhere(SQLWhereClause where) {
+        this.out.append(" WHERE ");
+        this.out.mark();
+        this.visitOperand(where.getClause(), where, WHERE_END, 0, 0);
+    }
+
+    @Override
+    public void visitLimit(SQLLimitClause limit) {
+        this.renderEach(limit);
+    }
+
+    @Override
+    public void visitLogical(SQLLogicalOperator operator) {
+        this.out.mark();
+        this.appendLogicalOperand(operator, 0);
+    }
+
+    private void appendLogicalOperand(SQLLogicalOperator operator, int i) {
+        SQLObjectTranspiler[] operands = operator.getOperands();
+        if (i == operands.length) {
+            this.out.unmark();
+            return;
+        }
+        // Something was written before exactly when an operand was not optimized out
+        boolean containsOperand = !this.out.isEmptySinceMark();
+        if (containsOperand) {
+            this.out.append(operator.getOperator().getSeparator());
+        }
+        this.out.mark();
+        if (SQLLogicalOperator.needsParentheses(operator, operands[i])) {
+            this.out.append('(');
+            this.out.mark();
+        }
+        this.visitOperand(operands[i], operator, LOGICAL_OPERAND, i, containsOperand ? 1 : 0);
+    }
+
+    private void endLogicalOperand(SQLLogicalOperator operator, int i, boolean containsOperand) {
+        if (SQLLogicalOperator.needsParentheses(operator, operator.getOperands()[i])) {
+            boolean optimizedOut = this.out.isEmptySinceMark();
+            this.out.unmark();
+            if (optimizedOut) {
+                this.out.truncate(1);
+            } else {
+                this.out.append(')');
+            }
+        }
+        boolean optimizedOut = this.out.isEmptySinceMark();
+        this.out.unmark();
+
+        // Same as for a single dialect: OR will always be true, AND will simply ignore
+        if (optimizedOut && operator.getOperator() == SQLLogicalOperator.OperatorType.OR) {
+            this.out.resetToMark();
+            this.out.unmark();
+            return;
+        }
+        if (optimizedOut && containsOperand) {
+            this.out.truncate(operator.getOperator().getSeparator().length());
+        }
+        this.appendLogicalOperand(operator, i + 1);
+    }
+
+    @Override
+    public void visitUnary(SQLUnaryOperator operator) {
+        if (operator.getOperator() == SQLUnaryOperator.OperatorType.NOT) {
+            this.out.append(operator.needsParentheses() ? "NOT (" : "NOT ");
+            this.out.mark();
+        }
+        this.visitOperand(operator.getOperand(), operator, UNARY_END, 0, 0);
+    }
+
+    private void endUnary(SQLUnaryOperator operator) {
+        switch (operator.getOperator()) {
+            case NOT:
+                if (this.out.isEmptySinceMark()) {
+                    if (operator.needsParentheses()) {
+                        this.out.truncate(1);
+                    }
+                    this.out.append("TRUE");
+                } else if (operator.needsParentheses()) {
+                    this.out.append(')');
+                }
+                this.out.unmark();
+                break;
+            case IS_NOT_NULL:
+            case IS_NULL:
+                this.out.append(' ').append(operator.getOperator().toString());
+                break;
+        }
+    }
+
+    @Override
+    public void visitBinary(SQLBinaryOperator operator) {
+        this.visitOperand(operator.getOperand1(), operator, BINARY_OPERAND, 0, 0);
+    }
+
+    @Override
+    public void visitEquality(SQLEqualityOperator operator) {
+        SQLObjectTranspiler[] operands = operator.getOperands();
+
+        // Long lists may be written differently for every dialect
+        if (operands.length > 1 && (operator.isChunked() || operator.getOptions().getValuesThreshold() > 0)) {
+            this.renderEach(operator);
+            return;
+        }
+        this.appendEquality(operator, 0);
+    }
+
+    /**
+     * Writes the text of the operator before its part-th operand and visits it, or the end of the
+     * operator once all operands are written.
+     */
+    private void appendEquality(SQLEqualityOperator operator, int part) {
+        SQLObjectTranspiler[] operands = operator.getOperands();
+        for (; part <= operands.length; part++) {
+            if (part == 1 && operands.length == 1) {
+                this.out.append(' ').append(operator.getOperator().toString()).append(' ');
+            } else if (part == 1) {
+                this.out.append(operator.getOperator() == SQLEqualityOperator.OperatorType.EQUALS ? " IN (" : " NOT IN (");
+            } else if (part > 1) {
+                this.out.append(", ");
+            }
+            SQLObjectTranspiler operand = part == 0 ? operator.getMainOperand() : operands[part - 1];
+            if (!SQLRenderer.isLeaf(operand)) {
+                this.visitOperand(operand, operator, EQUALITY_OPERAND, part + 1, 0);
+                return;
+            }
+            this.visit(operand);
+        }
+        if (operands.length > 1) {
+            this.out.append(')');
+        }
+    }
+
+    @Override
+    public void visitVariable(SQLVariable variable) {
+        Object value = variable.getVariable();
+        if (value == null) {
+            this.out.append("NULL");
+        } else if (value instanceof String) {
+            // Identifiers and strings are quoted differently by every dialect
+            this.renderEach(variable);
+        } else {
+            // Other literals look the same in every dialect, so they are converted only once
+            this.out.append(value.toString());
+        }
+    }
+
+    @Override
+    public void visitLong(SQLLongLiteral literal) {
+        this.out.append(literal.getValue());
+    }
+
+    @Override
+    public void visitDouble(SQLDoubleLiteral literal) {
+        this.out.append(literal.getValue());
+    }
+
+    @Override
+    public void visitBoolean(SQLBooleanLiteral literal) {
+        if (!literal.getValue()) {
+            this.renderEach(literal);
+        }
+    }
+
+    @Override
+    public void visitParameter(SQLParameter parameter) {
+        this.out.append('?');
+        parameter.recordRendered();
+    }
+
+    @Override
+    public void visitOther(SQLObjectTranspiler object) {
+        this.renderEach(object);
+    }
+}
@@ -0,0 +1,77 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.Utils;
+import com.metabase.app.variables.SQLStringEscaper;
+
+/**
+ * Dialect close to standard SQL, rendered by SQLRenderer. Subclasses only override what their
+ * database writes differently: quoting, the limit, false and VALUES tables.
+ */
+public abstract class SQLStandardDialect implements SQLDialect {
+
+    @Override
+    public final SQLNodeVisitor newRenderer(StringBuilder out) {
+        return new SQLRenderer(this, out);
+    }
+
+    /**
+     * Writes a field name, quoting it when requiresQuotes says so, i.e. when it contains a space,
+     * a character between ' ' and '.', '+', '~' or '|' (see SQLVariable.requiresQuotes). Other
+     * names are written as they are, whatever else they contain.
+     */
+    protected void appendIdentifier(StringBuilder out, String name, boolean requiresQuotes) {
+        if (requiresQuotes) {
+            out.append('"').append(name).append('"');
+        } else {
+            out.append(name);
+        }
+    }
+
+    protected void appendString(StringBuilder out, String value) {
+        SQLStringEscaper.appendQuoteDoubled(out, value);
+    }
+
+    /**
+     * Writes a condition that is always false. Always true conditions are written as nothing.
+     */
+    protected void appendFalse(StringBuilder out) {
+        out.append("NOT TRUE");
+    }
+
+    /**
+     * True when the limit is written right after SELECT rather than at the end of the statement.
+     */
+    protected boolean isLimitBeforeColumns() {
+        return false;
+    }
+
+    protected String getLimitKeyword() {
+        return " LIMIT ";
+    }
+
+    /**
+     * True when a long IN list can be compared with a VALUES table, see SQLInListOptions.
+     */
+    protected boolean supportsValuesTable() {
+        return true;
+    }
+
+    /**
+     * Text written before and after the rows of a VALUES table: VALUES (1), (2)
+     */
+    protected String getValuesTableStart() {
+        return "VALUES ";
+    }
+
+    protected String getValuesTableEnd() {
+        return "";
+    }
+
+    /**
+     * Type whose transpileTo method renders the query objects unknown to SQLRenderer, or null if
+     * there is none and they can't be rendered.
+     */
+    protected Utils.SQLTranspilerType getLegacyType() {
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.metabase.app.dialect;
+
+/**
+ * Destination of a statement streamed by SQLRenderer, which hands it over in pieces, in order.
+ * I/O errors are thrown as UncheckedIOException, renderers not being able to throw IOException.
+ */
+public interface SQLStatementSink {
+    /**
+     * Takes the chars of the statement between start and end, which are removed from the buffer
+     * once the call returns.
+     */
+    void write(StringBuilder sql, int start, int end);
+}
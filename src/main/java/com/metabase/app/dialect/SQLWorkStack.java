@@ -0,0 +1,89 @@
+package com.metabase.app.dialect;
+
+import java.util.Arrays;
+
+/**
+ * What is left to do for the nodes a renderer is in the middle of, kept on the heap so renderers
+ * walk trees of any depth without recursion. Every entry is a node, the step to resume it at and
+ * two positions in the output, whose meaning depends on the step. The top entry is read through
+ * the fields after pop.
+ * Every thread keeps a stack for the walks it does one after the other, a walk starting while
+ * another is running on the same thread, e.g. for a nested object, gets a stack of its own.
+ */
+final class SQLWorkStack {
+    // Stacks grown past this size are not kept for the next walk
+    private static final int MAX_KEPT_SIZE = 1024;
+    private static final ThreadLocal<SQLWorkStack> THREAD_STACK = new ThreadLocal<>();
+
+    private Object[] nodes = new Object[16];
+    private int[] steps = new int[16];
+    private int[] starts = new int[16];
+    private int[] marks = new int[16];
+    private int size = 0;
+    private boolean inUse = false;
+
+    Object node;
+    int step;
+    int start;
+    int mark;
+
+    /**
+     * Stack for a walk of the current thread, to release once the walk is done.
+     */
+    static SQLWorkStack acquire() {
+        SQLWorkStack stack = THREAD_STACK.get();
+        if (stack == null) {
+            stack = new SQLWorkStack();
+            THREAD_STACK.set(stack);
+        }
+        if (stack.inUse) {
+            return new SQLWorkStack();
+        }
+        stack.inUse = true;
+        return stack;
+    }
+
+    void release() {
+        this.clear();
+        this.inUse = false;
+        if (this.nodes.length > MAX_KEPT_SIZE && THREAD_STACK.get() == this) {
+            THREAD_STACK.remove();
+        }
+    }
+
+    void push(Object node, int step, int start, int mark) {
+        if (this.size == this.nodes.length) {
+            this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+            this.steps = Arrays.copyOf(this.steps, this.size * 2);
+            this.starts = Arrays.copyOf(this.starts, this.size * 2);
+            this.marks = Arrays.copyOf(this.marks, this.size * 2);
+        }
+        this.nodes[this.size] = node;
+        this.steps[this.size] = step;
+        this.starts[this.size] = start;
+        this.marks[this.size] = mark;
+        this.size++;
+    }
+
+    /**
+     * Takes the top entry into the fields, false when there is none.
+     */
+    boolean pop() {
+        if (this.size == 0) {
+            return false;
+        }
+        this.size--;
+        this.node = this.nodes[this.size];
+        this.step = this.steps[this.size];
+        this.start = this.starts[this.size];
+        this.mark = this.marks[this.size];
+        this.nodes[this.size] = null;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(this.nodes, 0, this.size, null);
+        this.size = 0;
+        this.node = null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.metabase.app.dialect;
+
+/**
+ * SQLite reads standard SQL, with TRUE and FALSE since 3.23.
+ */
+public final class SQLiteDialect extends SQLStandardDialect {
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+}
@@ -0,0 +1,87 @@
+package com.metabase.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values with power of two buckets: bucket 0 holds 0, and
+ * bucket i the values from 2^(i-1) to 2^i - 1. Percentiles are therefore within a factor 2,
+ * which is enough to tell where time goes, while recording a value is a few atomic adds.
+ */
+public final class SQLHistogram {
+    public static final int BUCKET_COUNT = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        long previous = this.max.get();
+        while (value > previous && !this.max.compareAndSet(previous, value)) {
+            previous = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.getSum() / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, between 0 and 100, capped by the
+     * largest recorded value. 0 when nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long count = this.getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    public long getBucketCount(int bucket) {
+        return this.buckets.get(bucket);
+    }
+
+    /**
+     * Largest value of the bucket.
+     */
+    public static long upperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    private static int bucketOf(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+}
@@ -0,0 +1,25 @@
+package com.metabase.app.metrics;
+
+/**
+ * Holds the listener the transpiler reports to. With no listener, the default, nothing is timed
+ * or measured: every hook is a single null check.
+ */
+public final class SQLInstrumentation {
+    private static volatile SQLTranspilerListener listener;
+
+    private SQLInstrumentation() {}
+
+    /**
+     * Sets the listener of all transpilers, or disables reporting when null.
+     */
+    public static void setListener(SQLTranspilerListener listener) {
+        SQLInstrumentation.listener = listener;
+    }
+
+    /**
+     * The current listener, null when reporting is disabled.
+     */
+    public static SQLTranspilerListener getListener() {
+        return listener;
+    }
+}
@@ -0,0 +1,44 @@
+package com.metabase.app.metrics;
+
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.dialect.SQLDialect;
+
+/**
+ * Receives what happens while queries are transpiled, to bridge it to a metrics or tracing system.
+ * Calls come from the transpiling thread, so implementations must be thread safe and quick.
+ * Register one with SQLInstrumentation, see SQLTranspilerMetrics for one that aggregates them.
+ */
+public interface SQLTranspilerListener {
+    String QUERY_CACHE = "query";
+    String TEMPLATE_CACHE = "template";
+
+    enum Phase {
+        // Reading the query text with SQLQueryParser
+        PARSE,
+        // Building the query objects from Object[] clauses
+        BUILD,
+        OPTIMIZE,
+        RENDER
+    }
+
+    /**
+     * Time a phase took for one query. The dialect is null for the phases that don't depend on
+     * one, and for a render of several dialects in a single walk.
+     */
+    default void onPhase(Phase phase, SQLDialect dialect, long nanos) {}
+
+    /**
+     * Called once a query is built and optimized, e.g. to look at the size of its tree.
+     */
+    default void onQueryBuilt(SQLTranspiler query) {}
+
+    /**
+     * Number of characters written for a query in the dialect.
+     */
+    default void onRendered(SQLDialect dialect, int length) {}
+
+    /**
+     * Lookup in one of the caches, QUERY_CACHE or TEMPLATE_CACHE, for a query in the dialect.
+     */
+    default void onCacheLookup(String cache, SQLDialect dialect, boolean hit) {}
+}
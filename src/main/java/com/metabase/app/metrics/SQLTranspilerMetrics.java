@@ -0,0 +1,116 @@
+package com.metabase.app.metrics;
+
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.dialect.SQLDialect;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener aggregating what it receives into histograms: latency of every phase per dialect, node
+ * count and depth of the query trees, output size per dialect, and cache lookups per cache and
+ * dialect. Values are read while queries keep being transpiled, e.g. by a metrics exporter.
+ * Passing a null dialect to the getters reads what was reported without one.
+ */
+public final class SQLTranspilerMetrics implements SQLTranspilerListener {
+    // Stands for the null dialect in the maps
+    private static final Object NO_DIALECT = new Object();
+
+    private final Map<Phase, Map<Object, SQLHistogram>> latencies = new EnumMap<>(Phase.class);
+    private final Map<Object, SQLHistogram> outputSizes = new ConcurrentHashMap<>();
+    private final Map<String, Map<Object, LongAdder[]>> cacheLookups = new ConcurrentHashMap<>();
+    private final SQLHistogram nodeCounts = new SQLHistogram();
+    private final SQLHistogram depths = new SQLHistogram();
+
+    public SQLTranspilerMetrics() {
+        for (Phase phase : Phase.values()) {
+            this.latencies.put(phase, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void onPhase(Phase phase, SQLDialect dialect, long nanos) {
+        this.getLatency(phase, dialect).record(nanos);
+    }
+
+    @Override
+    public void onQueryBuilt(SQLTranspiler query) {
+        SQLTreeStats stats = SQLTreeStats.of(query);
+        this.nodeCounts.record(stats.getNodeCount());
+        this.depths.record(stats.getDepth());
+    }
+
+    @Override
+    public void onRendered(SQLDialect dialect, int length) {
+        this.getOutputSize(dialect).record(length);
+    }
+
+    @Override
+    public void onCacheLookup(String cache, SQLDialect dialect, boolean hit) {
+        this.lookups(cache, dialect)[hit ? 0 : 1].increment();
+    }
+
+    /**
+     * Nanoseconds taken by the phase.
+     */
+    public SQLHistogram getLatency(Phase phase, SQLDialect dialect) {
+        return this.latencies.get(phase).computeIfAbsent(key(dialect), k -> new SQLHistogram());
+    }
+
+    /**
+     * Characters written per query.
+     */
+    public SQLHistogram getOutputSize(SQLDialect dialect) {
+        return this.outputSizes.computeIfAbsent(key(dialect), k -> new SQLHistogram());
+    }
+
+    /**
+     * Number of objects of every query tree, once optimized.
+     */
+    public SQLHistogram getNodeCounts() {
+        return this.nodeCounts;
+    }
+
+    public SQLHistogram getDepths() {
+        return this.depths;
+    }
+
+    public long getCacheHits(String cache, SQLDialect dialect) {
+        return this.lookups(cache, dialect)[0].sum();
+    }
+
+    public long getCacheMisses(String cache, SQLDialect dialect) {
+        return this.lookups(cache, dialect)[1].sum();
+    }
+
+    /**
+     * Share of lookups in the cache that were hits, over all dialects. 0 when there was none.
+     */
+    public double getCacheHitRate(String cache) {
+        Map<Object, LongAdder[]> perDialect = this.cacheLookups.get(cache);
+        if (perDialect == null) {
+            return 0;
+        }
+        long hits = 0;
+        long lookups = 0;
+        for (LongAdder[] counts : perDialect.values()) {
+            long cacheHits = counts[0].sum();
+            hits += cacheHits;
+            lookups += cacheHits + counts[1].sum();
+        }
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    // Hits then misses
+    private LongAdder[] lookups(String cache, SQLDialect dialect) {
+        return this.cacheLookups
+                .computeIfAbsent(cache, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key(dialect), k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+    }
+
+    private static Object key(SQLDialect dialect) {
+        return dialect == null ? NO_DIALECT : dialect;
+    }
+}
@@ -0,0 +1,125 @@
+package com.metabase.app.metrics;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLParameter;
+import com.metabase.app.variables.SQLVariable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Number of objects and depth of a query tree, the statement itself being at depth 1.
+ */
+public final class SQLTreeStats implements SQLNodeVisitor {
+    private int nodeCount = 0;
+    private int depth = 0;
+    // Objects left to count and their depth, visited from a stack rather than by recursion
+    private final Deque<SQLObjectTranspiler> pending = new ArrayDeque<>();
+    private final Deque<Integer> pendingDepths = new ArrayDeque<>();
+    private int currentDepth = 0;
+
+    private SQLTreeStats() {}
+
+    public static SQLTreeStats of(SQLObjectTranspiler object) {
+        SQLTreeStats stats = new SQLTreeStats();
+        stats.visit(object);
+        while (!stats.pending.isEmpty()) {
+            SQLObjectTranspiler next = stats.pending.pop();
+            stats.currentDepth = stats.pendingDepths.pop();
+            stats.nodeCount++;
+            stats.depth = Math.max(stats.depth, stats.currentDepth);
+            next.accept(stats);
+        }
+        return stats;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    private void visit(SQLObjectTranspiler object) {
+        this.pending.push(object);
+        this.pendingDepths.push(this.currentDepth + 1);
+    }
+
+    private void visitAll(SQLObjectTranspiler[] objects) {
+        for (SQLObjectTranspiler object : objects) {
+            this.visit(object);
+        }
+    }
+
+    @Override
+    public void visitSelect(SQLTranspiler query) {
+        if (query.getWhereClause() != null) {
+            this.visit(query.getWhereClause());
+        }
+        if (query.getLimitClause() != null) {
+            this.visit(query.getLimitClause());
+        }
+    }
+
+    @Override
+    public void visitWhere(SQLWhereClause where) {
+        this.visit(where.getClause());
+    }
+
+    @Override
+    public void visitLimit(SQLLimitClause limit) {
+        this.visit(limit.getClause());
+    }
+
+    @Override
+    public void visitLogical(SQLLogicalOperator operator) {
+        this.visitAll(operator.getOperands());
+    }
+
+    @Override
+    public void visitUnary(SQLUnaryOperator operator) {
+        this.visit(operator.getOperand());
+    }
+
+    @Override
+    public void visitBinary(SQLBinaryOperator operator) {
+        this.visit(operator.getOperand1());
+        this.visit(operator.getOperand2());
+    }
+
+    @Override
+    public void visitEquality(SQLEqualityOperator operator) {
+        this.visit(operator.getMainOperand());
+        this.visitAll(operator.getOperands());
+    }
+
+    @Override
+    public void visitVariable(SQLVariable variable) {}
+
+    @Override
+    public void visitLong(SQLLongLiteral literal) {}
+
+    @Override
+    public void visitDouble(SQLDoubleLiteral literal) {}
+
+    @Override
+    public void visitBoolean(SQLBooleanLiteral literal) {}
+
+    @Override
+    public void visitParameter(SQLParameter parameter) {}
+
+    @Override
+    public void visitOther(SQLObjectTranspiler object) {}
+}
@@ -1,7 +1,12 @@
 package com.metabase.app.operators;
 
 import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLOptimizer;
 import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLNumberLiteral;
+import com.metabase.app.variables.SQLVariable;
 
 public final class SQLBinaryOperator implements SQLObjectTranspiler {
     private final String operator;
@@ -14,26 +19,56 @@ public final class SQLBinaryOperator implements SQLObjectTranspiler {
         this.operand2 = operand2;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    public String getOperator() {
+        return this.operator;
+    }
+
+    public SQLObjectTranspiler getOperand1() {
+        return this.operand1;
+    }
+
+    public SQLObjectTranspiler getOperand2() {
+        return this.operand2;
     }
 
     @Override
-    public String transpileToMySQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitBinary(this);
     }
 
     @Override
-    public String transpileToServerSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.SQL_SERVER);
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
     }
 
-    private String transpileEquivalentQuery(Utils.SQLTranspilerType type) {
-        return String.format("%s %s %s",
-                this.operand1.generateSQL(type),
-                this.operator,
-                this.operand2.generateSQL(type)
-        );
+    /**
+     * Optimizes the operator once its operands were optimized into the given ones.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler optimizedOperand1, SQLObjectTranspiler optimizedOperand2) {
+        // Comparisons between two number literals are folded into their result
+        Integer comparison = null;
+        if (optimizedOperand1 instanceof SQLNumberLiteral && optimizedOperand2 instanceof SQLNumberLiteral) {
+            comparison = ((SQLNumberLiteral) optimizedOperand1).compareTo((SQLNumberLiteral) optimizedOperand2);
+        } else if (optimizedOperand1 instanceof SQLVariable && optimizedOperand2 instanceof SQLVariable
+                && ((SQLVariable) optimizedOperand1).getVariable() instanceof Number
+                && ((SQLVariable) optimizedOperand2).getVariable() instanceof Number
+        ) {
+            comparison = Utils.compareNumbers(
+                    (Number) ((SQLVariable) optimizedOperand1).getVariable(),
+                    (Number) ((SQLVariable) optimizedOperand2).getVariable()
+            );
+        }
+        if (comparison != null) {
+            switch (this.operator) {
+                case "<":
+                    return SQLBooleanLiteral.of(comparison < 0);
+                case ">":
+                    return SQLBooleanLiteral.of(comparison > 0);
+            }
+        }
+
+        return optimizedOperand1 == this.operand1 && optimizedOperand2 == this.operand2
+                ? this
+                : new SQLBinaryOperator(this.operator, optimizedOperand1, optimizedOperand2);
     }
 }
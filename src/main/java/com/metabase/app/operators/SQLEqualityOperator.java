@@ -1,14 +1,22 @@
 package com.metabase.app.operators;
 
 import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLOptimizer;
 import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLiteralSet;
+import com.metabase.app.variables.SQLLongLiteral;
 import com.metabase.app.variables.SQLVariable;
 
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public final class SQLEqualityOperator implements SQLObjectTranspiler {
-    private enum OperatorType {
+    public enum OperatorType {
         EQUALS("="), NOT_EQUALS("<>");
         private final String SQLString;
         private OperatorType(String SQLString) {
@@ -23,74 +31,219 @@ public final class SQLEqualityOperator implements SQLObjectTranspiler {
     private final OperatorType operator;
     private final SQLObjectTranspiler mainOperand;
     private final SQLObjectTranspiler[] equalityOperands;
+    private final SQLInListOptions options;
 
     public SQLEqualityOperator(OperatorType op, SQLObjectTranspiler mainOperand, SQLObjectTranspiler[] operands) {
+        this(op, mainOperand, operands, SQLInListOptions.DEFAULT);
+    }
+
+    public SQLEqualityOperator(OperatorType op, SQLObjectTranspiler mainOperand, SQLObjectTranspiler[] operands, SQLInListOptions options) {
         this.operator = op;
         this.mainOperand = mainOperand;
         this.equalityOperands = operands;
+        this.options = options;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    public OperatorType getOperator() {
+        return this.operator;
     }
 
-    @Override
-    public String transpileToMySQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.MY_SQL);
+    public SQLObjectTranspiler getMainOperand() {
+        return this.mainOperand;
+    }
+
+    /**
+     * Values the main operand is compared with. The array is shared, not a copy.
+     */
+    public SQLObjectTranspiler[] getOperands() {
+        return this.equalityOperands;
+    }
+
+    public SQLInListOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * True when the value list is long enough to be split into several IN (...).
+     */
+    public boolean isChunked() {
+        int chunkSize = this.options.getChunkSize();
+        return chunkSize > 0 && this.equalityOperands.length > chunkSize;
     }
 
     @Override
-    public String transpileToServerSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.SQL_SERVER);
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitEquality(this);
     }
 
+    /**
+     * Folds what is known before rendering. A literal compared with the list is decided by the
+     * literals of the list, in one pass, and literals that can't match are left out. Comparing with
+     * nil means checking for NULL, as in the query language, since = NULL is never true in SQL.
+     */
     private SQLObjectTranspiler optimizeEqualityQuery() {
-        if (this.mainOperand instanceof SQLVariable && !((SQLVariable) this.mainOperand).isFieldName()) {
-            Stream<Object> operandStream = Stream.of(this.equalityOperands).map(o -> ((SQLVariable) o).getVariable());
+        boolean equals = this.operator == OperatorType.EQUALS;
 
-            // Will always be true if none match the main operand
-            if (this.operator == OperatorType.NOT_EQUALS && operandStream.noneMatch(operand -> Objects.equals(((SQLVariable) this.mainOperand).getVariable(), operand))) {
-                return null;
+        if (SQLLiteralSet.isLiteral(this.mainOperand)) {
+            List<SQLObjectTranspiler> unknown = new ArrayList<>();
+            for (SQLObjectTranspiler operand : this.equalityOperands) {
+                if (!SQLLiteralSet.isLiteral(operand)) {
+                    unknown.add(operand);
+                } else if (SQLLiteralSet.equalLiterals(this.mainOperand, operand)) {
+                    // IN is true as soon as one value matches, NOT IN is false
+                    return SQLBooleanLiteral.of(equals);
+                }
+            }
+            if (unknown.isEmpty()) {
+                return SQLBooleanLiteral.of(!equals);
             }
-            // Will always be true if one element is equal to the main operand
-            if (this.operator == OperatorType.EQUALS && operandStream.anyMatch(operand -> Objects.equals(((SQLVariable) this.mainOperand).getVariable(), operand))) {
-                return null;
+            if (isNull(this.mainOperand)) {
+                return nullChecks(equals, unknown);
             }
+            return unknown.size() == this.equalityOperands.length
+                    ? this
+                    : new SQLEqualityOperator(this.operator, this.mainOperand, unknown.toArray(new SQLObjectTranspiler[0]), this.options);
         }
-        return this;
-    }
-    private String transpileEquivalentQuery(Utils.SQLTranspilerType type) {
-        // Optimize by
-        if (this.optimizeEqualityQuery() != null) {
-            // Acts as a binary operator if there is only 1 comparison
-            if (this.equalityOperands.length == 1) {
-                return String.format("%s %s %s",
-                        this.mainOperand.generateSQL(type),
-                        this.operator,
-                        this.equalityOperands[0].generateSQL(type)
-                );
+
+        List<SQLObjectTranspiler> values = new ArrayList<>(this.equalityOperands.length);
+        for (SQLObjectTranspiler operand : this.equalityOperands) {
+            if (!isNull(operand)) {
+                values.add(operand);
             }
-            // Case where there is a list of elements to compare it with
-            if (this.operator == OperatorType.EQUALS) {
-                return String.format("%s IN (%s)", this.mainOperand.generateSQL(type), this.buildArgumentList(type));
-            } else {
-                return String.format("%s NOT IN (%s)", this.mainOperand.generateSQL(type), this.buildArgumentList(type));
+        }
+        if (values.size() == this.equalityOperands.length) {
+            return this;
+        }
+        // x IS NULL OR x IN (values), x IS NOT NULL AND x NOT IN (values)
+        SQLObjectTranspiler nullCheck = nullChecks(equals, Collections.singletonList(this.mainOperand));
+        if (values.isEmpty()) {
+            return nullCheck;
+        }
+        return new SQLLogicalOperator(
+                SQLLogicalOperator.StringToSQLLogicalOperatorType(equals ? Utils.OR_OP : Utils.AND_OP),
+                new SQLObjectTranspiler[]{
+                        nullCheck,
+                        new SQLEqualityOperator(this.operator, this.mainOperand, values.toArray(new SQLObjectTranspiler[0]), this.options)
+                }
+        );
+    }
+
+    /**
+     * IS NULL of every operand joined by OR, or IS NOT NULL joined by AND.
+     */
+    private static SQLObjectTranspiler nullChecks(boolean equals, List<SQLObjectTranspiler> operands) {
+        SQLObjectTranspiler[] checks = new SQLObjectTranspiler[operands.size()];
+        for (int i = 0; i < checks.length; i++) {
+            checks[i] = new SQLUnaryOperator(SQLUnaryOperator.StringToOperatorType(equals ? "is-empty" : "not-empty"), operands.get(i));
+        }
+        return checks.length == 1
+                ? checks[0]
+                : new SQLLogicalOperator(SQLLogicalOperator.StringToSQLLogicalOperatorType(equals ? Utils.OR_OP : Utils.AND_OP), checks);
+    }
+
+    private static boolean isNull(SQLObjectTranspiler operand) {
+        return operand instanceof SQLVariable && ((SQLVariable) operand).getVariable() == null;
+    }
+
+    @Override
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
+    }
+
+    /**
+     * Optimizes the operator once its operands were optimized into the given ones, in the same
+     * order. The array becomes part of the result.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler optimizedMainOperand, SQLObjectTranspiler[] optimizedOperands) {
+        boolean changed = optimizedMainOperand != this.mainOperand;
+
+        for (int i = 0; i < this.equalityOperands.length; i++) {
+            changed |= optimizedOperands[i] != this.equalityOperands[i];
+        }
+        SQLObjectTranspiler[] listOperands = this.prepareList(optimizedOperands);
+        changed |= listOperands != optimizedOperands;
+
+        SQLEqualityOperator optimized = changed
+                ? new SQLEqualityOperator(this.operator, optimizedMainOperand, listOperands, this.options)
+                : this;
+
+        return optimized.optimizeEqualityQuery();
+    }
+
+    /**
+     * Leaves out the duplicated literals of the value list and sorts it when asked to, returning
+     * the same array when there is nothing to change.
+     */
+    private SQLObjectTranspiler[] prepareList(SQLObjectTranspiler[] operands) {
+        if (operands.length < 2) {
+            return operands;
+        }
+        SQLLiteralSet seen = new SQLLiteralSet();
+        // Only copied once a duplicate is found, until then the kept operands are a prefix
+        SQLObjectTranspiler[] unique = null;
+        int count = 0;
+        for (int i = 0; i < operands.length; i++) {
+            SQLObjectTranspiler operand = operands[i];
+            if (!SQLLiteralSet.isLiteral(operand) || seen.add(operand)) {
+                if (unique != null) {
+                    unique[count] = operand;
+                }
+                count++;
+            } else if (unique == null) {
+                unique = Arrays.copyOf(operands, operands.length);
             }
-        } else {
-            return "";
         }
+        SQLObjectTranspiler[] list = unique == null ? operands : Arrays.copyOf(unique, count);
+
+        if (this.options.isSorted()) {
+            return sortList(Arrays.asList(list));
+        }
+        return list;
     }
 
-    private String buildArgumentList(Utils.SQLTranspilerType type) {
-        StringBuilder strList = new StringBuilder("");
-        strList.append(this.equalityOperands[0].generateSQL(type));
+    /**
+     * Integral numbers, decimal numbers and strings, each sorted by value, then everything else in
+     * its original order. Values are sorted as primitive arrays, which keeps lists of thousands of
+     * ids cheap to sort.
+     */
+    private static SQLObjectTranspiler[] sortList(List<SQLObjectTranspiler> operands) {
+        long[] longs = new long[operands.size()];
+        double[] doubles = new double[operands.size()];
+        List<String> strings = new ArrayList<>();
+        List<SQLObjectTranspiler> others = new ArrayList<>();
+        int longCount = 0;
+        int doubleCount = 0;
 
-        for (int i = 1; i < this.equalityOperands.length; i++) {
-            strList.append(", ").append(this.equalityOperands[i].generateSQL(type));
+        for (SQLObjectTranspiler operand : operands) {
+            if (operand instanceof SQLLongLiteral) {
+                longs[longCount++] = ((SQLLongLiteral) operand).getValue();
+            } else if (operand instanceof SQLDoubleLiteral) {
+                doubles[doubleCount++] = ((SQLDoubleLiteral) operand).getValue();
+            } else if (SQLLiteralSet.isLiteral(operand) && ((SQLVariable) operand).getVariable() instanceof String) {
+                strings.add((String) ((SQLVariable) operand).getVariable());
+            } else {
+                others.add(operand);
+            }
         }
+        Arrays.sort(longs, 0, longCount);
+        Arrays.sort(doubles, 0, doubleCount);
+        strings.sort(null);
 
-        return strList.toString();
+        SQLObjectTranspiler[] sorted = new SQLObjectTranspiler[operands.size()];
+        int i = 0;
+        for (int j = 0; j < longCount; j++) {
+            sorted[i++] = new SQLLongLiteral(longs[j]);
+        }
+        for (int j = 0; j < doubleCount; j++) {
+            sorted[i++] = new SQLDoubleLiteral(doubles[j]);
+        }
+        for (String s : strings) {
+            sorted[i++] = new SQLVariable(s, true);
+        }
+        for (SQLObjectTranspiler other : others) {
+            sorted[i++] = other;
+        }
+        return sorted;
     }
 
     public static SQLEqualityOperator.OperatorType StringToSQLEqualityOperatorType(String op) {
@@ -0,0 +1,42 @@
+package com.metabase.app.operators;
+
+/**
+ * How the value lists of = and != are written. Duplicated literals are always left out.
+ * Lists longer than the chunk size are split into several IN (...) joined by OR (NOT IN joined by
+ * AND), and lists longer than the values threshold are written as a VALUES table on the dialects
+ * whose supportsValuesTable() is true. A size or threshold of 0 turns the feature off.
+ */
+public final class SQLInListOptions {
+    public static final SQLInListOptions DEFAULT = new SQLInListOptions(false, 0, 0);
+
+    private final boolean sorted;
+    private final int chunkSize;
+    private final int valuesThreshold;
+
+    /**
+     * @param sorted          sort the literals of the list, so the same values always give the
+     *                        same statement and hit the same cached plan
+     * @param chunkSize       most values in a single IN (...), or 0
+     * @param valuesThreshold number of values above which the list becomes a VALUES table, or 0
+     */
+    public SQLInListOptions(boolean sorted, int chunkSize, int valuesThreshold) {
+        if (chunkSize < 0 || valuesThreshold < 0) {
+            throw new IllegalArgumentException("IN list sizes can't be negative.");
+        }
+        this.sorted = sorted;
+        this.chunkSize = chunkSize;
+        this.valuesThreshold = valuesThreshold;
+    }
+
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    public int getValuesThreshold() {
+        return this.valuesThreshold;
+    }
+}
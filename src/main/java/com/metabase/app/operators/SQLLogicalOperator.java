@@ -1,15 +1,28 @@
 package com.metabase.app.operators;
 
 import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLOptimizer;
 import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.variables.SQLBooleanLiteral;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class SQLLogicalOperator implements SQLObjectTranspiler {
 
-    private enum OperatorType {
+    public enum OperatorType {
         AND(Utils.AND_OP_UP), OR(Utils.OR_OP_UP);
         private final String SQLString;
+        private final String separator;
         private OperatorType(String SQLString) {
             this.SQLString = SQLString;
+            this.separator = " " + SQLString + " ";
+        }
+
+        public String getSeparator() {
+            return this.separator;
         }
 
         @Override
@@ -19,84 +32,97 @@ public final class SQLLogicalOperator implements SQLObjectTranspiler {
     }
     private final OperatorType operator;
     private final SQLObjectTranspiler[] operands;
+    private final boolean containsContradiction;
 
     public SQLLogicalOperator(OperatorType operator, SQLObjectTranspiler[] operands) {
+        this(operator, operands, false);
+    }
+
+    private SQLLogicalOperator(OperatorType operator, SQLObjectTranspiler[] operands, boolean containsContradiction) {
         this.operator = operator;
         this.operands = operands;
+        this.containsContradiction = containsContradiction;
     }
 
     public OperatorType getOperator() {
         return this.operator;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    /**
+     * Operands in the order they are written. The array is shared, not a copy.
+     */
+    public SQLObjectTranspiler[] getOperands() {
+        return this.operands;
     }
 
-    @Override
-    public String transpileToMySQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    /**
+     * True for an optimized AND or OR made of an AND whose bounds can't all hold, as in
+     * x < 5 AND x > 10, outside of any NOT. See SQLSimplifier.
+     */
+    public boolean containsContradiction() {
+        return this.containsContradiction;
     }
 
-    @Override
-    public String transpileToServerSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.SQL_SERVER);
+    /**
+     * The same operator on other operands equal to these ones, e.g. shared instances of them,
+     * keeping what the simplifier found.
+     */
+    public SQLLogicalOperator withOperands(SQLObjectTranspiler[] operands) {
+        return new SQLLogicalOperator(this.operator, operands, this.containsContradiction);
     }
 
     /**
-     * Method will transcribe an operand of the logical statement, adding parenthesis if the
-     * precedence of the child logical statement is less than that of the father operation.
+     * True when the operand has to be written in parenthesis because its precedence is less than
+     * that of the operator, i.e. an OR inside an AND.
      */
-    private String transpileOperand(Utils.SQLTranspilerType type, SQLObjectTranspiler operand) {
-        if (this.operator == OperatorType.AND
+    public static boolean needsParentheses(SQLLogicalOperator operator, SQLObjectTranspiler operand) {
+        return operator.getOperator() == OperatorType.AND
                 && operand instanceof SQLLogicalOperator
-                && ((SQLLogicalOperator) operand).getOperator() == OperatorType.OR
-        ) {
-            String operandQuery = operand.generateSQL(type);
-            return !operandQuery.isEmpty()
-                ? String.format("(%s)", operand.generateSQL(type))
-                : "";
-        }
-        return operand.generateSQL(type);
+                && ((SQLLogicalOperator) operand).getOperator() == OperatorType.OR;
     }
 
-    private String transpileEquivalentQuery(Utils.SQLTranspilerType type) {
-        StringBuilder query = new StringBuilder("");
-        String operandQuery;
-
-        // To know whether we have to remove from the end if the query is empty
-        boolean containsOperator = false;
-
-        for (int i = 0; i < this.operands.length; i++) {
-            operandQuery = this.transpileOperand(type, this.operands[i]);
-
-            // Empty means the query was optimized and is always true
-            // => OR will always be true, AND will simply ignore
-              if (operandQuery.isEmpty() && this.operator == OperatorType.OR) {
-                return "";
-            }
+    @Override
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitLogical(this);
+    }
 
-            // When it is not the last operand and the query is not empty, add it with the operator
-            if (i < this.operands.length - 1 && !operandQuery.isEmpty()) {
-                query.append(operandQuery).append(" ").append(this.operator).append(" ");
-                containsOperator = true;
-            }
-            // If we are on the last operand, handle it separately
-            else if (i == this.operands.length - 1) {
+    @Override
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
+    }
 
-                // Remove last operator if query is empty
-                if (operandQuery.isEmpty() && containsOperator) {
-                    query.setLength(query.length() - this.operator.toString().length() - 2);
-                }
-                // Add the statement without a new operator if query is not empty
-                else {
-                    query.append(operandQuery);
+    /**
+     * Optimizes the operator once its operands were optimized into the given ones, in the same
+     * order.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler[] optimizedOperands) {
+        List<SQLObjectTranspiler> operands = new ArrayList<>(optimizedOperands.length);
+
+        for (SQLObjectTranspiler optimizedOperand : optimizedOperands) {
+            if (optimizedOperand instanceof SQLBooleanLiteral) {
+                // A true operand makes the whole OR true, a false one makes the whole AND false
+                if (((SQLBooleanLiteral) optimizedOperand).getValue() == (this.operator == OperatorType.OR)) {
+                    return optimizedOperand;
                 }
+                // Otherwise it does not change the result and can be left out
+                continue;
             }
+            operands.add(optimizedOperand);
         }
 
-        return query.toString();
+        if (operands.isEmpty()) {
+            return SQLBooleanLiteral.of(this.operator == OperatorType.AND);
+        }
+        operands = SQLSimplifier.simplify(this.operator, operands);
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+        SQLObjectTranspiler[] simplified = operands.toArray(new SQLObjectTranspiler[0]);
+        boolean containsContradiction = SQLSimplifier.containsContradiction(this.operator, simplified);
+        if (containsContradiction == this.containsContradiction && Arrays.equals(simplified, this.operands)) {
+            return this;
+        }
+        return new SQLLogicalOperator(this.operator, simplified, containsContradiction);
     }
 
     public static SQLLogicalOperator.OperatorType StringToSQLLogicalOperatorType(String op) {
@@ -0,0 +1,474 @@
+package com.metabase.app.operators;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLNumberLiteral;
+import com.metabase.app.variables.SQLVariable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Rules simplifying the optimized operands of an AND or an OR, in this order:
+ * - operands of the same operator are flattened: a AND (b AND c) is a AND b AND c
+ * - duplicated operands are left out: a AND a is a
+ * - = on the same operand are merged into one IN list in an OR, and so are <> into NOT IN in an AND
+ * - of the < and > between the same operand and numbers in an AND, only the tightest are kept
+ * These hold in SQL's three valued logic. Bounds that can't all hold, as in x < 5 AND x > 10, only
+ * make the AND false when x is not NULL, and NOT turns NULL into NULL but false into true, so such
+ * an AND is folded into false by the WHERE clause only, and only when no NOT is above it.
+ */
+public final class SQLSimplifier {
+
+    private static final SQLObjectTranspiler[] NO_OPERANDS = new SQLObjectTranspiler[0];
+
+    private SQLSimplifier() {}
+
+    static List<SQLObjectTranspiler> simplify(SQLLogicalOperator.OperatorType operator, List<SQLObjectTranspiler> operands) {
+        List<SQLObjectTranspiler> simplified = removeDuplicates(flatten(operator, operands));
+        simplified = mergeEqualities(operator, simplified);
+        return operator == SQLLogicalOperator.OperatorType.AND ? tightenBounds(simplified) : simplified;
+    }
+
+    /**
+     * True when the operator, or one of the AND and OR it is made of, is an AND whose bounds can't
+     * all hold.
+     */
+    static boolean containsContradiction(SQLLogicalOperator.OperatorType operator, SQLObjectTranspiler[] operands) {
+        for (SQLObjectTranspiler operand : operands) {
+            if (operand instanceof SQLLogicalOperator && ((SQLLogicalOperator) operand).containsContradiction()) {
+                return true;
+            }
+        }
+        return operator == SQLLogicalOperator.OperatorType.AND && isContradiction(operands);
+    }
+
+    /**
+     * Folds the AND whose bounds can't all hold into false, for a condition whose NULL has the
+     * same effect as false, i.e. that is not under a NOT.
+     */
+    public static SQLObjectTranspiler foldContradictions(SQLObjectTranspiler condition) {
+        if (!containsContradiction(condition)) {
+            return condition;
+        }
+        if (isContradiction(condition)) {
+            return SQLBooleanLiteral.FALSE;
+        }
+        // Operators whose operands are being folded, walked with a stack rather than by recursion
+        Deque<Fold> folds = new ArrayDeque<>();
+        folds.push(new Fold((SQLLogicalOperator) condition));
+        SQLObjectTranspiler folded = null;
+
+        while (true) {
+            Fold fold = folds.peek();
+            if (folded != null) {
+                fold.operands[fold.next++] = folded;
+                folded = null;
+            }
+            if (fold.next < fold.operands.length) {
+                SQLObjectTranspiler operand = fold.operands[fold.next];
+                if (isContradiction(operand)) {
+                    fold.operands[fold.next++] = SQLBooleanLiteral.FALSE;
+                } else if (containsContradiction(operand)) {
+                    folds.push(new Fold((SQLLogicalOperator) operand));
+                } else {
+                    fold.next++;
+                }
+                continue;
+            }
+            folds.pop();
+            // Leaves out the false operands of an OR, and makes an AND with one false
+            folded = fold.operator.optimizeWith(fold.operands);
+            if (folds.isEmpty()) {
+                return folded;
+            }
+        }
+    }
+
+    /**
+     * Operator whose operands are being folded, with the operands folded so far.
+     */
+    private static final class Fold {
+        private final SQLLogicalOperator operator;
+        private final SQLObjectTranspiler[] operands;
+        private int next = 0;
+
+        private Fold(SQLLogicalOperator operator) {
+            this.operator = operator;
+            this.operands = operator.getOperands().clone();
+        }
+    }
+
+    private static boolean containsContradiction(SQLObjectTranspiler condition) {
+        return condition instanceof SQLLogicalOperator && ((SQLLogicalOperator) condition).containsContradiction();
+    }
+
+    private static boolean isContradiction(SQLObjectTranspiler condition) {
+        return containsContradiction(condition)
+                && ((SQLLogicalOperator) condition).getOperator() == SQLLogicalOperator.OperatorType.AND
+                && isContradiction(((SQLLogicalOperator) condition).getOperands());
+    }
+
+    private static List<SQLObjectTranspiler> flatten(SQLLogicalOperator.OperatorType operator, List<SQLObjectTranspiler> operands) {
+        List<SQLObjectTranspiler> flat = null;
+        for (int i = 0; i < operands.size(); i++) {
+            SQLObjectTranspiler operand = operands.get(i);
+            boolean nested = operand instanceof SQLLogicalOperator && ((SQLLogicalOperator) operand).getOperator() == operator;
+            if (nested && flat == null) {
+                flat = new ArrayList<>(operands.subList(0, i));
+            }
+            if (nested) {
+                flat.addAll(Arrays.asList(((SQLLogicalOperator) operand).getOperands()));
+            } else if (flat != null) {
+                flat.add(operand);
+            }
+        }
+        return flat == null ? operands : flat;
+    }
+
+    private static List<SQLObjectTranspiler> removeDuplicates(List<SQLObjectTranspiler> operands) {
+        if (operands.size() < 2) {
+            return operands;
+        }
+        Set<Structure> seen = new HashSet<>();
+        List<SQLObjectTranspiler> unique = new ArrayList<>(operands.size());
+        for (SQLObjectTranspiler operand : operands) {
+            if (seen.add(new Structure(operand))) {
+                unique.add(operand);
+            }
+        }
+        return unique.size() == operands.size() ? operands : unique;
+    }
+
+    private static List<SQLObjectTranspiler> mergeEqualities(SQLLogicalOperator.OperatorType operator, List<SQLObjectTranspiler> operands) {
+        SQLEqualityOperator.OperatorType merged = operator == SQLLogicalOperator.OperatorType.OR
+                ? SQLEqualityOperator.OperatorType.EQUALS
+                : SQLEqualityOperator.OperatorType.NOT_EQUALS;
+
+        // Position in the result of the first comparison of every operand, and its values
+        Map<Structure, Integer> firsts = new HashMap<>();
+        Map<Integer, List<SQLObjectTranspiler>> values = new HashMap<>();
+        List<SQLObjectTranspiler> result = new ArrayList<>(operands.size());
+
+        for (SQLObjectTranspiler operand : operands) {
+            if (!(operand instanceof SQLEqualityOperator) || ((SQLEqualityOperator) operand).getOperator() != merged) {
+                result.add(operand);
+                continue;
+            }
+            SQLEqualityOperator equality = (SQLEqualityOperator) operand;
+            Integer first = firsts.putIfAbsent(new Structure(equality.getMainOperand()), result.size());
+            if (first == null || ((SQLEqualityOperator) result.get(first)).getOptions() != equality.getOptions()) {
+                result.add(operand);
+                continue;
+            }
+            values.computeIfAbsent(first, i -> new ArrayList<>(Arrays.asList(((SQLEqualityOperator) result.get(i)).getOperands())))
+                    .addAll(Arrays.asList(equality.getOperands()));
+        }
+        if (values.isEmpty()) {
+            return operands;
+        }
+        values.forEach((i, list) -> {
+            SQLEqualityOperator equality = (SQLEqualityOperator) result.get(i);
+            result.set(i, new SQLEqualityOperator(
+                    merged,
+                    equality.getMainOperand(),
+                    list.toArray(new SQLObjectTranspiler[0]),
+                    equality.getOptions()
+            ).optimize());
+        });
+        return result;
+    }
+
+    /**
+     * Operand compared with a number by < or >, as operand < value or operand > value.
+     */
+    private static final class Bound {
+        private final Structure operand;
+        private final boolean upper;
+        private final SQLNumberLiteral value;
+
+        private Bound(Structure operand, boolean upper, SQLNumberLiteral value) {
+            this.operand = operand;
+            this.upper = upper;
+            this.value = value;
+        }
+
+        private static Bound of(SQLObjectTranspiler condition) {
+            if (!(condition instanceof SQLBinaryOperator)) {
+                return null;
+            }
+            SQLBinaryOperator comparison = (SQLBinaryOperator) condition;
+            boolean less = comparison.getOperator().equals("<");
+            if (!less && !comparison.getOperator().equals(">")) {
+                return null;
+            }
+            if (comparison.getOperand2() instanceof SQLNumberLiteral && !(comparison.getOperand1() instanceof SQLNumberLiteral)) {
+                return new Bound(new Structure(comparison.getOperand1()), less, (SQLNumberLiteral) comparison.getOperand2());
+            }
+            if (comparison.getOperand1() instanceof SQLNumberLiteral && !(comparison.getOperand2() instanceof SQLNumberLiteral)) {
+                return new Bound(new Structure(comparison.getOperand2()), !less, (SQLNumberLiteral) comparison.getOperand1());
+            }
+            return null;
+        }
+
+        private boolean isTighterThan(Bound other) {
+            int comparison = this.value.compareTo(other.value);
+            return this.upper ? comparison < 0 : comparison > 0;
+        }
+    }
+
+    private static List<SQLObjectTranspiler> tightenBounds(List<SQLObjectTranspiler> operands) {
+        // Index of the tightest lower and upper bound of every operand
+        Map<Structure, Integer> lowers = new HashMap<>();
+        Map<Structure, Integer> uppers = new HashMap<>();
+        Bound[] bounds = new Bound[operands.size()];
+        boolean[] dropped = new boolean[operands.size()];
+        boolean changed = false;
+
+        for (int i = 0; i < bounds.length; i++) {
+            Bound bound = Bound.of(operands.get(i));
+            if (bound == null) {
+                continue;
+            }
+            bounds[i] = bound;
+            Map<Structure, Integer> tightest = bound.upper ? uppers : lowers;
+            Integer current = tightest.putIfAbsent(bound.operand, i);
+            if (current == null) {
+                continue;
+            }
+            if (bound.isTighterThan(bounds[current])) {
+                dropped[current] = true;
+                tightest.put(bound.operand, i);
+            } else {
+                dropped[i] = true;
+            }
+            changed = true;
+        }
+        if (!changed) {
+            return operands;
+        }
+        List<SQLObjectTranspiler> tightened = new ArrayList<>(operands.size());
+        for (int i = 0; i < bounds.length; i++) {
+            if (!dropped[i]) {
+                tightened.add(operands.get(i));
+            }
+        }
+        return tightened;
+    }
+
+    /**
+     * True when the operands of an AND compare an operand with numbers it can't be both greater
+     * and less than, or with bounds none of the numbers it must be equal to are between.
+     */
+    private static boolean isContradiction(SQLObjectTranspiler[] operands) {
+        Map<Structure, SQLNumberLiteral[]> ranges = new HashMap<>();
+        for (SQLObjectTranspiler operand : operands) {
+            Bound bound = Bound.of(operand);
+            if (bound == null) {
+                continue;
+            }
+            // Lower bound, upper bound
+            SQLNumberLiteral[] range = ranges.computeIfAbsent(bound.operand, k -> new SQLNumberLiteral[2]);
+            int side = bound.upper ? 1 : 0;
+            if (range[side] == null || bound.isTighterThan(new Bound(bound.operand, bound.upper, range[side]))) {
+                range[side] = bound.value;
+            }
+            if (range[0] != null && range[1] != null && range[0].compareTo(range[1]) >= 0) {
+                return true;
+            }
+        }
+        if (ranges.isEmpty()) {
+            return false;
+        }
+        for (SQLObjectTranspiler operand : operands) {
+            if (operand instanceof SQLEqualityOperator && isOutOfRange((SQLEqualityOperator) operand, ranges)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOutOfRange(SQLEqualityOperator equality, Map<Structure, SQLNumberLiteral[]> ranges) {
+        SQLNumberLiteral[] range = ranges.get(new Structure(equality.getMainOperand()));
+        if (range == null || equality.getOperator() != SQLEqualityOperator.OperatorType.EQUALS) {
+            return false;
+        }
+        for (SQLObjectTranspiler value : equality.getOperands()) {
+            if (!(value instanceof SQLNumberLiteral)) {
+                return false;
+            }
+            SQLNumberLiteral number = (SQLNumberLiteral) value;
+            if ((range[0] == null || number.compareTo(range[0]) > 0) && (range[1] == null || number.compareTo(range[1]) < 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Object compared by structure rather than identity, as query objects don't implement equals.
+     * Only the top levels of the object are hashed, which keeps hashing the operands of deep trees
+     * cheap, and comparing walks both objects with a stack rather than by recursion.
+     */
+    private static final class Structure {
+        private final SQLObjectTranspiler object;
+        private final int hash;
+
+        // Levels of operators taken into account by the hash
+        private static final int HASHED_LEVELS = 4;
+
+        private Structure(SQLObjectTranspiler object) {
+            this.object = object;
+            this.hash = hash(object, HASHED_LEVELS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Structure
+                    && this.hash == ((Structure) o).hash
+                    && equal(this.object, ((Structure) o).object);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        private static boolean equal(SQLObjectTranspiler a, SQLObjectTranspiler b) {
+            // Pairs of operands left to compare
+            Deque<SQLObjectTranspiler> pairs = new ArrayDeque<>();
+            while (true) {
+                if (a != b) {
+                    SQLObjectTranspiler[] operands1 = operandsOf(a);
+                    SQLObjectTranspiler[] operands2 = operandsOf(b);
+                    if (!equalParts(a, b) || operands1.length != operands2.length) {
+                        return false;
+                    }
+                    for (int i = 0; i < operands1.length; i++) {
+                        pairs.push(operands1[i]);
+                        pairs.push(operands2[i]);
+                    }
+                }
+                if (pairs.isEmpty()) {
+                    return true;
+                }
+                b = pairs.pop();
+                a = pairs.pop();
+            }
+        }
+
+        /**
+         * True when the objects are of the same kind and equal but for their operands.
+         */
+        private static boolean equalParts(SQLObjectTranspiler a, SQLObjectTranspiler b) {
+            if (a.getClass() != b.getClass()) {
+                return false;
+            }
+            if (a instanceof SQLLogicalOperator) {
+                return ((SQLLogicalOperator) a).getOperator() == ((SQLLogicalOperator) b).getOperator();
+            }
+            if (a instanceof SQLEqualityOperator) {
+                return ((SQLEqualityOperator) a).getOperator() == ((SQLEqualityOperator) b).getOperator()
+                        && ((SQLEqualityOperator) a).getOptions() == ((SQLEqualityOperator) b).getOptions();
+            }
+            if (a instanceof SQLBinaryOperator) {
+                return ((SQLBinaryOperator) a).getOperator().equals(((SQLBinaryOperator) b).getOperator());
+            }
+            if (a instanceof SQLUnaryOperator) {
+                return ((SQLUnaryOperator) a).getOperator() == ((SQLUnaryOperator) b).getOperator();
+            }
+            if (a instanceof SQLLongLiteral) {
+                return ((SQLLongLiteral) a).getValue() == ((SQLLongLiteral) b).getValue();
+            }
+            if (a instanceof SQLDoubleLiteral) {
+                return Double.doubleToLongBits(((SQLDoubleLiteral) a).getValue())
+                        == Double.doubleToLongBits(((SQLDoubleLiteral) b).getValue());
+            }
+            if (a instanceof SQLBooleanLiteral) {
+                return ((SQLBooleanLiteral) a).getValue() == ((SQLBooleanLiteral) b).getValue();
+            }
+            if (a.getClass() == SQLVariable.class) {
+                SQLVariable variable1 = (SQLVariable) a;
+                SQLVariable variable2 = (SQLVariable) b;
+                return variable1.isFieldName() == variable2.isFieldName()
+                        && variable1.requiresQuotes() == variable2.requiresQuotes()
+                        && Objects.equals(variable1.getVariable(), variable2.getVariable());
+            }
+            // Unknown objects are only equal to themselves
+            return false;
+        }
+
+        private static SQLObjectTranspiler[] operandsOf(SQLObjectTranspiler object) {
+            if (object instanceof SQLLogicalOperator) {
+                return ((SQLLogicalOperator) object).getOperands();
+            }
+            if (object instanceof SQLEqualityOperator) {
+                SQLEqualityOperator equality = (SQLEqualityOperator) object;
+                SQLObjectTranspiler[] operands = new SQLObjectTranspiler[equality.getOperands().length + 1];
+                operands[0] = equality.getMainOperand();
+                System.arraycopy(equality.getOperands(), 0, operands, 1, operands.length - 1);
+                return operands;
+            }
+            if (object instanceof SQLBinaryOperator) {
+                return new SQLObjectTranspiler[]{((SQLBinaryOperator) object).getOperand1(), ((SQLBinaryOperator) object).getOperand2()};
+            }
+            if (object instanceof SQLUnaryOperator) {
+                return new SQLObjectTranspiler[]{((SQLUnaryOperator) object).getOperand()};
+            }
+            return NO_OPERANDS;
+        }
+
+        private static int hash(SQLObjectTranspiler object, int levels) {
+            if (levels == 0) {
+                return object.getClass().hashCode();
+            }
+            if (object instanceof SQLLogicalOperator) {
+                return 31 * ((SQLLogicalOperator) object).getOperator().hashCode() + hash(((SQLLogicalOperator) object).getOperands(), levels - 1);
+            }
+            if (object instanceof SQLEqualityOperator) {
+                SQLEqualityOperator equality = (SQLEqualityOperator) object;
+                return 31 * (31 * equality.getOperator().hashCode() + hash(equality.getMainOperand(), levels - 1))
+                        + hash(equality.getOperands(), levels - 1);
+            }
+            if (object instanceof SQLBinaryOperator) {
+                SQLBinaryOperator binary = (SQLBinaryOperator) object;
+                return 31 * (31 * binary.getOperator().hashCode() + hash(binary.getOperand1(), levels - 1))
+                        + hash(binary.getOperand2(), levels - 1);
+            }
+            if (object instanceof SQLUnaryOperator) {
+                return 31 * ((SQLUnaryOperator) object).getOperator().hashCode() + hash(((SQLUnaryOperator) object).getOperand(), levels - 1);
+            }
+            if (object instanceof SQLLongLiteral) {
+                return Long.hashCode(((SQLLongLiteral) object).getValue());
+            }
+            if (object instanceof SQLDoubleLiteral) {
+                return Double.hashCode(((SQLDoubleLiteral) object).getValue());
+            }
+            if (object instanceof SQLBooleanLiteral) {
+                return Boolean.hashCode(((SQLBooleanLiteral) object).getValue());
+            }
+            if (object.getClass() == SQLVariable.class) {
+                return Objects.hashCode(((SQLVariable) object).getVariable());
+            }
+            return System.identityHashCode(object);
+        }
+
+        private static int hash(SQLObjectTranspiler[] objects, int levels) {
+            int hash = 1;
+            for (SQLObjectTranspiler object : objects) {
+                hash = 31 * hash + hash(object, levels);
+            }
+            return hash;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.metabase.app.operators;
 
 import com.metabase.app.SQLObjectTranspiler;
-import com.metabase.app.Utils;
+import com.metabase.app.SQLOptimizer;
+import com.metabase.app.dialect.SQLNodeVisitor;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLNumberLiteral;
 import com.metabase.app.variables.SQLVariable;
 
 public final class SQLUnaryOperator implements SQLObjectTranspiler {
-    private enum OperatorType {
+    public enum OperatorType {
         NOT("NOT"), IS_NULL("IS NULL"), IS_NOT_NULL("IS NOT NULL");
         private final String SQLString;
         private OperatorType(String SQLString) {
@@ -33,45 +36,34 @@ public final class SQLUnaryOperator implements SQLObjectTranspiler {
         return this.operand;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.POSTGRESQL);
+    /**
+     * True when the operand has to be written in parenthesis because its precedence is less than
+     * that of the operator, i.e. an AND or OR inside a NOT.
+     */
+    public boolean needsParentheses() {
+        return this.operator == OperatorType.NOT && this.operand instanceof SQLLogicalOperator;
     }
 
     @Override
-    public String transpileToMySQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.MY_SQL);
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitUnary(this);
     }
 
     @Override
-    public String transpileToServerSQL() {
-        return this.transpileEquivalentQuery(Utils.SQLTranspilerType.SQL_SERVER);
+    public SQLObjectTranspiler optimize() {
+        return SQLOptimizer.optimize(this);
     }
 
-    private String transpileEquivalentQuery(Utils.SQLTranspilerType type) {
-        SQLObjectTranspiler optimizedQuery = this.optimizeUnaryQuery();
-
-        if (optimizedQuery == null) return "";
-        else if (optimizedQuery.equals(this)) {
-            String operandQuery = this.operand.generateSQL(type);
-            switch (this.operator) {
-                case NOT:
-                    return String.format("%s %s", OperatorType.NOT, operandQuery.isEmpty() ? "TRUE" : operandQuery);
-                case IS_NOT_NULL:
-                case IS_NULL:
-                    return String.format("%s %s", this.operand.generateSQL(type), this.operator);
-                default:
-                    throw new IllegalStateException("Unknown unary operator did not throw exception in string to enum translation.");
-            }
-        } else {
-            return optimizedQuery.generateSQL(type);
+    /**
+     * Optimizes the operator once its operand was optimized into the given one.
+     */
+    public SQLObjectTranspiler optimizeWith(SQLObjectTranspiler optimizedOperand) {
+        if (this.operator == OperatorType.NOT && optimizedOperand instanceof SQLBooleanLiteral) {
+            return SQLBooleanLiteral.of(!((SQLBooleanLiteral) optimizedOperand).getValue());
         }
-    }
-
-    private SQLObjectTranspiler optimizeUnaryQuery() {
-        if (this.operator == OperatorType.NOT && this.operand instanceof SQLUnaryOperator) {
-            OperatorType childOperator = ((SQLUnaryOperator) this.operand).getOperator();
-            SQLObjectTranspiler childOperand = ((SQLUnaryOperator) this.operand).getOperand();
+        else if (this.operator == OperatorType.NOT && optimizedOperand instanceof SQLUnaryOperator) {
+            OperatorType childOperator = ((SQLUnaryOperator) optimizedOperand).getOperator();
+            SQLObjectTranspiler childOperand = ((SQLUnaryOperator) optimizedOperand).getOperand();
 
             switch (childOperator) {
                 case NOT:
@@ -82,13 +74,17 @@ public final class SQLUnaryOperator implements SQLObjectTranspiler {
                     return new SQLUnaryOperator(OperatorType.IS_NULL, childOperand);
             }
         }
-        else if (this.operator == OperatorType.IS_NULL && this.operand instanceof SQLVariable && !((SQLVariable) this.operand).isFieldName() && ((SQLVariable) this.operand).getVariable() == null) {
-            return null;
+        else if (this.operator != OperatorType.NOT && optimizedOperand instanceof SQLNumberLiteral) {
+            return SQLBooleanLiteral.of(this.operator == OperatorType.IS_NOT_NULL);
         }
-        else if (this.operator == OperatorType.IS_NOT_NULL && this.operand instanceof SQLVariable && !((SQLVariable) this.operand).isFieldName() && ((SQLVariable) this.operand).getVariable() != null) {
-            return null;
+        else if (this.operator != OperatorType.NOT && optimizedOperand instanceof SQLVariable && !((SQLVariable) optimizedOperand).isFieldName()) {
+            boolean isNull = ((SQLVariable) optimizedOperand).getVariable() == null;
+            return SQLBooleanLiteral.of(this.operator == OperatorType.IS_NULL ? isNull : !isNull);
         }
-        return this;
+
+        return optimizedOperand == this.operand
+                ? this
+                : new SQLUnaryOperator(this.operator, optimizedOperand);
     }
 
     public static OperatorType StringToOperatorType(String op) {
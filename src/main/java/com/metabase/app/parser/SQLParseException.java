@@ -0,0 +1,34 @@
+package com.metabase.app.parser;
+
+/**
+ * Invalid query text, with the exact position where the problem was found.
+ */
+public final class SQLParseException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int offset;
+    private final int line;
+    private final int column;
+
+    public SQLParseException(String message, int offset, int line, int column) {
+        super(String.format("%s at line %d, column %d", message, line, column));
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Number of characters read before the problem, starting from 0.
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public int getLine() {
+        return this.line;
+    }
+
+    public int getColumn() {
+        return this.column;
+    }
+}
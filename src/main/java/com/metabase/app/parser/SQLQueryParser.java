@@ -0,0 +1,599 @@
+package com.metabase.app.parser;
+
+import com.metabase.app.SQLObjectFactory;
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLQueryLimits;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.metrics.SQLInstrumentation;
+import com.metabase.app.metrics.SQLTranspilerListener;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLLongLiteral;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads queries written in the Clojure style DSL of the README, e.g.
+ * {:where [:= [:field 2] "cam"] :limit 10}
+ * in a single pass over the text, building the query objects directly without going through
+ * Object[] clauses. Commas are whitespace and ';' starts a comment, as in EDN.
+ * A parser holds no state between queries and can be shared by several threads.
+ */
+public final class SQLQueryParser {
+    private static final int EOF = -1;
+    private static final String[] KEYWORDS = {
+            Utils.WHERE_CLAUSE, Utils.LIMIT_CLAUSE, "field", Utils.AND_OP, Utils.OR_OP, "=", "!=", "<", ">",
+            "not", "is-empty", "not-empty", "nil"
+    };
+
+    private final SQLObjectFactory factory;
+
+    public SQLQueryParser(Map<Integer, String> fieldMap) {
+        this(new SQLIdentifierTable(fieldMap));
+    }
+
+    public SQLQueryParser(SQLIdentifierTable fields) {
+        this(new SQLObjectFactory(fields));
+    }
+
+    public SQLQueryParser(SQLObjectFactory factory) {
+        this.factory = factory;
+    }
+
+    public SQLObjectFactory getFactory() {
+        return this.factory;
+    }
+
+    public SQLTranspiler parse(CharSequence text) {
+        return this.parse(text, new Scratch());
+    }
+
+    /**
+     * Reads the query with buffers reused from query to query, see Scratch.
+     */
+    public SQLTranspiler parse(CharSequence text, Scratch scratch) {
+        return parse(new CharSequenceInput(text), scratch);
+    }
+
+    public SQLTranspiler parse(Reader reader) throws IOException {
+        try {
+            return parse(new ReaderInput(reader), new Scratch());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the UTF-8 encoded query between the position and the limit of the buffer, without
+     * moving its position.
+     */
+    public SQLTranspiler parse(ByteBuffer utf8) {
+        return this.parse(utf8, new Scratch());
+    }
+
+    /**
+     * Reads the UTF-8 encoded query with buffers reused from query to query, see Scratch.
+     */
+    public SQLTranspiler parse(ByteBuffer utf8, Scratch scratch) {
+        return parse(scratch.bytes(utf8.duplicate()), scratch);
+    }
+
+    private SQLTranspiler parse(Input input, Scratch scratch) {
+        SQLTranspilerListener listener = SQLInstrumentation.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+
+        Parsing parsing = new Parsing(input, scratch);
+        try {
+            parsing.readQuery();
+        } finally {
+            scratch.release();
+        }
+
+        if (listener != null) {
+            listener.onPhase(SQLTranspilerListener.Phase.PARSE, null, System.nanoTime() - start);
+        }
+        return new SQLTranspiler(this.factory, parsing.where, parsing.limit);
+    }
+
+    /**
+     * Buffers of a parse: the decoded characters, the text of the current token and the
+     * operations being read. Parses given the same scratch reuse them rather than allocating
+     * their own, so the scratch must only be used by one parse at a time, e.g. the one of a
+     * SQLTranspileContext.
+     */
+    public static final class Scratch {
+        // Buffers grown past this size are replaced by small ones after the parse
+        private static final int MAX_KEPT_SIZE = 64 * 1024;
+
+        private final StringBuilder text = new StringBuilder();
+        private final Deque<Operation> open = new ArrayDeque<>();
+        // Operations of previous parses, to read the next ones
+        private final List<Operation> spare = new ArrayList<>();
+        // Created by the first UTF-8 input
+        private ByteBufferInput bytes;
+
+        private Input bytes(ByteBuffer utf8) {
+            if (this.bytes == null) {
+                this.bytes = new ByteBufferInput();
+            }
+            this.bytes.reset(utf8);
+            return this.bytes;
+        }
+
+        private Operation open(String op, int offset, int line, int column) {
+            Operation operation = this.spare.isEmpty() ? new Operation() : this.spare.remove(this.spare.size() - 1);
+            operation.reset(op, offset, line, column);
+            this.open.push(operation);
+            return operation;
+        }
+
+        private void close(Operation operation) {
+            operation.operands.clear();
+            this.spare.add(operation);
+        }
+
+        /**
+         * Drops what the parse left, which is only something when it failed.
+         */
+        private void release() {
+            while (!this.open.isEmpty()) {
+                this.close(this.open.pop());
+            }
+            if (this.bytes != null) {
+                this.bytes.bytes = null;
+            }
+            if (this.text.capacity() > MAX_KEPT_SIZE) {
+                this.text.setLength(0);
+                this.text.trimToSize();
+            }
+        }
+    }
+
+    /**
+     * Source of characters, returning EOF once there are no more.
+     */
+    private interface Input {
+        int read();
+    }
+
+    private static final class CharSequenceInput implements Input {
+        private final CharSequence text;
+        private int index = 0;
+
+        private CharSequenceInput(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return this.index < this.text.length() ? this.text.charAt(this.index++) : EOF;
+        }
+    }
+
+    private static final class ReaderInput implements Input {
+        private final Reader reader;
+        private final char[] buffer = new char[4096];
+        private int index = 0;
+        private int length = 0;
+
+        private ReaderInput(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() {
+            if (this.index == this.length) {
+                try {
+                    this.length = this.reader.read(this.buffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.index = 0;
+                if (this.length <= 0) {
+                    this.length = 0;
+                    return EOF;
+                }
+            }
+            return this.buffer[this.index++];
+        }
+    }
+
+    /**
+     * Decodes the bytes between the position and the limit of a buffer, moving its position.
+     */
+    private static final class ByteBufferInput implements Input {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private final CharBuffer chars = CharBuffer.allocate(4096);
+        private ByteBuffer bytes;
+        private boolean flushed;
+
+        private void reset(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.decoder.reset();
+            this.chars.clear().flip();
+            this.flushed = false;
+        }
+
+        @Override
+        public int read() {
+            if (!this.chars.hasRemaining()) {
+                if (this.flushed) {
+                    return EOF;
+                }
+                this.chars.clear();
+                CoderResult result = this.decoder.decode(this.bytes, this.chars, true);
+                if (result.isError()) {
+                    throw new IllegalStateException("Invalid UTF-8 input");
+                }
+                if (!this.bytes.hasRemaining()) {
+                    this.decoder.flush(this.chars);
+                    this.flushed = true;
+                }
+                this.chars.flip();
+                if (!this.chars.hasRemaining()) {
+                    return EOF;
+                }
+            }
+            return this.chars.get();
+        }
+    }
+
+    /**
+     * Operation whose operands are being read, with where it starts.
+     */
+    private static final class Operation {
+        private String op;
+        private int offset;
+        private int line;
+        private int column;
+        private final List<SQLObjectTranspiler> operands = new ArrayList<>();
+
+        private void reset(String op, int offset, int line, int column) {
+            this.op = op;
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+        }
+
+        private SQLParseException error(String message) {
+            return new SQLParseException(message, this.offset, this.line, this.column);
+        }
+    }
+
+    /**
+     * State of the parsing of one query: the input, the current character and its position.
+     */
+    private final class Parsing {
+        private final Input input;
+        private final Scratch buffers;
+        private final StringBuilder scratch;
+        private int current;
+        private int offset = -1;
+        private int line = 1;
+        private int column = 0;
+        // Clauses read, null when the query has none
+        private SQLObjectTranspiler where;
+        private SQLObjectTranspiler limit;
+
+        private Parsing(Input input, Scratch buffers) {
+            this.input = input;
+            this.buffers = buffers;
+            this.scratch = buffers.text;
+            this.advance();
+        }
+
+        private void advance() {
+            if (this.current == '\n') {
+                this.line++;
+                this.column = 0;
+            }
+            try {
+                this.current = this.input.read();
+            } catch (IllegalStateException e) {
+                throw this.error(e.getMessage());
+            }
+            this.offset++;
+            this.column++;
+        }
+
+        /**
+         * Reads the WHERE and LIMIT clauses.
+         */
+        private void readQuery() {
+            this.skipWhitespace();
+            this.expect('{');
+
+            while (true) {
+                this.skipWhitespace();
+                if (this.current == '}') {
+                    this.advance();
+                    break;
+                }
+                int offset = this.offset, line = this.line, column = this.column;
+                String key = this.readKeyword();
+
+                if (key.equals(Utils.WHERE_CLAUSE) && this.where == null) {
+                    this.where = this.readClause();
+                } else if (key.equals(Utils.LIMIT_CLAUSE) && this.limit == null) {
+                    this.limit = this.readClause();
+                } else {
+                    throw new SQLParseException("Unknown or repeated query key :" + key, offset, line, column);
+                }
+            }
+
+            this.skipWhitespace();
+            if (this.current != EOF) {
+                throw this.error("Unexpected content after the query");
+            }
+        }
+
+        /**
+         * Reads a clause with a stack of the operations it is in rather than by recursion,
+         * checking the limits of the factory as it goes.
+         */
+        private SQLObjectTranspiler readClause() {
+            SQLQueryLimits limits = SQLQueryParser.this.factory.getLimits();
+            Deque<Operation> open = this.buffers.open;
+            int size = 0;
+            while (true) {
+                this.skipWhitespace();
+                try {
+                    limits.checkDepth(open.size() + 1);
+                    limits.checkSize(++size);
+                } catch (IllegalArgumentException e) {
+                    throw this.error(e.getMessage());
+                }
+                SQLObjectTranspiler clause = this.startClause(open);
+
+                // Adds the clause to its operation, building the operations it closes
+                while (true) {
+                    if (clause != null) {
+                        if (open.isEmpty()) {
+                            return clause;
+                        }
+                        open.peek().operands.add(clause);
+                    }
+                    this.skipWhitespace();
+                    Operation operation = open.peek();
+                    if (this.current == EOF) {
+                        throw operation.error("Unclosed '['");
+                    }
+                    if (this.current != ']') {
+                        break;
+                    }
+                    this.advance();
+                    try {
+                        clause = SQLQueryParser.this.factory.operator(
+                                operation.op, operation.operands.toArray(new SQLObjectTranspiler[0]));
+                    } catch (SQLParseException e) {
+                        throw e;
+                    } catch (IllegalArgumentException e) {
+                        // Invalid number of operands or unknown operator
+                        throw operation.error(e.getMessage());
+                    }
+                    this.buffers.close(open.pop());
+                }
+            }
+        }
+
+        /**
+         * Reads a literal or a field, or the start of an operation, which is pushed and gives null.
+         */
+        private SQLObjectTranspiler startClause(Deque<Operation> open) {
+            try {
+                switch (this.current) {
+                    case '[':
+                        return this.readOperationStart();
+                    case '"':
+                        return SQLQueryParser.this.factory.literal(this.readString());
+                    case EOF:
+                        throw this.error("Unexpected end of query");
+                    default:
+                        if (this.current == '-' || isDigit(this.current)) {
+                            return this.readNumber();
+                        }
+                        int offset = this.offset, line = this.line, column = this.column;
+                        String symbol = this.readToken();
+                        if (symbol.equals("nil")) {
+                            return SQLQueryParser.this.factory.literal(null);
+                        }
+                        throw new SQLParseException("Unexpected '" + symbol + "'", offset, line, column);
+                }
+            } catch (SQLParseException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                if (open.isEmpty()) {
+                    throw e;
+                }
+                throw open.peek().error(e.getMessage());
+            }
+        }
+
+        private SQLObjectTranspiler readOperationStart() {
+            int offset = this.offset, line = this.line, column = this.column;
+            this.advance();
+            this.skipWhitespace();
+            String op = this.readKeyword();
+
+            if (!op.equals("field")) {
+                this.buffers.open(op, offset, line, column);
+                return null;
+            }
+            try {
+                this.skipWhitespace();
+                if (!isDigit(this.current)) {
+                    throw this.error("Expected a field id");
+                }
+                SQLObjectTranspiler id = this.readNumber();
+                if (!(id instanceof SQLLongLiteral) || ((SQLLongLiteral) id).getValue() > Integer.MAX_VALUE) {
+                    throw new SQLParseException("Invalid field id", offset, line, column);
+                }
+                this.skipWhitespace();
+                this.expect(']');
+                return SQLQueryParser.this.factory.field((int) ((SQLLongLiteral) id).getValue());
+            } catch (SQLParseException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                // Unknown field
+                throw new SQLParseException(e.getMessage(), offset, line, column);
+            }
+        }
+
+        private String readKeyword() {
+            if (this.current != ':') {
+                throw this.error("Expected a keyword");
+            }
+            this.advance();
+            String keyword = this.readToken();
+            if (keyword.isEmpty()) {
+                throw this.error("Expected a keyword");
+            }
+            return keyword;
+        }
+
+        private String readToken() {
+            this.scratch.setLength(0);
+            while (!isDelimiter(this.current)) {
+                this.scratch.append((char) this.current);
+                this.advance();
+            }
+            // Keys and operators are read without a copy
+            for (String keyword : KEYWORDS) {
+                if (keyword.contentEquals(this.scratch)) {
+                    return keyword;
+                }
+            }
+            return this.scratch.toString();
+        }
+
+        private String readString() {
+            int offset = this.offset, line = this.line, column = this.column;
+            this.advance();
+            this.scratch.setLength(0);
+
+            while (this.current != '"') {
+                if (this.current == EOF) {
+                    throw new SQLParseException("Unterminated string", offset, line, column);
+                }
+                if (this.current == '\\') {
+                    this.advance();
+                    switch (this.current) {
+                        case '"':
+                        case '\\':
+                            this.scratch.append((char) this.current);
+                            break;
+                        case 'n':
+                            this.scratch.append('\n');
+                            break;
+                        case 'r':
+                            this.scratch.append('\r');
+                            break;
+                        case 't':
+                            this.scratch.append('\t');
+                            break;
+                        default:
+                            throw this.error("Unknown escape sequence");
+                    }
+                } else {
+                    this.scratch.append((char) this.current);
+                }
+                this.advance();
+            }
+            this.advance();
+            return this.scratch.toString();
+        }
+
+        /**
+         * Reads an integer or a decimal number literal, accumulating the digits of integers
+         * without going through a string.
+         */
+        private SQLObjectTranspiler readNumber() {
+            int offset = this.offset, line = this.line, column = this.column;
+            this.scratch.setLength(0);
+            boolean negative = this.current == '-';
+            if (negative) {
+                this.scratch.append('-');
+                this.advance();
+            }
+            if (!isDigit(this.current)) {
+                throw new SQLParseException("Invalid number", offset, line, column);
+            }
+
+            long value = 0;
+            boolean overflow = false;
+            while (isDigit(this.current)) {
+                int digit = this.current - '0';
+                overflow |= value > (Long.MAX_VALUE - digit) / 10;
+                value = value * 10 + digit;
+                this.scratch.append((char) this.current);
+                this.advance();
+            }
+
+            if (this.current == '.' || this.current == 'e' || this.current == 'E') {
+                while (!isDelimiter(this.current)) {
+                    this.scratch.append((char) this.current);
+                    this.advance();
+                }
+                try {
+                    return SQLQueryParser.this.factory.literal(Double.parseDouble(this.scratch.toString()));
+                } catch (NumberFormatException e) {
+                    throw new SQLParseException("Invalid number", offset, line, column);
+                }
+            }
+            if (overflow || !isDelimiter(this.current)) {
+                throw new SQLParseException("Invalid number", offset, line, column);
+            }
+
+            return SQLQueryParser.this.factory.literal(negative ? -value : value);
+        }
+
+        private void skipWhitespace() {
+            while (true) {
+                if (this.current == ';') {
+                    while (this.current != '\n' && this.current != EOF) {
+                        this.advance();
+                    }
+                } else if (this.current == ',' || (this.current != EOF && Character.isWhitespace(this.current))) {
+                    this.advance();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (this.current != c) {
+                throw this.error("Expected '" + c + "'");
+            }
+            this.advance();
+        }
+
+        private SQLParseException error(String message) {
+            return new SQLParseException(message, this.offset, this.line, this.column);
+        }
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == EOF || c == ',' || c == '[' || c == ']' || c == '{' || c == '}' || c == '"' || c == ';'
+                || Character.isWhitespace(c);
+    }
+}
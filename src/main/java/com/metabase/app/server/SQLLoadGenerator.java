@@ -0,0 +1,221 @@
+package com.metabase.app.server;
+
+import com.metabase.app.metrics.SQLHistogram;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a SQLTranspilerServer: every connection sends the same query
+ * pipelined a number of times, waits for all the answers, and starts again until the time is up.
+ * Run with
+ * java -cp target/metabase-app-1.0-SNAPSHOT.jar com.metabase.app.server.SQLLoadGenerator [options]
+ * where the options are --host, --port, --connections, --pipeline, --seconds, --http, --dialect
+ * and --query.
+ */
+public final class SQLLoadGenerator {
+    private final String host;
+    private final int port;
+    private final SQLTranspilerServer.Protocol protocol;
+    // The request sent pipeline times in a row
+    private final byte[] batch;
+    private final int pipeline;
+    private final LongAdder answers = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // Microseconds from sending a batch to reading its last answer
+    private final SQLHistogram batchLatency = new SQLHistogram();
+
+    public SQLLoadGenerator(String host, int port, SQLTranspilerServer.Protocol protocol, String dialect, String query, int pipeline) {
+        if (pipeline < 1) {
+            throw new IllegalArgumentException("The pipeline must hold at least one query.");
+        }
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.pipeline = pipeline;
+
+        byte[] body = query.getBytes(StandardCharsets.UTF_8);
+        byte[] request;
+        if (protocol == SQLTranspilerServer.Protocol.LINE) {
+            request = (dialect + ' ' + query + '\n').getBytes(StandardCharsets.UTF_8);
+        } else {
+            byte[] headers = ("POST /" + dialect + " HTTP/1.1\r\nHost: " + host
+                    + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            request = new byte[headers.length + body.length];
+            System.arraycopy(headers, 0, request, 0, headers.length);
+            System.arraycopy(body, 0, request, headers.length, body.length);
+        }
+        this.batch = new byte[request.length * pipeline];
+        for (int i = 0; i < pipeline; i++) {
+            System.arraycopy(request, 0, this.batch, i * request.length, request.length);
+        }
+    }
+
+    public long getAnswers() {
+        return this.answers.sum();
+    }
+
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    public SQLHistogram getBatchLatency() {
+        return this.batchLatency;
+    }
+
+    /**
+     * Sends queries on the given number of connections until the time is up.
+     */
+    public void run(int connections, long durationMillis) throws IOException, InterruptedException {
+        long end = System.nanoTime() + durationMillis * 1_000_000;
+        Thread[] threads = new Thread[connections];
+        IOException[] failures = new IOException[connections];
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    this.runConnection(end);
+                } catch (IOException e) {
+                    failures[index] = e;
+                }
+            }, "sql-load-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (IOException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void runConnection(long end) throws IOException {
+        try (Socket socket = new Socket(this.host, this.port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                out.write(this.batch);
+                out.flush();
+                for (int i = 0; i < this.pipeline; i++) {
+                    boolean valid = this.protocol == SQLTranspilerServer.Protocol.LINE ? readLine(in) : readHttpResponse(in);
+                    if (!valid) {
+                        this.errors.increment();
+                    }
+                }
+                this.answers.add(this.pipeline);
+                this.batchLatency.record((System.nanoTime() - start) / 1_000);
+            }
+        }
+    }
+
+    /**
+     * Skips an answer of Protocol.LINE, telling whether the query was valid.
+     */
+    private static boolean readLine(InputStream in) throws IOException {
+        int first = read(in);
+        int b = first;
+        while (b != '\n') {
+            b = read(in);
+        }
+        return first == '+';
+    }
+
+    /**
+     * Skips an HTTP response, telling whether its status was 200.
+     */
+    private static boolean readHttpResponse(InputStream in) throws IOException {
+        String statusLine = readHeaderLine(in);
+        int contentLength = 0;
+        String header;
+        while (!(header = readHeaderLine(in)).isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            read(in);
+        }
+        return statusLine.startsWith("HTTP/1.1 200 ");
+    }
+
+    private static String readHeaderLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = read(in)) != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static int read(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new IOException("The server closed the connection");
+        }
+        return b;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = SQLTranspilerServer.DEFAULT_PORT;
+        int connections = 4;
+        int pipeline = 16;
+        int seconds = 10;
+        SQLTranspilerServer.Protocol protocol = SQLTranspilerServer.Protocol.LINE;
+        String dialect = "postgresql";
+        String query = "{:where [:and [:= [:field 2] \"cam\"] [:> [:field 1] 35]] :limit 10}";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host":
+                    host = args[++i];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[++i]);
+                    break;
+                case "--pipeline":
+                    pipeline = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--http":
+                    protocol = SQLTranspilerServer.Protocol.HTTP;
+                    break;
+                case "--dialect":
+                    dialect = args[++i];
+                    break;
+                case "--query":
+                    query = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SQLLoadGenerator generator = new SQLLoadGenerator(host, port, protocol, dialect, query, pipeline);
+        generator.run(connections, seconds * 1000L);
+
+        SQLHistogram latency = generator.getBatchLatency();
+        System.out.printf("%d queries in %d s on %d connections, %d in flight each: %.0f queries/s, %d errors%n",
+                generator.getAnswers(), seconds, connections, pipeline,
+                generator.getAnswers() / (double) seconds, generator.getErrors());
+        System.out.printf("Batch latency (us): mean %.0f, p50 %d, p99 %d, max %d%n",
+                latency.getMean(), latency.getPercentile(50), latency.getPercentile(99), latency.getMax());
+    }
+}
@@ -0,0 +1,358 @@
+package com.metabase.app.server;
+
+import com.metabase.app.SQLTranspileContext;
+import com.metabase.app.dialect.SQLDialects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A connection of SQLTranspilerServer, served by a single event loop. Every complete request read
+ * is answered right away, the answers being appended in order to the output, which is written as
+ * far as the socket takes it. Reading stops while too much output is waiting for the client.
+ */
+final class SQLServerConnection {
+    private static final int INITIAL_SIZE = 8 * 1024;
+    // Output waiting for the client past which requests are not read anymore
+    private static final int MAX_PENDING_OUTPUT = 256 * 1024;
+    // Buffers grown past this size are replaced by small ones once empty
+    private static final int MAX_KEPT_SIZE = 64 * 1024;
+    // Longest request line and headers accepted in HTTP
+    private static final int MAX_HEADERS_SIZE = 8 * 1024;
+    private static final byte[] CRLF_CRLF = {'\r', '\n', '\r', '\n'};
+
+    private final SQLTranspilerServer server;
+    private final SocketChannel channel;
+    // Context of the event loop, shared by its connections
+    private final SQLTranspileContext context;
+    // Bytes read and not answered yet, in write mode
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_SIZE);
+    // Answers not written yet, in write mode
+    private ByteBuffer out = ByteBuffer.allocate(INITIAL_SIZE);
+    // The client sent its last request, or the connection can't be read anymore
+    private boolean closing = false;
+    private boolean closed = false;
+
+    SQLServerConnection(SQLTranspilerServer server, SocketChannel channel, SQLTranspileContext context) {
+        this.server = server;
+        this.channel = channel;
+        this.context = context;
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    int interestOps() {
+        int ops = 0;
+        if (this.out.position() > 0) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (!this.closing && this.out.position() < MAX_PENDING_OUTPUT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        return ops;
+    }
+
+    /**
+     * Reads what the client sent, answers every complete request and writes the answers.
+     */
+    void read() throws IOException {
+        if (this.closing) {
+            return;
+        }
+        if (!this.in.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(this.in.capacity() * 2);
+            this.in.flip();
+            larger.put(this.in);
+            this.in = larger;
+        }
+        int read = this.channel.read(this.in);
+        if (read < 0) {
+            this.closing = true;
+        }
+        this.in.flip();
+        if (this.server.getProtocol() == SQLTranspilerServer.Protocol.LINE) {
+            this.readLines();
+        } else {
+            this.readHttpRequests();
+        }
+        if (this.in.hasRemaining() || this.in.capacity() <= MAX_KEPT_SIZE) {
+            this.in.compact();
+        } else {
+            this.in = ByteBuffer.allocate(INITIAL_SIZE);
+        }
+        this.write();
+    }
+
+    /**
+     * Writes as many answers as the socket takes, closing the connection once the last one is
+     * written.
+     */
+    void write() throws IOException {
+        if (this.out.position() > 0) {
+            this.out.flip();
+            this.channel.write(this.out);
+            if (this.out.hasRemaining() || this.out.capacity() <= MAX_KEPT_SIZE) {
+                this.out.compact();
+            } else {
+                this.out = ByteBuffer.allocate(INITIAL_SIZE);
+            }
+        }
+        if (this.closing && this.out.position() == 0) {
+            this.close();
+        }
+    }
+
+    void close() {
+        this.closed = true;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    /**
+     * Answers the lines "dialect query" read, leaving an incomplete line in the input.
+     */
+    private void readLines() {
+        ByteBuffer in = this.in;
+        while (!this.closing) {
+            int start = in.position();
+            int end = indexOf(in, start, (byte) '\n');
+            if (end < 0) {
+                if (in.remaining() > SQLTranspilerServer.MAX_REQUEST_SIZE) {
+                    this.answerLine(false, "The query is longer than " + SQLTranspilerServer.MAX_REQUEST_SIZE + " bytes");
+                    this.closing = true;
+                }
+                return;
+            }
+            in.position(end + 1);
+            if (end > start && in.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end == start) {
+                continue;
+            }
+            int space = indexOf(in, start, end, (byte) ' ');
+            if (space < 0) {
+                this.answerLine(false, "Expected a dialect and a query");
+                continue;
+            }
+            String dialect = ascii(in, start, space);
+            ByteBuffer query = in.duplicate();
+            query.limit(end).position(space + 1);
+            try {
+                this.answerLine(true, this.context.transpile(query, SQLDialects.get(dialect)));
+            } catch (IllegalArgumentException e) {
+                this.answerLine(false, e.getMessage());
+            } finally {
+                this.context.reset();
+            }
+        }
+    }
+
+    private void answerLine(boolean valid, CharSequence text) {
+        this.reserve(text.length() * 3 + 2);
+        this.out.put(valid ? (byte) '+' : (byte) '-');
+        encode(text, true, this.out);
+        this.out.put((byte) '\n');
+    }
+
+    /**
+     * Answers the complete HTTP requests read, leaving an incomplete one in the input.
+     */
+    private void readHttpRequests() {
+        ByteBuffer in = this.in;
+        while (!this.closing) {
+            int start = in.position();
+            int headersEnd = indexOf(in, start, CRLF_CRLF);
+            if (headersEnd < 0) {
+                if (in.remaining() > MAX_HEADERS_SIZE) {
+                    this.answerHttp(431, "Request Header Fields Too Large", "The headers are longer than " + MAX_HEADERS_SIZE + " bytes", true);
+                }
+                return;
+            }
+            String[] lines = ascii(in, start, headersEnd).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[1].startsWith("/")) {
+                this.answerHttp(400, "Bad Request", "Invalid request line", true);
+                return;
+            }
+            boolean keepAlive = requestLine[2].equals("HTTP/1.1");
+            long contentLength = 0;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        contentLength = -1;
+                    }
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    keepAlive = value.equalsIgnoreCase("keep-alive") || keepAlive && !value.equalsIgnoreCase("close");
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    this.answerHttp(501, "Not Implemented", "Chunked bodies are not supported, send a Content-Length", true);
+                    return;
+                }
+            }
+            if (contentLength < 0) {
+                this.answerHttp(400, "Bad Request", "Invalid Content-Length", true);
+                return;
+            }
+            if (contentLength > SQLTranspilerServer.MAX_REQUEST_SIZE) {
+                this.answerHttp(413, "Payload Too Large", "The query is longer than " + SQLTranspilerServer.MAX_REQUEST_SIZE + " bytes", true);
+                return;
+            }
+            int bodyStart = headersEnd + CRLF_CRLF.length;
+            int bodyEnd = bodyStart + (int) contentLength;
+            if (bodyEnd > in.limit()) {
+                this.reserveInput(bodyEnd - start);
+                return;
+            }
+            in.position(bodyEnd);
+            if (!requestLine[0].equals("POST")) {
+                this.answerHttp(405, "Method Not Allowed", "Queries are sent with POST", !keepAlive);
+                continue;
+            }
+            ByteBuffer query = in.duplicate();
+            query.limit(bodyEnd).position(bodyStart);
+            try {
+                this.answerHttp(200, "OK", this.context.transpile(query, SQLDialects.get(requestLine[1].substring(1))), !keepAlive);
+            } catch (IllegalArgumentException e) {
+                this.answerHttp(400, "Bad Request", e.getMessage(), !keepAlive);
+            } finally {
+                this.context.reset();
+            }
+        }
+    }
+
+    private void answerHttp(int status, String reason, CharSequence body, boolean close) {
+        String headers = "HTTP/1.1 " + status + ' ' + reason
+                + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + utf8Length(body)
+                + (close ? "\r\nConnection: close\r\n\r\n" : "\r\n\r\n");
+        this.reserve(headers.length() + body.length() * 3);
+        encode(headers, false, this.out);
+        encode(body, false, this.out);
+        if (close) {
+            this.closing = true;
+        }
+    }
+
+    /**
+     * Makes room in the input for a request of the given size, the input being in read mode.
+     */
+    private void reserveInput(int size) {
+        if (this.in.capacity() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(size, this.in.capacity() * 2));
+            larger.put(this.in);
+            larger.flip();
+            this.in = larger;
+        }
+    }
+
+    private void reserve(int size) {
+        if (this.out.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(this.out.position() + size, this.out.capacity() * 2));
+            this.out.flip();
+            larger.put(this.out);
+            this.out = larger;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, byte b) {
+        return indexOf(buffer, from, buffer.limit(), b);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, byte[] bytes) {
+        int last = buffer.limit() - bytes.length;
+        search:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < bytes.length; j++) {
+                if (buffer.get(i + j) != bytes[j]) {
+                    continue search;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String ascii(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Number of bytes encode writes for the text without escaping.
+     */
+    private static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the text in UTF-8 into the buffer, which has room for 3 bytes per char, escaping line
+     * breaks and backslashes when asked. Lone surrogates are written as '?'.
+     */
+    private static void encode(CharSequence text, boolean escape, ByteBuffer out) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c == '\n' || c == '\r' || c == '\\')) {
+                    out.put((byte) '\\').put(c == '\n' ? (byte) 'n' : c == '\r' ? (byte) 'r' : (byte) '\\');
+                } else {
+                    out.put((byte) c);
+                }
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18))
+                        .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                        .put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+}
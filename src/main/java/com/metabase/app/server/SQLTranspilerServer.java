@@ -0,0 +1,222 @@
+package com.metabase.app.server;
+
+import com.metabase.app.SQLTranspileContext;
+import com.metabase.app.parser.SQLQueryParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Long running server transpiling queries written in the DSL read by SQLQueryParser, so that the
+ * JVM, the parser and its factory stay warm between queries instead of every caller paying for a
+ * JVM start. Connections are served by a few event loops with NIO selectors, each query being
+ * transpiled on the loop of its connection. Clients may send many queries without waiting for the
+ * answers, which come back in the same order.
+ *
+ * With Protocol.LINE, every query is a line "dialect query", e.g.
+ * postgresql {:where [:= [:field 2] "cam"] :limit 10}
+ * answered by a line "+SQL", or "-message" when the query is invalid. Line breaks and backslashes
+ * of the answer are escaped as \n, \r and \\.
+ * With Protocol.HTTP, every query is an HTTP/1.1 request "POST /dialect" whose body is the query,
+ * answered with the SQL as text/plain, or a 400 with the message when the query is invalid.
+ * Connections are kept open unless the client asks otherwise.
+ */
+public final class SQLTranspilerServer implements Closeable {
+    public static final int DEFAULT_PORT = 7878;
+    // Longest query accepted, the connection is closed after answering a longer one
+    static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    public enum Protocol {
+        LINE,
+        HTTP
+    }
+
+    private final SQLQueryParser parser;
+    private final Protocol protocol;
+    private final EventLoop[] loops;
+    private ServerSocketChannel server;
+    private int nextLoop = 0;
+    private volatile boolean running = false;
+
+    public SQLTranspilerServer(SQLQueryParser parser, Protocol protocol) {
+        this(parser, protocol, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SQLTranspilerServer(SQLQueryParser parser, Protocol protocol, int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("The server needs at least one event loop.");
+        }
+        this.parser = parser;
+        this.protocol = protocol;
+        this.loops = new EventLoop[eventLoops];
+    }
+
+    /**
+     * Starts listening, on an ephemeral port when the port of the address is 0.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (this.server != null) {
+            throw new IllegalStateException("The server is already started.");
+        }
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        for (int i = 0; i < this.loops.length; i++) {
+            this.loops[i] = new EventLoop(Selector.open());
+        }
+        // The first loop accepts the connections and hands them to every loop in turn
+        this.server.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+        this.running = true;
+        for (int i = 0; i < this.loops.length; i++) {
+            Thread thread = new Thread(this.loops[i], "sql-server-" + i);
+            this.loops[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    public int getPort() {
+        return this.server.socket().getLocalPort();
+    }
+
+    public Protocol getProtocol() {
+        return this.protocol;
+    }
+
+    /**
+     * Stops listening and closes every connection, waiting for the event loops to end.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        this.server.close();
+        for (EventLoop loop : this.loops) {
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : this.loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            EventLoop loop = this.loops[this.nextLoop];
+            this.nextLoop = (this.nextLoop + 1) % this.loops.length;
+            loop.added.add(channel);
+            loop.selector.wakeup();
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        // Connections accepted for this loop and not registered yet
+        private final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+        // Transpiles the queries of every connection of the loop, one at a time
+        private final SQLTranspileContext context = new SQLTranspileContext(SQLTranspilerServer.this.parser);
+        private Thread thread;
+
+        private EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (SQLTranspilerServer.this.running) {
+                    this.selector.select();
+                    this.registerAdded();
+                    Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        this.handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                this.closeAll();
+            }
+        }
+
+        private void registerAdded() throws IOException {
+            SocketChannel channel;
+            while ((channel = this.added.poll()) != null) {
+                SQLServerConnection connection = new SQLServerConnection(SQLTranspilerServer.this, channel, this.context);
+                channel.register(this.selector, SelectionKey.OP_READ, connection);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                try {
+                    SQLTranspilerServer.this.accept();
+                } catch (IOException e) {
+                    // The client went away before being accepted
+                }
+                return;
+            }
+            SQLServerConnection connection = (SQLServerConnection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.write();
+                }
+                if (connection.isClosed()) {
+                    key.cancel();
+                } else {
+                    key.interestOps(connection.interestOps());
+                }
+            } catch (IOException | RuntimeException e) {
+                // Reset by the client, or a failure of this connection only
+                connection.close();
+                key.cancel();
+            }
+        }
+
+        private void closeAll() {
+            SocketChannel channel;
+            while ((channel = this.added.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+            for (SelectionKey key : this.selector.keys()) {
+                if (key.attachment() instanceof SQLServerConnection) {
+                    ((SQLServerConnection) key.attachment()).close();
+                }
+            }
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
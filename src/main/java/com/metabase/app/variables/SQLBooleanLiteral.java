@@ -0,0 +1,32 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.dialect.SQLNodeVisitor;
+
+/**
+ * Result of a condition that was found to be always true or always false while optimizing.
+ * Always true conditions write nothing so the enclosing clause can leave them out.
+ */
+public final class SQLBooleanLiteral implements SQLObjectTranspiler {
+    public static final SQLBooleanLiteral TRUE = new SQLBooleanLiteral(true);
+    public static final SQLBooleanLiteral FALSE = new SQLBooleanLiteral(false);
+
+    private final boolean value;
+
+    private SQLBooleanLiteral(boolean value) {
+        this.value = value;
+    }
+
+    public static SQLBooleanLiteral of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public boolean getValue() {
+        return this.value;
+    }
+
+    @Override
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitBoolean(this);
+    }
+}
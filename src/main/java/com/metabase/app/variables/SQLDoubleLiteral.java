@@ -0,0 +1,40 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.dialect.SQLNodeVisitor;
+
+public final class SQLDoubleLiteral extends SQLNumberLiteral {
+    private final double value;
+
+    public SQLDoubleLiteral(double value) {
+        this.value = value;
+    }
+
+    public double getValue() {
+        return this.value;
+    }
+
+    @Override
+    public boolean isIntegral() {
+        return false;
+    }
+
+    @Override
+    public long longValue() {
+        return (long) this.value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return this.value;
+    }
+
+    @Override
+    public Number getNumber() {
+        return Double.valueOf(this.value);
+    }
+
+    @Override
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitDouble(this);
+    }
+}
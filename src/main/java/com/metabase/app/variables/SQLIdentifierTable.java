@@ -0,0 +1,97 @@
+package com.metabase.app.variables;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Field references of a field map, built once when the table is built: each field is a SQLVariable
+ * which knows whether its name needs quotes (see SQLVariable.requiresQuotes), and is quoted for
+ * its dialect when rendered, by SQLStandardDialect.appendIdentifier. Queries built on the same
+ * field map share the same fields, and the table can be shared from any thread.
+ * Field ids are kept as primitive ints: a dense array indexed by id when the ids are small and
+ * compact, sorted ids searched by bisection otherwise.
+ */
+public final class SQLIdentifierTable {
+    private final int[] ids;
+    private final SQLVariable[] fields;
+    // Fields indexed by id, null when the ids are too sparse for it
+    private final SQLVariable[] fieldsById;
+
+    public SQLIdentifierTable(Map<Integer, String> fieldMap) {
+        this(toIds(fieldMap), toNames(fieldMap));
+    }
+
+    /**
+     * Builds the table from field ids and the names at the same positions.
+     */
+    public SQLIdentifierTable(int[] ids, String[] names) {
+        if (ids.length != names.length) {
+            throw new IllegalArgumentException("Field ids and names must have the same length.");
+        }
+        // Positions sorted by id, each packed with its id so no comparator is needed
+        long[] order = new long[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (long) ids[i] << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int count = 0;
+        int[] sortedIds = new int[ids.length];
+        SQLVariable[] sortedFields = new SQLVariable[ids.length];
+        for (long idAndPosition : order) {
+            int i = (int) idAndPosition;
+            if (names[i] == null) {
+                continue;
+            }
+            if (count > 0 && sortedIds[count - 1] == ids[i]) {
+                throw new IllegalArgumentException("Duplicate field " + ids[i]);
+            }
+            sortedIds[count] = ids[i];
+            sortedFields[count] = new SQLVariable(names[i], false);
+            count++;
+        }
+        this.ids = Arrays.copyOf(sortedIds, count);
+        this.fields = Arrays.copyOf(sortedFields, count);
+
+        int maxId = count == 0 ? -1 : this.ids[count - 1];
+        if (count > 0 && this.ids[0] >= 0 && maxId < 2 * count + 64) {
+            this.fieldsById = new SQLVariable[maxId + 1];
+            for (int i = 0; i < count; i++) {
+                this.fieldsById[this.ids[i]] = this.fields[i];
+            }
+        } else {
+            this.fieldsById = null;
+        }
+    }
+
+    public SQLVariable getField(int id) {
+        SQLVariable field = null;
+        if (this.fieldsById != null) {
+            if (id >= 0 && id < this.fieldsById.length) {
+                field = this.fieldsById[id];
+            }
+        } else {
+            int index = Arrays.binarySearch(this.ids, id);
+            if (index >= 0) {
+                field = this.fields[index];
+            }
+        }
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field " + id);
+        }
+        return field;
+    }
+
+    private static int[] toIds(Map<Integer, String> fieldMap) {
+        int[] ids = new int[fieldMap.size()];
+        int i = 0;
+        for (Integer id : fieldMap.keySet()) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    private static String[] toNames(Map<Integer, String> fieldMap) {
+        return fieldMap.values().toArray(new String[0]);
+    }
+}
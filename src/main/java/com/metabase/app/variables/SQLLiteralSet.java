@@ -0,0 +1,150 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.SQLObjectTranspiler;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Set of literal values. Integral and floating point literals are kept as primitive longs in open
+ * addressing tables, so large lists of ids are checked without boxing them. A number and a string
+ * are never equal, and neither are 1 and 1.0. Each table is only allocated once a literal of its
+ * kind is added, most lists only hold one kind.
+ * The set compares literals as they are written, unlike equalLiterals, because it leaves literals
+ * out of lists compared with a field: a text field may convert numbers to text, e.g. on SQLite,
+ * where name IN (2, 2.0) also matches '2.0' but name IN (2) doesn't.
+ */
+public final class SQLLiteralSet {
+    private LongTable integral;
+    private LongTable floating;
+    private Set<Object> others;
+
+    /**
+     * True for the nodes whose value is known before rendering: numbers, strings and NULL.
+     */
+    public static boolean isLiteral(SQLObjectTranspiler node) {
+        return node instanceof SQLNumberLiteral
+                || (node instanceof SQLVariable && !((SQLVariable) node).isFieldName());
+    }
+
+    /**
+     * Equality of two literals as the database sees it: numbers by value, so 1 and 1.0 are equal,
+     * and NULL equal to NULL as in the query language. Only for literals compared with each
+     * other, see the class comment for literals compared with a field.
+     */
+    public static boolean equalLiterals(SQLObjectTranspiler literal1, SQLObjectTranspiler literal2) {
+        if (literal1 instanceof SQLNumberLiteral && literal2 instanceof SQLNumberLiteral) {
+            return ((SQLNumberLiteral) literal1).compareTo((SQLNumberLiteral) literal2) == 0;
+        }
+        if (literal1 instanceof SQLNumberLiteral || literal2 instanceof SQLNumberLiteral) {
+            return false;
+        }
+        return Objects.equals(valueOf(literal1), valueOf(literal2));
+    }
+
+    /**
+     * Adds a literal, returning false when an equal one was already there.
+     */
+    public boolean add(SQLObjectTranspiler literal) {
+        if (literal instanceof SQLLongLiteral) {
+            if (this.integral == null) {
+                this.integral = new LongTable();
+            }
+            return this.integral.add(((SQLLongLiteral) literal).getValue());
+        }
+        if (literal instanceof SQLDoubleLiteral) {
+            if (this.floating == null) {
+                this.floating = new LongTable();
+            }
+            return this.floating.add(doubleKey(((SQLDoubleLiteral) literal).getValue()));
+        }
+        Object value = valueOf(literal);
+        if (this.others == null) {
+            this.others = new HashSet<>();
+        }
+        return this.others.add(value);
+    }
+
+    public boolean contains(SQLObjectTranspiler literal) {
+        if (literal instanceof SQLLongLiteral) {
+            return this.integral != null && this.integral.contains(((SQLLongLiteral) literal).getValue());
+        }
+        if (literal instanceof SQLDoubleLiteral) {
+            return this.floating != null
+                    && this.floating.contains(doubleKey(((SQLDoubleLiteral) literal).getValue()));
+        }
+        Object value = valueOf(literal);
+        return this.others != null && this.others.contains(value);
+    }
+
+    private static Object valueOf(SQLObjectTranspiler literal) {
+        if (!isLiteral(literal)) {
+            throw new IllegalArgumentException("Not a literal: " + literal.getClass().getSimpleName());
+        }
+        return literal instanceof SQLNumberLiteral
+                ? ((SQLNumberLiteral) literal).getNumber()
+                : ((SQLVariable) literal).getVariable();
+    }
+
+    /**
+     * -0.0 and 0.0 are the same number for the database.
+     */
+    private static long doubleKey(double value) {
+        return Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+    }
+
+    /**
+     * Open addressing hash set of longs, with 0 tracked apart because it marks the free slots.
+     */
+    private static final class LongTable {
+        private long[] keys = new long[16];
+        private int size = 0;
+        private boolean containsZero = false;
+
+        private boolean add(long key) {
+            if (key == 0) {
+                boolean added = !this.containsZero;
+                this.containsZero = true;
+                return added;
+            }
+            int slot = this.find(key);
+            if (this.keys[slot] == key) {
+                return false;
+            }
+            this.keys[slot] = key;
+            if (++this.size * 2 > this.keys.length) {
+                this.grow();
+            }
+            return true;
+        }
+
+        private boolean contains(long key) {
+            return key == 0 ? this.containsZero : this.keys[this.find(key)] == key;
+        }
+
+        private int find(long key) {
+            int mask = this.keys.length - 1;
+            int slot = hash(key) & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = this.keys;
+            this.keys = new long[oldKeys.length * 2];
+            for (long key : oldKeys) {
+                if (key != 0) {
+                    this.keys[this.find(key)] = key;
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.dialect.SQLNodeVisitor;
+
+public final class SQLLongLiteral extends SQLNumberLiteral {
+    private final long value;
+
+    public SQLLongLiteral(long value) {
+        this.value = value;
+    }
+
+    public long getValue() {
+        return this.value;
+    }
+
+    @Override
+    public boolean isIntegral() {
+        return true;
+    }
+
+    @Override
+    public long longValue() {
+        return this.value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return this.value;
+    }
+
+    @Override
+    public Number getNumber() {
+        return Long.valueOf(this.value);
+    }
+
+    @Override
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitLong(this);
+    }
+}
@@ -0,0 +1,35 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.SQLObjectTranspiler;
+
+/**
+ * Number literal kept as a primitive and written straight into the output, without boxing or an
+ * intermediate string. Number literals look the same in every dialect.
+ */
+public abstract class SQLNumberLiteral implements SQLObjectTranspiler {
+
+    SQLNumberLiteral() {
+    }
+
+    public abstract boolean isIntegral();
+
+    public abstract long longValue();
+
+    public abstract double doubleValue();
+
+    /**
+     * Boxed value, for the optimizer. Rendering never needs it.
+     */
+    public abstract Number getNumber();
+
+    /**
+     * Compares two number literals, exactly when both are integral.
+     */
+    public int compareTo(SQLNumberLiteral other) {
+        if (this.isIntegral() && other.isIntegral()) {
+            return Long.compare(this.longValue(), other.longValue());
+        }
+        return Double.compare(this.doubleValue(), other.doubleValue());
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.dialect.SQLNodeVisitor;
+
+import java.util.List;
+
+/**
+ * Bind parameter placeholder of a parameterized query. Its value is only known when the compiled
+ * query is bound, so optimizations treat it like a field and never fold it.
+ * Rendering records the literal index of the parameter, which gives the order in which values
+ * have to be bound even after optimizations removed part of the query.
+ */
+public final class SQLParameter implements SQLObjectTranspiler {
+    private final int index;
+    private final List<Integer> renderedIndexes;
+
+    public SQLParameter(int index, List<Integer> renderedIndexes) {
+        this.index = index;
+        this.renderedIndexes = renderedIndexes;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Called by renderers each time the placeholder is written.
+     */
+    public void recordRendered() {
+        this.renderedIndexes.add(this.index);
+    }
+
+    @Override
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitParameter(this);
+    }
+}
@@ -0,0 +1,74 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.Utils;
+
+/**
+ * Writes quoted string literals straight into the output in a single pass. Strings that need no
+ * escaping are copied as a whole.
+ * PostgreSQL and SQL Server escape a quote by doubling it, MySQL uses backslash escapes.
+ */
+public final class SQLStringEscaper {
+
+    private SQLStringEscaper() {}
+
+    public static void appendStringLiteral(StringBuilder out, String s, Utils.SQLTranspilerType type) {
+        if (type == Utils.SQLTranspilerType.MY_SQL) {
+            appendBackslashEscaped(out, s);
+        } else {
+            appendQuoteDoubled(out, s);
+        }
+    }
+
+    /**
+     * Writes the quoted string, doubling the quotes in it as standard SQL does.
+     */
+    public static void appendQuoteDoubled(StringBuilder out, String s) {
+        out.append('\'');
+        int from = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\'') {
+                out.append(s, from, i + 1).append('\'');
+                from = i + 1;
+            }
+        }
+        out.append(s, from, s.length()).append('\'');
+    }
+
+    /**
+     * Writes the quoted string, escaping special characters with a backslash as MySQL does.
+     */
+    public static void appendBackslashEscaped(StringBuilder out, String s) {
+        out.append('\'');
+        int from = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char escaped = mySQLEscape(s.charAt(i));
+            if (escaped != 0) {
+                out.append(s, from, i).append('\\').append(escaped);
+                from = i + 1;
+            }
+        }
+        out.append(s, from, s.length()).append('\'');
+    }
+
+    /**
+     * Returns the character to write after a backslash, or 0 if the character needs no escaping.
+     */
+    private static char mySQLEscape(char c) {
+        switch (c) {
+            case '\\':
+            case '\'':
+            case '"':
+                return c;
+            case '\0':
+                return '0';
+            case '\n':
+                return 'n';
+            case '\r':
+                return 'r';
+            case '\032':
+                return 'Z';
+            default:
+                return 0;
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.metabase.app.variables;
 
 import com.metabase.app.SQLObjectTranspiler;
-import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLNodeVisitor;
 
 public class SQLVariable implements SQLObjectTranspiler {
     private final Object variable;
     private final boolean isStrLiteral;
+    // Whether the field name has to be quoted, found once instead of on every render
+    private final boolean requiresQuotes;
 
     public SQLVariable(Object variable, boolean isStrLiteral) {
         this.variable = variable;
         this.isStrLiteral = isStrLiteral;
+        this.requiresQuotes = this.isFieldName() && requiresQuotes((String) variable);
     }
 
     public Object getVariable() {
@@ -20,40 +23,25 @@ public class SQLVariable implements SQLObjectTranspiler {
         return this.variable instanceof String && !isStrLiteral;
     }
 
-    @Override
-    public String transpileToPostgreSQL() {
-        if (this.isFieldName() && this.variable.toString().matches(".*[ -.+~|].*")) {
-            return String.format("\"%s\"", this.variable);
-        }
-        return this.transpileEquivalentQuery();
+    public boolean requiresQuotes() {
+        return this.requiresQuotes;
     }
 
     @Override
-    public String transpileToMySQL() {
-        if (this.isFieldName() && this.variable.toString().matches(".*[ -.+~|].*")) {
-            return String.format("`%s`", this.variable);
-        }
-        return this.transpileEquivalentQuery();
-    }
-
-    @Override
-    public String transpileToServerSQL() {
-        if (this.isFieldName() && this.variable.toString().matches(".*[ -.+~|].*")) {
-            return String.format("\"%s\"", this.variable);
-        }
-        return this.transpileEquivalentQuery();
+    public void accept(SQLNodeVisitor visitor) {
+        visitor.visitVariable(this);
     }
 
-    private String transpileEquivalentQuery() {
-        if (this.variable == null) {
-            return "NULL";
-        } else if (this.variable instanceof String && isStrLiteral) {
-            String s = (String) this.variable;
-            s = s.replaceAll("'", "\\\\'");
-            s = s.replaceAll("\"", "\\\\\"");
-            return String.format("'%s'", s);
-        } else {
-            return this.variable.toString();
+    /**
+     * Field names with a space, a character between ' ' and '.', '+', '~' or '|' need quotes.
+     */
+    private static boolean requiresQuotes(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= ' ' && c <= '.') || c == '+' || c == '~' || c == '|') {
+                return true;
+            }
         }
+        return false;
     }
 }
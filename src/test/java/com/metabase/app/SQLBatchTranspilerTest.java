@@ -0,0 +1,126 @@
+package com.metabase.app;
+
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLBatchTranspilerTest {
+
+    private static final int BATCH_SIZE = 2000;
+
+    private final SQLIdentifierTable fields = new SQLIdentifierTable(new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(4, "age");
+    }});
+
+    private static Map<String, Object> query(Object where, int limit) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        argsMap.put(Utils.LIMIT_CLAUSE, limit);
+        return argsMap;
+    }
+
+    @Test
+    public void test_resultsKeepTheRequestOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<SQLBatchTranspiler.Request> requests = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{">", new Object[]{"field", 4}, i}, i + 1), Utils.SQLTranspilerType.POSTGRESQL));
+            }
+
+            List<SQLBatchTranspiler.Result> results = new SQLBatchTranspiler(executor).transpile(requests);
+
+            assertEquals(BATCH_SIZE, results.size());
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                assertTrue(results.get(i).isSuccessful());
+                assertEquals("SELECT * FROM data WHERE age > " + i + " LIMIT " + (i + 1) + ";", results.get(i).getSQL());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_invalidQueryOnlyFailsItsOwnResult() {
+        List<SQLBatchTranspiler.Request> requests = new ArrayList<>();
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"=", new Object[]{"field", 2}, "cam"}, 10), Utils.SQLTranspilerType.SQL_SERVER));
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"like", new Object[]{"field", 2}, "cam"}, 10), Utils.SQLTranspilerType.SQL_SERVER));
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"=", new Object[]{"field", 9}, "cam"}, 10), Utils.SQLTranspilerType.SQL_SERVER));
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"=", new Object[]{"field", 1}, 5}, 10), Utils.SQLTranspilerType.SQL_SERVER));
+
+        List<SQLBatchTranspiler.Result> results = new SQLBatchTranspiler().transpile(requests);
+
+        assertEquals("SELECT TOP 10 * FROM data WHERE name = 'cam';", results.get(0).getSQL());
+        assertFalse(results.get(1).isSuccessful());
+        assertNull(results.get(1).getSQL());
+        assertTrue(results.get(1).getError() instanceof IllegalArgumentException);
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals("SELECT TOP 10 * FROM data WHERE id = 5;", results.get(3).getSQL());
+    }
+
+    @Test
+    public void test_errorsAndRejectionsOnlyFailTheirOwnResult() {
+        SQLObjectTranspiler overflowing = new SQLObjectTranspiler() {
+            @Override
+            public String transpileToPostgreSQL() {
+                throw new StackOverflowError();
+            }
+        };
+        // Rejects every other task
+        AtomicInteger tasks = new AtomicInteger();
+        Executor executor = task -> {
+            if (tasks.getAndIncrement() % 2 == 1) {
+                throw new RejectedExecutionException();
+            }
+            task.run();
+        };
+        List<SQLBatchTranspiler.Request> requests = new ArrayList<>();
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(overflowing, 10), Utils.SQLTranspilerType.POSTGRESQL));
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"=", new Object[]{"field", 1}, 5}, 10), Utils.SQLTranspilerType.POSTGRESQL));
+        requests.add(new SQLBatchTranspiler.Request(this.fields, query(new Object[]{"=", new Object[]{"field", 1}, 6}, 10), Utils.SQLTranspilerType.POSTGRESQL));
+
+        List<SQLBatchTranspiler.Result> results = new SQLBatchTranspiler(executor).transpile(requests);
+
+        assertTrue(results.get(0).getError() instanceof StackOverflowError);
+        assertTrue(results.get(1).getError() instanceof RejectedExecutionException);
+        assertEquals("SELECT * FROM data WHERE id = 6 LIMIT 10;", results.get(2).getSQL());
+    }
+
+    @Test
+    public void test_sharedTranspilerRendersConcurrently() throws Exception {
+        SQLTranspiler transpiler = new SQLTranspiler(this.fields, query(
+                new Object[]{Utils.AND_OP, new Object[]{Utils.OR_OP, new Object[]{"=", new Object[]{"field", 2}, "cam"}, new Object[]{"<", new Object[]{"field", 4}, 30}}, new Object[]{"!=", new Object[]{"field", 1}, 1, 2, 3}},
+                10
+        ));
+        String expected = transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> renders = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                renders.add(executor.submit(() -> transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL)));
+            }
+            for (Future<String> render : renders) {
+                assertEquals(expected, render.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
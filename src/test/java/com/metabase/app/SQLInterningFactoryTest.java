@@ -0,0 +1,116 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.parser.SQLQueryParser;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLParameter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SQLInterningFactoryTest {
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "update-at");
+    }};
+
+    private final SQLInterningFactory factory = new SQLInterningFactory(new SQLIdentifierTable(this.fieldMap));
+
+    private static Map<String, Object> query(Object where) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        argsMap.put(Utils.LIMIT_CLAUSE, 10);
+        return argsMap;
+    }
+
+    private static Object[] segment(int branches) {
+        Object[] or = new Object[branches + 1];
+        or[0] = "or";
+        for (int i = 1; i <= branches; i++) {
+            or[i] = new Object[]{"and",
+                    new Object[]{"=", new Object[]{"field", 2}, "segment " + (i % 3)},
+                    new Object[]{"not-empty", new Object[]{"field", 3}}};
+        }
+        return or;
+    }
+
+    @Test
+    public void test_repeatedClausesAreOneObject() {
+        SQLObjectTranspiler notEmpty1 = this.factory.operator("not-empty", new SQLObjectTranspiler[]{this.factory.field(3)});
+        SQLObjectTranspiler notEmpty2 = this.factory.operator("not-empty", new SQLObjectTranspiler[]{this.factory.field(3)});
+        SQLObjectTranspiler isEmpty = this.factory.operator("is-empty", new SQLObjectTranspiler[]{this.factory.field(3)});
+
+        assertSame(notEmpty1, notEmpty2);
+        assertNotSame(notEmpty1, isEmpty);
+        assertSame(this.factory.literal(1), this.factory.literal(1L));
+        assertNotSame(this.factory.literal(1), this.factory.literal(1.0));
+        assertNotSame(this.factory.literal(0.0), this.factory.literal(-0.0));
+    }
+
+    @Test
+    public void test_equalQueriesShareTheirOptimizedClauses() {
+        SQLTranspiler query1 = new SQLTranspiler(this.factory, query(segment(10)));
+        SQLTranspiler query2 = new SQLTranspiler(this.factory, query(segment(10)));
+        SQLTranspiler parsed = new SQLQueryParser(this.factory).parse("{:where [:= [:field 1] 1 1] :limit 10}");
+        SQLTranspiler built = new SQLTranspiler(this.factory, query(new Object[]{"=", new Object[]{"field", 1}, 1}));
+
+        assertSame(query1.getWhereClause(), query2.getWhereClause());
+        assertSame(parsed.getWhereClause(), built.getWhereClause());
+        assertNotSame(query1.getWhereClause(), built.getWhereClause());
+    }
+
+    @Test
+    public void test_sharedClausesRenderLikeUnsharedOnes() {
+        SQLTranspiler interned = new SQLTranspiler(this.factory, query(segment(12)));
+        SQLTranspiler plain = new SQLTranspiler(this.fieldMap, query(segment(12)));
+
+        for (int i = 0; i < 2; i++) {
+            for (SQLDialect dialect : SQLDialects.getAll()) {
+                assertEquals(plain.generateSQL(dialect), interned.generateSQL(dialect));
+            }
+        }
+    }
+
+    @Test
+    public void test_contradictionsAreFoldedAsWithoutSharing() {
+        Object[] contradiction = {"and",
+                new Object[]{">", new Object[]{"field", 1}, 40},
+                new Object[]{"<", new Object[]{"field", 1}, 30}};
+        Object[][] wheres = {
+                contradiction,
+                new Object[]{"or", contradiction, new Object[]{"=", new Object[]{"field", 2}, "cam"}},
+        };
+        SQLObjectTranspiler built = this.factory.operator("and", new SQLObjectTranspiler[]{
+                this.factory.operator(">", new SQLObjectTranspiler[]{this.factory.field(1), this.factory.literal(40)}),
+                this.factory.operator("<", new SQLObjectTranspiler[]{this.factory.field(1), this.factory.literal(30)})});
+        assertTrue(((SQLLogicalOperator) this.factory.optimize(built)).containsContradiction());
+
+        for (Object[] where : wheres) {
+            SQLTranspiler interned = new SQLTranspiler(this.factory, query(where));
+            SQLTranspiler plain = new SQLTranspiler(this.fieldMap, query(where));
+            for (SQLDialect dialect : SQLDialects.getAll()) {
+                assertEquals(plain.generateSQL(dialect), interned.generateSQL(dialect));
+            }
+        }
+    }
+
+    @Test
+    public void test_parametersAreNeverShared() {
+        SQLObjectTranspiler parameter = new SQLParameter(0, new ArrayList<>());
+        SQLObjectTranspiler equals1 = this.factory.operator("=", new SQLObjectTranspiler[]{this.factory.field(2), parameter});
+        SQLObjectTranspiler equals2 = this.factory.operator("=", new SQLObjectTranspiler[]{this.factory.field(2), parameter});
+
+        assertNotSame(equals1, equals2);
+    }
+}
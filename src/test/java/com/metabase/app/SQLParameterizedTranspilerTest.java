@@ -0,0 +1,141 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.metrics.SQLInstrumentation;
+import com.metabase.app.metrics.SQLTranspilerListener;
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SQLParameterizedTranspilerTest {
+
+    private final SQLParameterizedTranspiler transpiler = new SQLParameterizedTranspiler(new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "date_joined");
+        put(4, "age");
+    }});
+
+    private static Map<String, Object> query(Object where, Integer limit) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        if (limit != null) {
+            argsMap.put(Utils.LIMIT_CLAUSE, limit);
+        }
+        return argsMap;
+    }
+
+    @Test
+    public void test_literalsBecomeBindParameters() {
+        SQLParameterizedQuery query = this.transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, query(
+                new Object[]{Utils.AND_OP, new Object[]{"=", new Object[]{"field", 2}, "cam"}, new Object[]{"=", new Object[]{"field", 4}, 25, 26, 27}},
+                null
+        ));
+
+        assertEquals("SELECT * FROM data WHERE name = ? AND age IN (?, ?, ?);", query.getSQL());
+        assertArrayEquals(new Object[]{"cam", 25, 26, 27}, query.getParameters());
+    }
+
+    @Test
+    public void test_sameShapeReusesTheCompiledStatement() {
+        SQLParameterizedQuery first = this.transpiler.generateSQL(Utils.SQLTranspilerType.SQL_SERVER, query(
+                new Object[]{"<", new Object[]{"field", 4}, 30}, 10
+        ));
+        SQLParameterizedQuery second = this.transpiler.generateSQL(Utils.SQLTranspilerType.SQL_SERVER, query(
+                new Object[]{"<", new Object[]{"field", 4}, 65}, 10
+        ));
+
+        assertEquals(1, this.transpiler.getTemplateCount());
+        assertEquals("SELECT TOP 10 * FROM data WHERE age < ?;", first.getSQL());
+        assertEquals(first.getSQL(), second.getSQL());
+        assertArrayEquals(new Object[]{30}, first.getParameters());
+        assertArrayEquals(new Object[]{65}, second.getParameters());
+    }
+
+    @Test
+    public void test_differentShapesAreCompiledSeparately() {
+        this.transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL, query(new Object[]{"=", new Object[]{"field", 4}, 30}, 10));
+        this.transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL, query(new Object[]{"=", new Object[]{"field", 4}, 30}, 20));
+        this.transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL, query(new Object[]{"=", new Object[]{"field", 1}, 30}, 10));
+        this.transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, query(new Object[]{"=", new Object[]{"field", 4}, 30}, 10));
+
+        assertEquals(4, this.transpiler.getTemplateCount());
+    }
+
+    @Test
+    public void test_leastRecentlyUsedShapeIsEvicted() {
+        SQLParameterizedTranspiler transpiler = new SQLParameterizedTranspiler(new SQLIdentifierTable(new HashMap<Integer, String>() {{
+            put(1, "id");
+            put(4, "age");
+        }}), 2);
+        Object[] first = {"=", new Object[]{"field", 1}, 1};
+        Object[] second = {"<", new Object[]{"field", 4}, 30};
+        Object[] third = {">", new Object[]{"field", 4}, 30};
+        List<Boolean> hits = new ArrayList<>();
+        SQLInstrumentation.setListener(new SQLTranspilerListener() {
+            @Override
+            public void onCacheLookup(String cache, SQLDialect dialect, boolean hit) {
+                hits.add(hit);
+            }
+        });
+        try {
+            for (Object[] shape : new Object[][]{first, second, first, third, first, second}) {
+                transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, query(shape, null));
+            }
+        } finally {
+            SQLInstrumentation.setListener(null);
+        }
+
+        // The third shape evicts the second one, used less recently than the first one
+        assertEquals(Arrays.asList(false, false, true, false, true, false), hits);
+        assertEquals(2, transpiler.getTemplateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_emptyCacheIsRejected() {
+        new SQLParameterizedTranspiler(new SQLIdentifierTable(new HashMap<>()), 0);
+    }
+
+    @Test
+    public void test_dialectsWithoutLegacyTypeAreCompiled() {
+        SQLParameterizedQuery query = this.transpiler.generateSQL(SQLDialects.SQLITE, query(
+                new Object[]{"=", new Object[]{"field", 2}, "cam"}, 10
+        ));
+
+        assertEquals("SELECT * FROM data WHERE name = ? LIMIT 10;", query.getSQL());
+        assertArrayEquals(new Object[]{"cam"}, query.getParameters());
+        this.transpiler.generateSQL(SQLDialects.POSTGRESQL, query(new Object[]{"=", new Object[]{"field", 2}, "bob"}, 10));
+        this.transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, query(new Object[]{"=", new Object[]{"field", 2}, "sam"}, 10));
+        assertEquals(2, this.transpiler.getTemplateCount());
+    }
+
+    @Test
+    public void test_nullsStayInlineAndAreOptimized() {
+        SQLParameterizedQuery query = this.transpiler.generateSQL(Utils.SQLTranspilerType.MY_SQL, query(
+                new Object[]{Utils.AND_OP, new Object[]{Utils.OR_OP, new Object[]{"is-empty", null}, new Object[]{"=", new Object[]{"field", 1}, 5}}, new Object[]{"!=", new Object[]{"field", 2}, "cam"}},
+                null
+        ));
+
+        assertEquals("SELECT * FROM data WHERE name <> ?;", query.getSQL());
+        assertArrayEquals(new Object[]{"cam"}, query.getParameters());
+    }
+
+    @Test
+    public void test_parametersAreNotFolded() {
+        SQLParameterizedQuery query = this.transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, query(
+                new Object[]{"<", 3, 4}, null
+        ));
+
+        assertEquals("SELECT * FROM data WHERE ? < ?;", query.getSQL());
+        assertArrayEquals(new Object[]{3, 4}, query.getParameters());
+    }
+}
@@ -0,0 +1,105 @@
+package com.metabase.app;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SQLQueryCacheTest {
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(4, "age");
+    }};
+
+    private static Map<String, Object> query(Object where) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        argsMap.put(Utils.LIMIT_CLAUSE, 10);
+        return argsMap;
+    }
+
+    @Test
+    public void test_structurallyEqualQueriesHit() {
+        SQLQueryCache cache = new SQLQueryCache(10);
+
+        String first = cache.generateSQL(Utils.SQLTranspilerType.MY_SQL, this.fieldMap, query(new Object[]{"=", new Object[]{"field", 2}, "cam"}));
+        String second = cache.generateSQL(Utils.SQLTranspilerType.MY_SQL, new HashMap<>(this.fieldMap), query(new Object[]{"=", new Object[]{"field", 2}, "cam"}));
+
+        assertEquals("SELECT * FROM data WHERE name = 'cam' LIMIT 10;", first);
+        assertEquals(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void test_differentQueriesFieldsOrDialectsMiss() {
+        SQLQueryCache cache = new SQLQueryCache(10);
+        Map<Integer, String> otherFieldMap = new HashMap<>(this.fieldMap);
+        otherFieldMap.put(2, "full_name");
+
+        assertEquals("SELECT * FROM data WHERE name = 'cam' LIMIT 10;",
+                cache.generateSQL(Utils.SQLTranspilerType.MY_SQL, this.fieldMap, query(new Object[]{"=", new Object[]{"field", 2}, "cam"})));
+        assertEquals("SELECT * FROM data WHERE name = 'joe' LIMIT 10;",
+                cache.generateSQL(Utils.SQLTranspilerType.MY_SQL, this.fieldMap, query(new Object[]{"=", new Object[]{"field", 2}, "joe"})));
+        assertEquals("SELECT * FROM data WHERE full_name = 'cam' LIMIT 10;",
+                cache.generateSQL(Utils.SQLTranspilerType.MY_SQL, otherFieldMap, query(new Object[]{"=", new Object[]{"field", 2}, "cam"})));
+        assertEquals("SELECT TOP 10 * FROM data WHERE name = 'cam';",
+                cache.generateSQL(Utils.SQLTranspilerType.SQL_SERVER, this.fieldMap, query(new Object[]{"=", new Object[]{"field", 2}, "cam"})));
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void test_nilClauseIsNotAMissingClause() {
+        SQLQueryCache cache = new SQLQueryCache(10);
+        Map<String, Object> nilWhere = new HashMap<>();
+        nilWhere.put(Utils.WHERE_CLAUSE, null);
+
+        assertEquals("SELECT * FROM data WHERE NULL;",
+                cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, nilWhere));
+        assertEquals("SELECT * FROM data;",
+                cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, new HashMap<>()));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void test_leastRecentlyUsedQueryIsEvicted() {
+        SQLQueryCache cache = new SQLQueryCache(2);
+        Object[] byId = new Object[]{"=", new Object[]{"field", 1}, 1};
+        Object[] byName = new Object[]{"=", new Object[]{"field", 2}, "cam"};
+        Object[] byAge = new Object[]{">", new Object[]{"field", 4}, 30};
+
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byId));
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byName));
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byId));
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byAge));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+
+        // byName was the least recently used query
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byId));
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, query(byName));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void test_changingTheQueryAfterwardsDoesNotChangeTheCache() {
+        SQLQueryCache cache = new SQLQueryCache(10);
+        Object[] value = new Object[]{"field", 2};
+        Map<String, Object> argsMap = query(new Object[]{"=", value, "cam"});
+
+        cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, argsMap);
+        value[1] = 1;
+
+        assertEquals("SELECT * FROM data WHERE id = 'cam' LIMIT 10;",
+                cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, argsMap));
+        assertEquals(2, cache.getMissCount());
+    }
+}
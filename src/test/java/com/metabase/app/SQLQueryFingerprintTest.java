@@ -0,0 +1,117 @@
+package com.metabase.app;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SQLQueryFingerprintTest {
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "date_joined");
+        put(4, "age");
+    }};
+
+    private static Map<String, Object> query(Object where, Object limit) {
+        Map<String, Object> argsMap = new HashMap<>();
+        if (where != null) {
+            argsMap.put(Utils.WHERE_CLAUSE, where);
+        }
+        if (limit != null) {
+            argsMap.put(Utils.LIMIT_CLAUSE, limit);
+        }
+        return argsMap;
+    }
+
+    private SQLQueryFingerprint shape(Object where, Object limit) {
+        return SQLQueryFingerprint.of(this.fieldMap, query(where, limit), SQLQueryFingerprint.Mode.SHAPE);
+    }
+
+    private SQLQueryFingerprint literals(Object where, Object limit) {
+        return SQLQueryFingerprint.of(this.fieldMap, query(where, limit), SQLQueryFingerprint.Mode.LITERALS);
+    }
+
+    private static Object[] equals(int field, Object... values) {
+        Object[] clause = new Object[values.length + 2];
+        clause[0] = "=";
+        clause[1] = new Object[]{"field", field};
+        System.arraycopy(values, 0, clause, 2, values.length);
+        return clause;
+    }
+
+    @Test
+    public void test_shapesLeaveLiteralsOut() {
+        assertEquals(shape(equals(2, "cam"), 10), shape(equals(2, "bob"), 20));
+        assertEquals(shape(equals(4, 35), null), shape(equals(4, "35"), null));
+        assertNotEquals(literals(equals(2, "cam"), 10), literals(equals(2, "bob"), 10));
+        assertNotEquals(literals(equals(2, "cam"), 10), literals(equals(2, "cam"), 20));
+        assertEquals(literals(equals(2, "cam"), 10), literals(equals(2, "cam"), 10));
+    }
+
+    @Test
+    public void test_structureTellsQueriesApart() {
+        SQLQueryFingerprint[] fingerprints = {
+                shape(equals(2, "cam"), null),
+                shape(equals(2, "cam"), 10),
+                shape(null, 10),
+                shape(equals(1, "cam"), null),
+                shape(equals(2, "cam", "bob"), null),
+                shape(equals(2, (Object) null), null),
+                shape(new Object[]{"!=", new Object[]{"field", 2}, "cam"}, null),
+                shape(new Object[]{"and", equals(2, "cam"), equals(1, 1), equals(4, 35)}, null),
+                shape(new Object[]{"and", equals(2, "cam"), new Object[]{"and", equals(1, 1), equals(4, 35)}}, null),
+                shape(new Object[]{"and", new Object[]{"and", equals(2, "cam"), equals(1, 1)}, equals(4, 35)}, null),
+                shape(equals(99, "cam"), null),
+                shape(null, null),
+        };
+        for (int i = 0; i < fingerprints.length; i++) {
+            for (int j = 0; j < i; j++) {
+                assertNotEquals(i + " " + j, fingerprints[i], fingerprints[j]);
+                assertNotEquals(i + " " + j, fingerprints[i].asLong(), fingerprints[j].asLong());
+            }
+        }
+    }
+
+    @Test
+    public void test_literalsAreHashedAsTheyAreWritten() {
+        assertEquals(literals(equals(4, 35), 10), literals(equals(4, 35L), (short) 10));
+        assertEquals(literals(equals(4, 0.5), null), literals(equals(4, 0.5f), null));
+        assertNotEquals(literals(equals(4, 35), null), literals(equals(4, "35"), null));
+        assertNotEquals(literals(equals(4, 35), null), literals(equals(4, 35.0), null));
+        assertNotEquals(literals(equals(2, "ab", "c"), null), literals(equals(2, "a", "bc"), null));
+    }
+
+    @Test
+    public void test_fieldsAreHashedByName() {
+        Map<Integer, String> renumbered = new HashMap<>();
+        renumbered.put(7, "name");
+        renumbered.put(8, "unused");
+        assertEquals(shape(equals(2, "cam"), null),
+                SQLQueryFingerprint.of(renumbered, query(equals(7, "cam"), null), SQLQueryFingerprint.Mode.SHAPE));
+
+        Map<Integer, String> renamed = new HashMap<>(this.fieldMap);
+        renamed.put(2, "full_name");
+        assertNotEquals(shape(equals(2, "cam"), null),
+                SQLQueryFingerprint.of(renamed, query(equals(2, "cam"), null), SQLQueryFingerprint.Mode.SHAPE));
+    }
+
+    @Test
+    public void test_fingerprintsAreStable() {
+        Object where = new Object[]{"and", equals(2, "cam"), new Object[]{">", new Object[]{"field", 4}, 35}};
+        assertEquals("000148021e7988082d68dcbb5631388d", shape(where, 10).toString());
+        assertEquals("db040f783a3c6e24efc7c4d97b3544e3", literals(where, 10).toString());
+    }
+
+    @Test
+    public void test_deepClausesAreHashedWithoutRecursion() {
+        Object clause = equals(1, 1);
+        for (int i = 0; i < 100_000; i++) {
+            clause = new Object[]{"not", clause};
+        }
+        assertEquals(shape(clause, null), shape(clause, null));
+    }
+}
@@ -0,0 +1,170 @@
+package com.metabase.app;
+
+import com.metabase.app.operators.SQLInListOptions;
+import com.metabase.app.parser.SQLParseException;
+import com.metabase.app.parser.SQLQueryParser;
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLQueryLimitsTest {
+    // Deeper than any recursion could go on the small stack
+    private static final int DEEP = 50_000;
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+    }};
+
+    /**
+     * [:and [:= [:field 1] 0] [:or [:= [:field 2] "1"] [:and ...]]] with the given number of AND and OR.
+     */
+    private static Object nested(int levels) {
+        Object clause = new Object[]{"=", new Object[]{"field", 1}, levels};
+        for (int i = levels - 1; i >= 0; i--) {
+            clause = i % 2 == 0
+                    ? new Object[]{"and", new Object[]{"=", new Object[]{"field", 1}, i}, clause}
+                    : new Object[]{"or", new Object[]{"=", new Object[]{"field", 2}, String.valueOf(i)}, clause};
+        }
+        return clause;
+    }
+
+    private static Map<String, Object> query(Object where) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        argsMap.put(Utils.LIMIT_CLAUSE, 10);
+        return argsMap;
+    }
+
+    /**
+     * Runs the test on a thread with a stack much smaller than the default one.
+     */
+    private static void onSmallStack(Runnable test) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                test.run();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    @Test
+    public void test_nestedClausesAreWrittenInOrder() {
+        assertEquals(
+                "SELECT * FROM data WHERE id = 0 AND (name = '1' OR id = 2 AND (name = '3' OR id = 4)) LIMIT 10;",
+                new SQLTranspiler(this.fieldMap, query(nested(4))).generateSQL(Utils.SQLTranspilerType.POSTGRESQL)
+        );
+    }
+
+    @Test
+    public void test_deepQueriesAreBuiltAndRenderedOnSmallStacks() throws Throwable {
+        onSmallStack(() -> {
+            SQLTranspiler transpiler = new SQLTranspiler(this.fieldMap, query(nested(DEEP)));
+            Map<Utils.SQLTranspilerType, String> shared = transpiler.generateSQL(Utils.SQLTranspilerType.values());
+            for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+                String sql = transpiler.generateSQL(type);
+                assertTrue(sql.contains("id = " + DEEP + repeat(")", DEEP / 2)));
+                assertEquals(sql, shared.get(type));
+            }
+        });
+    }
+
+    @Test
+    public void test_deepQueriesAreParsedInternedAndEditedOnSmallStacks() throws Throwable {
+        // The text of nested(DEEP)
+        StringBuilder text = new StringBuilder("{:where ");
+        for (int i = 0; i < DEEP; i++) {
+            text.append(i % 2 == 0 ? "[:and [:= [:field 1] " + i + "] " : "[:or [:= [:field 2] \"" + i + "\"] ");
+        }
+        text.append("[:= [:field 1] ").append(DEEP).append(']');
+        for (int i = 0; i < DEEP; i++) {
+            text.append(']');
+        }
+        text.append(" :limit 10}");
+
+        onSmallStack(() -> {
+            String expected = new SQLTranspiler(this.fieldMap, query(nested(DEEP))).generateSQL(Utils.SQLTranspilerType.MY_SQL);
+            SQLInterningFactory factory = new SQLInterningFactory(new SQLIdentifierTable(this.fieldMap));
+            assertEquals(expected, new SQLTranspiler(factory, query(nested(DEEP))).generateSQL(Utils.SQLTranspilerType.MY_SQL));
+            assertEquals(expected, new SQLQueryCache(4).generateSQL(Utils.SQLTranspilerType.MY_SQL, this.fieldMap, query(nested(DEEP))));
+            // Trees keep the SQL of every operator, which takes memory growing with the square of the depth
+            Object clause = nested(2_000);
+            Object edited = clause;
+            int[] path = new int[1_000];
+            for (int i = 0; i < path.length; i++) {
+                path[i] = 1;
+                edited = ((Object[]) edited)[2];
+            }
+            SQLQueryTree tree = new SQLQueryTree(this.fieldMap, query(clause)).replace(path, edited);
+            assertEquals(
+                    new SQLTranspiler(this.fieldMap, query(clause)).generateSQL(Utils.SQLTranspilerType.MY_SQL),
+                    tree.generateSQL(Utils.SQLTranspilerType.MY_SQL)
+            );
+            assertEquals(
+                    DEEP + 1,
+                    new SQLParameterizedTranspiler(this.fieldMap).generateSQL(Utils.SQLTranspilerType.MY_SQL, query(nested(DEEP)))
+                            .getParameters().length
+            );
+            assertEquals(expected, new SQLQueryParser(this.fieldMap).parse(text).generateSQL(Utils.SQLTranspilerType.MY_SQL));
+        });
+    }
+
+    @Test
+    public void test_tooDeepOrTooLargeQueriesAreRejected() {
+        SQLObjectFactory factory = new SQLObjectFactory(
+                new SQLIdentifierTable(this.fieldMap), SQLInListOptions.DEFAULT, new SQLQueryLimits(10, 100));
+        new SQLTranspiler(factory, query(nested(8)));
+        try {
+            new SQLTranspiler(factory, query(nested(10)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The query is nested more than 10 levels deep", e.getMessage());
+        }
+
+        Object[] in = new Object[101];
+        in[0] = "=";
+        in[1] = new Object[]{"field", 1};
+        for (int i = 2; i < in.length; i++) {
+            in[i] = i;
+        }
+        try {
+            new SQLTranspiler(factory, query(in));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The query has more than 100 clauses and literals", e.getMessage());
+        }
+
+        try {
+            new SQLQueryParser(factory).parse("{:where [:not [:not [:not [:not [:not [:not [:not [:not [:not [:not [:= [:field 1] 1]]]]]]]]]]]}");
+            fail();
+        } catch (SQLParseException e) {
+            assertEquals("The query is nested more than 10 levels deep at line 1, column 69", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_limitsCantBeNegative() {
+        new SQLQueryLimits(-1, 0);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            out.append(s);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.metabase.app;
+
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.variables.SQLIdentifierTable;
+import com.metabase.app.variables.SQLVariable;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SQLQueryTreeTest {
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "date_joined");
+        put(4, "age");
+        put(5, "update-at");
+    }};
+
+    /**
+     * Leaf counting how many times it has been rendered.
+     */
+    private static final class CountingLeaf implements SQLObjectTranspiler {
+        private final SQLObjectTranspiler leaf = new SQLVariable("age", false);
+        private int renders = 0;
+
+        @Override
+        public String transpileToPostgreSQL() {
+            this.renders++;
+            return this.leaf.transpileToPostgreSQL();
+        }
+    }
+
+    private static Map<String, Object> query(Object where, Object limit) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        argsMap.put(Utils.LIMIT_CLAUSE, limit);
+        return argsMap;
+    }
+
+    @Test
+    public void test_editsRenderLikeAFreshTranspiler() {
+        SQLQueryTree tree = new SQLQueryTree(this.fieldMap, query(new Object[]{"and",
+                new Object[]{"=", new Object[]{"field", 2}, "cam", "jerry"},
+                new Object[]{"or", new Object[]{">", new Object[]{"field", 4}, 25}, new Object[]{"is-empty", new Object[]{"field", 5}}},
+                new Object[]{"not", new Object[]{"=", new Object[]{"field", 1}, 1, 1}}
+        }, 10));
+
+        Object[][] edits = {
+                {new int[]{0, 2}, "sam"},
+                {new int[]{1, 0, 1}, 30},
+                {new int[]{2}, true},
+                {new int[]{1}, new Object[]{"not-empty", new Object[]{"field", 3}}},
+                {new int[]{0, 1}, null},
+                {new int[]{}, new Object[]{"=", new Object[]{"field", 1}, 7}},
+        };
+        for (Object[] edit : edits) {
+            tree.generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+            tree = tree.replace((int[]) edit[0], edit[1]);
+
+            for (SQLDialect dialect : SQLDialects.getAll()) {
+                assertEquals(tree.getTranspiler().generateSQL(dialect), tree.generateSQL(dialect));
+            }
+        }
+        assertEquals("SELECT * FROM data WHERE id = 7 LIMIT 10;", tree.generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test
+    public void test_editedTreeMatchesTheEditedQuery() {
+        Object[] edited = new Object[]{"or", new Object[]{"=", new Object[]{"field", 2}, "cam", null}, new Object[]{"<", 1, 2}};
+        SQLQueryTree tree = new SQLQueryTree(this.fieldMap, query(new Object[]{"or",
+                new Object[]{"=", new Object[]{"field", 2}, "cam"}, new Object[]{"<", 1, 2}}, 5)).replace(new int[]{0}, edited[1]);
+
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            assertEquals(new SQLTranspiler(this.fieldMap, query(edited, 5)).generateSQL(type), tree.generateSQL(type));
+        }
+    }
+
+    @Test
+    public void test_onlyTheEditedPathIsRenderedAgain() {
+        CountingLeaf leaf = new CountingLeaf();
+        SQLQueryTree tree = new SQLQueryTree(this.fieldMap, query(new Object[]{"and",
+                new Object[]{"=", new Object[]{"field", 2}, "cam"},
+                new Object[]{"not-empty", leaf}
+        }, 10));
+
+        assertEquals("SELECT * FROM data WHERE name = 'cam' AND age IS NOT NULL LIMIT 10;", tree.generateSQL(SQLDialects.POSTGRESQL));
+        tree = tree.replace(new int[]{0, 1}, "sam").withLimit(20);
+
+        assertEquals("SELECT * FROM data WHERE name = 'sam' AND age IS NOT NULL LIMIT 20;", tree.generateSQL(SQLDialects.POSTGRESQL));
+        assertEquals(1, leaf.renders);
+    }
+
+    @Test
+    public void test_previousVersionsAreKept() {
+        SQLQueryTree tree = new SQLQueryTree(this.fieldMap, query(new Object[]{"=", new Object[]{"field", 1}, 1}, 10));
+        SQLQueryTree edited = tree.replace(new int[]{1}, 2);
+
+        assertEquals("SELECT * FROM data WHERE id = 1 LIMIT 10;", tree.generateSQL(SQLDialects.MY_SQL));
+        assertEquals("SELECT * FROM data WHERE id = 2 LIMIT 10;", edited.generateSQL(SQLDialects.MY_SQL));
+    }
+
+    @Test
+    public void test_treesShareTheObjectsOfAnInterningFactory() {
+        SQLInterningFactory factory = new SQLInterningFactory(new SQLIdentifierTable(this.fieldMap));
+        Object[] edited = new Object[]{"and",
+                new Object[]{"=", new Object[]{"field", 2}, "sam"},
+                new Object[]{"not", new Object[]{"<", new Object[]{"field", 4}, 30}}};
+        SQLQueryTree tree = new SQLQueryTree(factory, query(new Object[]{"and",
+                new Object[]{"=", new Object[]{"field", 2}, "cam"},
+                new Object[]{"not", new Object[]{"<", new Object[]{"field", 4}, 30}}}, 10))
+                .replace(new int[]{0, 1}, "sam");
+        SQLTranspiler transpiler = new SQLTranspiler(factory, query(edited, 10));
+
+        assertSame(((SQLWhereClause) transpiler.getWhereClause()).getClause(),
+                ((SQLWhereClause) tree.getTranspiler().getWhereClause()).getClause());
+        for (SQLDialect dialect : SQLDialects.getAll()) {
+            assertEquals(new SQLTranspiler(this.fieldMap, query(edited, 10)).generateSQL(dialect), tree.generateSQL(dialect));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidPathIsRejected() {
+        new SQLQueryTree(this.fieldMap, query(new Object[]{"=", new Object[]{"field", 1}, 1}, 10))
+                .replace(new int[]{2}, 3);
+    }
+}
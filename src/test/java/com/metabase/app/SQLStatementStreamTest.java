@@ -0,0 +1,136 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.dialect.SQLRenderer;
+import com.metabase.app.dialect.SQLStandardDialect;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLVariable;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SQLStatementStreamTest {
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+    }};
+
+    /**
+     * Condition always true, written as nothing, which the optimizer can't see through.
+     */
+    private static final SQLObjectTranspiler ALWAYS_TRUE = new SQLObjectTranspiler() {
+        @Override
+        public String transpileToPostgreSQL() {
+            return "";
+        }
+
+        @Override
+        public String transpileToMySQL() {
+            return "";
+        }
+
+        @Override
+        public String transpileToServerSQL() {
+            return "";
+        }
+    };
+
+    private static Object[] in(int field, int count, boolean strings) {
+        Object[] in = new Object[count + 2];
+        in[0] = "=";
+        in[1] = new Object[]{"field", field};
+        for (int i = 0; i < count; i++) {
+            // Multi byte chars and surrogate pairs end up across the pieces handed to the stream
+            in[i + 2] = strings ? "café 😀 " + i : i;
+        }
+        return in;
+    }
+
+    private static SQLObjectTranspiler longIn(int count) {
+        SQLObjectTranspiler[] values = new SQLObjectTranspiler[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new SQLLongLiteral(i);
+        }
+        return new SQLEqualityOperator(SQLEqualityOperator.OperatorType.EQUALS, new SQLVariable("id", false), values);
+    }
+
+    private static String stream(SQLTranspiler transpiler, SQLDialect dialect) throws IOException {
+        StringWriter writer = new StringWriter();
+        transpiler.writeSQL(writer, dialect);
+        return writer.toString();
+    }
+
+    @Test
+    public void test_streamedStatementsAreTheRenderedOnes() throws IOException {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, new Object[]{"and", in(1, 50_000, false), new Object[]{"or", in(2, 20_000, true), in(1, 3, false)}});
+        argsMap.put(Utils.LIMIT_CLAUSE, 10);
+        SQLTranspiler transpiler = new SQLTranspiler(this.fieldMap, argsMap);
+
+        for (SQLDialect dialect : SQLDialects.getAll()) {
+            String sql = transpiler.generateSQL(dialect);
+            assertEquals(sql, stream(transpiler, dialect));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            transpiler.writeSQL(bytes, dialect);
+            assertArrayEquals(sql.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+
+            bytes.reset();
+            transpiler.writeSQL(Channels.newChannel(bytes), dialect);
+            assertArrayEquals(sql.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void test_conditionsTakenBackAreNeverStreamed() throws IOException {
+        SQLObjectTranspiler big = longIn(20_000);
+        SQLObjectTranspiler[] wheres = {
+                // The whole OR is taken back, with the parenthesis and AND written before it
+                new SQLLogicalOperator(SQLLogicalOperator.OperatorType.AND, new SQLObjectTranspiler[]{
+                        new SQLVariable("name", false),
+                        new SQLLogicalOperator(SQLLogicalOperator.OperatorType.OR, new SQLObjectTranspiler[]{big, ALWAYS_TRUE})
+                }),
+                // And the whole WHERE clause
+                new SQLLogicalOperator(SQLLogicalOperator.OperatorType.OR, new SQLObjectTranspiler[]{big, big, ALWAYS_TRUE}),
+                new SQLLogicalOperator(SQLLogicalOperator.OperatorType.AND, new SQLObjectTranspiler[]{big, ALWAYS_TRUE, big}),
+        };
+        for (SQLObjectTranspiler where : wheres) {
+            SQLTranspiler transpiler = new SQLTranspiler(where, new SQLLongLiteral(5));
+            assertEquals(transpiler.generateSQL(SQLDialects.POSTGRESQL), stream(transpiler, SQLDialects.POSTGRESQL));
+        }
+        assertEquals("SELECT * FROM data LIMIT 5;", stream(new SQLTranspiler(wheres[1], new SQLLongLiteral(5)), SQLDialects.POSTGRESQL));
+    }
+
+    @Test
+    public void test_statementsAreHandedOverInSmallPieces() {
+        SQLTranspiler transpiler = new SQLTranspiler(longIn(100_000), null);
+        String sql = transpiler.generateSQL(SQLDialects.MY_SQL);
+
+        StringBuilder streamed = new StringBuilder();
+        int[] largest = new int[1];
+        StringBuilder out = new StringBuilder();
+        transpiler.accept(new SQLRenderer((SQLStandardDialect) SQLDialects.MY_SQL, out, null, (piece, start, end) -> {
+            streamed.append(piece, start, end);
+            largest[0] = Math.max(largest[0], end - start);
+        }));
+        streamed.append(out);
+
+        assertEquals(sql, streamed.toString());
+        assertTrue(sql.length() > 500_000);
+        assertTrue(largest[0] < 10_000);
+        assertTrue(out.length() < 10_000);
+    }
+}
@@ -0,0 +1,121 @@
+package com.metabase.app;
+
+import com.metabase.app.dialect.SQLDialect;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.parser.SQLParseException;
+import com.metabase.app.parser.SQLQueryParser;
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SQLTranspileContextTest {
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "date_joined");
+        put(4, "age");
+    }};
+    private final SQLObjectFactory factory = new SQLObjectFactory(new SQLIdentifierTable(this.fieldMap));
+
+    private static final String[] QUERIES = {
+            "{:where [:and [:= [:field 2] \"cam\"] [:> [:field 4] 35]] :limit 10}",
+            "{:where [:or [:= [:field 1] 1 2 3] [:not [:is-empty [:field 3]]]]}",
+            "{:limit 5}",
+            "{:where [:!= [:field 2] \"café \\\"quoted\\\"\" nil]}",
+    };
+
+    private static Object[] nested(int depth) {
+        Object[] clause = new Object[]{"=", new Object[]{"field", 1}, depth};
+        for (int i = 0; i < depth; i++) {
+            clause = new Object[]{i % 2 == 0 ? "not" : "and", clause};
+        }
+        return clause;
+    }
+
+    @Test
+    public void test_reusedContextRendersAsFreshTranspilers() {
+        SQLQueryParser parser = new SQLQueryParser(this.factory);
+        SQLTranspileContext context = new SQLTranspileContext(parser);
+        for (int round = 0; round < 3; round++) {
+            for (String query : QUERIES) {
+                ByteBuffer utf8 = ByteBuffer.wrap(query.getBytes(StandardCharsets.UTF_8));
+                for (SQLDialect dialect : SQLDialects.getAll()) {
+                    String expected = parser.parse(query).generateSQL(dialect);
+                    assertEquals(expected, context.transpile(utf8, dialect).toString());
+                    assertEquals(0, utf8.position());
+                    assertEquals(expected, context.render(context.parse(query), dialect).toString());
+                }
+            }
+            for (int depth : new int[]{1, 40}) {
+                Map<String, Object> argsMap = new HashMap<>();
+                argsMap.put(Utils.WHERE_CLAUSE, nested(depth));
+                argsMap.put(Utils.LIMIT_CLAUSE, depth);
+                for (SQLDialect dialect : SQLDialects.getAll()) {
+                    assertEquals(new SQLTranspiler(this.factory, argsMap).generateSQL(dialect), context.generateSQL(argsMap, dialect));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_failedQueriesLeaveTheContextUsable() {
+        SQLTranspileContext context = new SQLTranspileContext(this.factory);
+        try {
+            context.parse("{:where [:and [:= [:field 2] \"cam\"] [:> [:field 4]");
+            fail();
+        } catch (SQLParseException e) {
+            // Expected
+        }
+        Map<String, Object> invalid = new HashMap<>();
+        invalid.put(Utils.WHERE_CLAUSE, new Object[]{"and", nested(30), new Object[]{"like", new Object[]{"field", 2}, "c%"}});
+        try {
+            context.build(invalid);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        assertEquals("SELECT * FROM data WHERE id = 7;",
+                context.render(context.parse("{:where [:= [:field 1] 7]}"), SQLDialects.POSTGRESQL).toString());
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, nested(20));
+        assertEquals(new SQLTranspiler(this.factory, argsMap).generateSQL(SQLDialects.MY_SQL),
+                context.generateSQL(argsMap, SQLDialects.MY_SQL));
+    }
+
+    @Test
+    public void test_queriesOfOtherFactoriesAreRenderedByTheirOwn() {
+        SQLTranspileContext context = new SQLTranspileContext(this.factory);
+        SQLTranspiler query = new SQLQueryParser(new SQLInterningFactory(new SQLIdentifierTable(this.fieldMap)))
+                .parse("{:where [:= [:field 2] \"cam\"]}");
+        assertEquals(query.generateSQL(SQLDialects.SQL_SERVER), context.render(query, SQLDialects.SQL_SERVER).toString());
+    }
+
+    @Test
+    public void test_poolLendsReleasedContexts() {
+        SQLTranspileContext.Pool pool = new SQLTranspileContext.Pool(new SQLQueryParser(this.factory), 1);
+        SQLTranspileContext first = pool.acquire();
+        SQLTranspileContext second = pool.acquire();
+        assertNotSame(first, second);
+
+        first.transpile(ByteBuffer.wrap(QUERIES[0].getBytes(StandardCharsets.UTF_8)), SQLDialects.SQLITE);
+        pool.release(first);
+        pool.release(second);
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_poolOnlyTakesItsOwnContexts() {
+        new SQLTranspileContext.Pool(this.factory).release(new SQLTranspileContext(this.factory));
+    }
+}
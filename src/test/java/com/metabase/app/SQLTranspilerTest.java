@@ -220,7 +220,91 @@ public class SQLTranspilerTest {
                         new HashMap<String, Object>() {{
                             put(Utils.WHERE_CLAUSE, new Object[]{"not", new Object[]{"=", new Object[] {"field", 5}, "I've escaped!"}});
                         }},
-                        "SELECT * FROM data WHERE NOT \"update-at\" = 'I\\\'ve escaped!';"
+                        "SELECT * FROM data WHERE NOT \"update-at\" = 'I''ve escaped!';"
+                },
+                {
+                        "Postgres + where + doubles quotes and keeps backslashes",
+                        Utils.SQLTranspilerType.POSTGRESQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{"=", new Object[] {"field", 2}, "O'Brien \"C:\\temp\""});
+                        }},
+                        "SELECT * FROM data WHERE name = 'O''Brien \"C:\\temp\"';"
+                },
+                {
+                        "MySQL + where + backslash escapes",
+                        Utils.SQLTranspilerType.MY_SQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{"=", new Object[] {"field", 2}, "O'Brien \"C:\\temp\"\n"});
+                        }},
+                        "SELECT * FROM data WHERE name = 'O\\'Brien \\\"C:\\\\temp\\\"\\n';"
+                },
+                {
+                        "MySQL + where + quoted field in comparison",
+                        Utils.SQLTranspilerType.MY_SQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{Utils.OR_OP, new Object[]{">", new Object[]{"field", 5}, 3}, new Object[]{"=", new Object[]{"field", 2}, "cam"}});
+                        }},
+                        "SELECT * FROM data WHERE `update-at` > 3 OR name = 'cam';"
+                },
+                {
+                        "Postgres + where + literal comparison folded",
+                        Utils.SQLTranspilerType.POSTGRESQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{Utils.AND_OP, new Object[]{"<", 3, 4.5}, new Object[]{"=", new Object[]{"field", 2}, "cam"}});
+                        }},
+                        "SELECT * FROM data WHERE name = 'cam';"
+                },
+                {
+                        "MySQL + where + always false operand left out of OR",
+                        Utils.SQLTranspilerType.MY_SQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{Utils.OR_OP, new Object[]{"is-empty", 5}, new Object[]{"=", new Object[]{"field", 2}, "cam"}});
+                        }},
+                        "SELECT * FROM data WHERE name = 'cam';"
+                },
+                {
+                        "SQL Server + where + always false AND",
+                        Utils.SQLTranspilerType.SQL_SERVER,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{Utils.AND_OP, new Object[]{">", 3, 4}, new Object[]{"=", new Object[]{"field", 2}, "cam"}});
+                            put(Utils.LIMIT_CLAUSE, 5);
+                        }},
+                        "SELECT TOP 5 * FROM data WHERE 1 = 0;"
+                },
+                {
+                        "Postgres + where + negated equality list with nil",
+                        Utils.SQLTranspilerType.POSTGRESQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{"not", new Object[]{"=", new Object[]{"field", 1}, null, 1}});
+                        }},
+                        "SELECT * FROM data WHERE NOT (id IS NULL OR id = 1);"
+                },
+                {
+                        "MySQL + where + negated inequality list with nil",
+                        Utils.SQLTranspilerType.MY_SQL,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{"not", new Object[]{"!=", new Object[]{"field", 4}, 2, null}});
+                        }},
+                        "SELECT * FROM data WHERE NOT (age IS NOT NULL AND age <> 2);"
+                },
+                {
+                        "SQL Server + where + negated OR inside AND",
+                        Utils.SQLTranspilerType.SQL_SERVER,
+                        fieldMap,
+                        new HashMap<String, Object>() {{
+                            put(Utils.WHERE_CLAUSE, new Object[]{Utils.AND_OP,
+                                    new Object[]{"not", new Object[]{Utils.OR_OP, new Object[]{">", new Object[]{"field", 4}, 25}, new Object[]{"=", new Object[]{"field", 2}, "Jerry"}}},
+                                    new Object[]{"not-empty", new Object[]{"field", 3}}});
+                        }},
+                        "SELECT * FROM data WHERE NOT (age > 25 OR name = 'Jerry') AND date_joined IS NOT NULL;"
                 },
         });
     }
@@ -234,4 +318,26 @@ public class SQLTranspilerTest {
         assertEquals(this.expected, result);
     }
 
+    @Test
+    public void test_generateSQLForAllDialectsInOnePass() {
+        SQLTranspiler transpiler = new SQLTranspiler(this.fieldMap, this.argsMap);
+
+        Map<Utils.SQLTranspilerType, String> results = transpiler.generateSQL(Utils.SQLTranspilerType.values());
+
+        assertEquals(this.expected, results.get(this.sqlType));
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            assertEquals(transpiler.generateSQL(type), results.get(type));
+        }
+    }
+
+    @Test
+    public void test_appendSQL() {
+        SQLTranspiler transpiler = new SQLTranspiler(this.fieldMap, this.argsMap);
+        StringBuilder out = new StringBuilder("-- previous statement\n");
+
+        transpiler.appendSQL(out, this.sqlType);
+
+        assertEquals("-- previous statement\n" + this.expected, out.toString());
+    }
+
 }
\ No newline at end of file
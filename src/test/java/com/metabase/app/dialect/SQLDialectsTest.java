@@ -0,0 +1,135 @@
+package com.metabase.app.dialect;
+
+import com.metabase.app.SQLDialectBuffers;
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.clauses.SQLLimitClause;
+import com.metabase.app.clauses.SQLWhereClause;
+import com.metabase.app.operators.SQLBinaryOperator;
+import com.metabase.app.operators.SQLEqualityOperator;
+import com.metabase.app.operators.SQLLogicalOperator;
+import com.metabase.app.operators.SQLUnaryOperator;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLDoubleLiteral;
+import com.metabase.app.variables.SQLLongLiteral;
+import com.metabase.app.variables.SQLParameter;
+import com.metabase.app.variables.SQLVariable;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLDialectsTest {
+
+    private final SQLTranspiler query = new SQLTranspiler(
+            new SQLEqualityOperator(
+                    SQLEqualityOperator.OperatorType.EQUALS,
+                    new SQLVariable("first name", false),
+                    new SQLObjectTranspiler[]{new SQLVariable("Jerry's", true)}
+            ),
+            new SQLLongLiteral(10)
+    );
+
+    @Test
+    public void test_dialectsAreFoundByName() {
+        assertSame(SQLDialects.POSTGRESQL, SQLDialects.get("postgresql"));
+        assertSame(SQLDialects.SQL_SERVER, SQLDialects.get("SQLServer"));
+        assertSame(SQLDialects.DUCKDB, SQLDialects.get("duckdb"));
+        assertSame(SQLDialects.MY_SQL, SQLDialects.of(Utils.SQLTranspilerType.MY_SQL));
+        assertEquals(Utils.SQLTranspilerType.SQL_SERVER, SQLDialects.typeOf(SQLDialects.SQL_SERVER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknownDialectIsRejected() {
+        SQLDialects.get("oracle");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_dialectNamesAreUnique() {
+        SQLDialects.register(new SQLiteDialect());
+    }
+
+    @Test
+    public void test_newDialectsRenderStandardSQL() {
+        String expected = "SELECT * FROM data WHERE \"first name\" = 'Jerry''s' LIMIT 10;";
+
+        assertEquals(expected, this.query.generateSQL(SQLDialects.SQLITE));
+        assertEquals(expected, this.query.generateSQL(SQLDialects.DUCKDB));
+        assertEquals("NOT TRUE", SQLBooleanLiteral.FALSE.generateSQL(SQLDialects.SQLITE));
+    }
+
+    @Test
+    public void test_singleWalkMatchesSingleDialectRendering() {
+        Map<SQLDialect, String> statements = this.query.generateSQL(SQLDialects.getAll().toArray(new SQLDialect[0]));
+
+        statements.forEach((dialect, sql) -> assertEquals(this.query.generateSQL(dialect), sql));
+        assertEquals(
+                "SELECT TOP 10 * FROM data WHERE \"first name\" = 'Jerry''s';",
+                statements.get(SQLDialects.SQL_SERVER)
+        );
+    }
+
+    @Test
+    public void test_objectsRenderingNothingThemselvesAreRejected() {
+        SQLObjectTranspiler postgreSQLOnly = new SQLObjectTranspiler() {
+            @Override
+            public String transpileToPostgreSQL() {
+                return "1";
+            }
+        };
+
+        assertEquals("1", postgreSQLOnly.generateSQL(SQLDialects.POSTGRESQL));
+        for (SQLDialect dialect : new SQLDialect[]{SQLDialects.MY_SQL, SQLDialects.SQL_SERVER, SQLDialects.SQLITE}) {
+            try {
+                postgreSQLOnly.generateSQL(dialect);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith(postgreSQLOnly.getClass().getName()));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_buffersNeedADialect() {
+        new SQLDialectBuffers(new SQLDialect[0]);
+    }
+
+    @Test
+    public void test_customRenderersWalkTheTreeOnTheirOwn() {
+        SQLDialect fields = new SQLDialect() {
+            @Override
+            public String getName() {
+                return "fields";
+            }
+
+            @Override
+            public SQLNodeVisitor newRenderer(StringBuilder out) {
+                return new SQLNodeVisitor() {
+                    @Override public void visitSelect(SQLTranspiler query) { query.getWhereClause().accept(this); }
+                    @Override public void visitWhere(SQLWhereClause where) { where.getClause().accept(this); }
+                    @Override public void visitLimit(SQLLimitClause limit) {}
+                    @Override public void visitLogical(SQLLogicalOperator operator) {}
+                    @Override public void visitUnary(SQLUnaryOperator operator) {}
+                    @Override public void visitBinary(SQLBinaryOperator operator) {}
+                    @Override public void visitEquality(SQLEqualityOperator operator) { operator.getMainOperand().accept(this); }
+                    @Override public void visitVariable(SQLVariable variable) { out.append(variable.getVariable()); }
+                    @Override public void visitLong(SQLLongLiteral literal) {}
+                    @Override public void visitDouble(SQLDoubleLiteral literal) {}
+                    @Override public void visitBoolean(SQLBooleanLiteral literal) {}
+                    @Override public void visitParameter(SQLParameter parameter) {}
+                    @Override public void visitOther(SQLObjectTranspiler object) {}
+                };
+            }
+        };
+
+        Map<SQLDialect, String> statements = this.query.generateSQL(fields, SQLDialects.MY_SQL);
+
+        assertEquals("first name", statements.get(fields));
+        assertEquals("SELECT * FROM data WHERE `first name` = 'Jerry\\'s' LIMIT 10;", statements.get(SQLDialects.MY_SQL));
+    }
+}
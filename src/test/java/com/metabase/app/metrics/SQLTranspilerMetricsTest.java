@@ -0,0 +1,125 @@
+package com.metabase.app.metrics;
+
+import com.metabase.app.SQLQueryCache;
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.dialect.SQLDialects;
+import com.metabase.app.metrics.SQLTranspilerListener.Phase;
+import com.metabase.app.parser.SQLQueryParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SQLTranspilerMetricsTest {
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+    }};
+
+    // [:and [:= [:field 1] 1 2] [:not-empty [:field 2]]] and :limit 10
+    private final Map<String, Object> argsMap = new HashMap<String, Object>() {{
+        put("where", new Object[]{"and",
+                new Object[]{"=", new Object[]{"field", 1}, 1, 2},
+                new Object[]{"not-empty", new Object[]{"field", 2}}});
+        put("limit", 10);
+    }};
+
+    private final SQLTranspilerMetrics metrics = new SQLTranspilerMetrics();
+
+    @Before
+    public void setUp() {
+        SQLInstrumentation.setListener(this.metrics);
+    }
+
+    @After
+    public void tearDown() {
+        SQLInstrumentation.setListener(null);
+    }
+
+    @Test
+    public void test_phasesAreTimedPerDialect() {
+        SQLTranspiler query = new SQLTranspiler(this.fieldMap, this.argsMap);
+        query.generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+        query.generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+        query.generateSQL(SQLDialects.DUCKDB);
+
+        assertEquals(1, this.metrics.getLatency(Phase.BUILD, null).getCount());
+        assertEquals(1, this.metrics.getLatency(Phase.OPTIMIZE, null).getCount());
+        assertEquals(2, this.metrics.getLatency(Phase.RENDER, SQLDialects.POSTGRESQL).getCount());
+        assertEquals(1, this.metrics.getLatency(Phase.RENDER, SQLDialects.DUCKDB).getCount());
+        assertEquals(0, this.metrics.getLatency(Phase.RENDER, SQLDialects.MY_SQL).getCount());
+    }
+
+    @Test
+    public void test_treeAndOutputSizesAreRecorded() {
+        SQLTranspiler query = new SQLTranspiler(this.fieldMap, this.argsMap);
+        String sql = query.generateSQL(Utils.SQLTranspilerType.MY_SQL);
+
+        // SELECT, WHERE, AND, IN, id, 1, 2, IS NOT NULL, name, LIMIT, 10
+        assertEquals(11, this.metrics.getNodeCounts().getMax());
+        assertEquals(5, this.metrics.getDepths().getMax());
+        assertEquals(sql.length(), this.metrics.getOutputSize(SQLDialects.MY_SQL).getMax());
+    }
+
+    @Test
+    public void test_singleWalkReportsEveryDialect() {
+        Map<Utils.SQLTranspilerType, String> statements = new SQLTranspiler(this.fieldMap, this.argsMap)
+                .generateSQL(Utils.SQLTranspilerType.values());
+
+        assertEquals(1, this.metrics.getLatency(Phase.RENDER, null).getCount());
+        statements.forEach((type, sql) ->
+                assertEquals(sql.length(), this.metrics.getOutputSize(SQLDialects.of(type)).getMax()));
+    }
+
+    @Test
+    public void test_parsingIsTimed() {
+        new SQLQueryParser(this.fieldMap).parse("{:where [:= [:field 1] 1] :limit 10}");
+
+        assertEquals(1, this.metrics.getLatency(Phase.PARSE, null).getCount());
+        assertEquals(0, this.metrics.getLatency(Phase.BUILD, null).getCount());
+        assertEquals(1, this.metrics.getLatency(Phase.OPTIMIZE, null).getCount());
+    }
+
+    @Test
+    public void test_cacheLookupsAreCounted() {
+        SQLQueryCache cache = new SQLQueryCache(10);
+        for (int i = 0; i < 4; i++) {
+            cache.generateSQL(Utils.SQLTranspilerType.POSTGRESQL, this.fieldMap, this.argsMap);
+        }
+
+        assertEquals(3, this.metrics.getCacheHits(SQLTranspilerListener.QUERY_CACHE, SQLDialects.POSTGRESQL));
+        assertEquals(1, this.metrics.getCacheMisses(SQLTranspilerListener.QUERY_CACHE, SQLDialects.POSTGRESQL));
+        assertEquals(0.75, this.metrics.getCacheHitRate(SQLTranspilerListener.QUERY_CACHE), 0);
+        assertEquals(0, this.metrics.getCacheHitRate(SQLTranspilerListener.TEMPLATE_CACHE), 0);
+    }
+
+    @Test
+    public void test_nothingIsReportedWhenDisabled() {
+        SQLInstrumentation.setListener(null);
+        new SQLTranspiler(this.fieldMap, this.argsMap).generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+
+        assertEquals(0, this.metrics.getLatency(Phase.RENDER, SQLDialects.POSTGRESQL).getCount());
+        assertEquals(0, this.metrics.getNodeCounts().getCount());
+    }
+
+    @Test
+    public void test_histogramPercentilesAreWithinABucket() {
+        SQLHistogram histogram = new SQLHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertTrue(histogram.getPercentile(0) <= 1);
+    }
+}
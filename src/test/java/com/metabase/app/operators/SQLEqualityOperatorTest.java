@@ -0,0 +1,126 @@
+package com.metabase.app.operators;
+
+import com.metabase.app.SQLDialectBuffers;
+import com.metabase.app.SQLObjectFactory;
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLIdentifierTable;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class SQLEqualityOperatorTest {
+
+    private static final SQLIdentifierTable FIELDS = new SQLIdentifierTable(new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+    }});
+
+    @Test
+    public void test_duplicatedLiteralsAreLeftOut() {
+        SQLObjectTranspiler in = in(SQLInListOptions.DEFAULT, "=", 1, 3, 1, 2, 3, 2.0, 2.0, "a", "a");
+
+        assertEquals("id IN (1, 3, 2, 2.0, 'a')", in.optimize().generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("id = 1", in(SQLInListOptions.DEFAULT, "=", 1, 1).optimize().generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test
+    public void test_listIsSortedWhenAsked() {
+        SQLObjectTranspiler in = in(new SQLInListOptions(true, 0, 0), "=", "b", 30, "a", 2.5, 4, 30);
+
+        assertEquals("id IN (4, 30, 2.5, 'a', 'b')", in.optimize().generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test
+    public void test_longListsAreSplitIntoChunks() {
+        SQLInListOptions options = new SQLInListOptions(false, 2, 0);
+
+        assertEquals("(id IN (1, 2) OR id IN (3, 4) OR id IN (5))",
+                in(options, "=", 1, 2, 3, 4, 5).optimize().generateSQL(Utils.SQLTranspilerType.MY_SQL));
+        assertEquals("(id NOT IN (1, 2) AND id NOT IN (3))",
+                in(options, "!=", 1, 2, 3).optimize().generateSQL(Utils.SQLTranspilerType.MY_SQL));
+        assertEquals("id IN (1, 2)",
+                in(options, "=", 1, 2).optimize().generateSQL(Utils.SQLTranspilerType.MY_SQL));
+    }
+
+    @Test
+    public void test_longListsBecomeValuesTables() {
+        SQLObjectTranspiler in = in(new SQLInListOptions(false, 2, 2), "=", 1, 2, 3).optimize();
+
+        assertEquals("id IN (VALUES (1), (2), (3))", in.generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("id IN (SELECT v FROM (VALUES (1), (2), (3)) AS t(v))", in.generateSQL(Utils.SQLTranspilerType.SQL_SERVER));
+        assertEquals("(id IN (1, 2) OR id IN (3))", in.generateSQL(Utils.SQLTranspilerType.MY_SQL));
+    }
+
+    @Test
+    public void test_allDialectsMatchSingleDialectRendering() {
+        SQLObjectTranspiler in = in(new SQLInListOptions(true, 2, 3), "!=", 4, 1, 3, 1, 2).optimize();
+        SQLDialectBuffers out = new SQLDialectBuffers(Utils.SQLTranspilerType.values());
+        in.appendSQL(out);
+
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals(in.generateSQL(out.getType(i)), out.get(i).toString());
+        }
+    }
+
+    private static SQLObjectTranspiler in(SQLInListOptions options, String op, Object... values) {
+        SQLObjectFactory factory = new SQLObjectFactory(FIELDS, options);
+        SQLObjectTranspiler[] operands = new SQLObjectTranspiler[values.length + 1];
+        operands[0] = factory.field(1);
+        for (int i = 0; i < values.length; i++) {
+            operands[i + 1] = factory.literal(values[i]);
+        }
+        return factory.operator(op, operands);
+    }
+
+    @Test
+    public void test_literalListsAreFolded() {
+        assertEquals(SQLBooleanLiteral.TRUE, equality("=", 5, 1, 5.0, "a").optimize());
+        assertEquals(SQLBooleanLiteral.FALSE, equality("=", 5, 1, 2, "5").optimize());
+        assertEquals(SQLBooleanLiteral.FALSE, equality("!=", "a", "b", "a").optimize());
+        assertEquals(SQLBooleanLiteral.TRUE, equality("!=", "a", "b", "c").optimize());
+    }
+
+    @Test
+    public void test_literalComparedWithFieldsKeepsOnlyTheFields() {
+        SQLObjectFactory factory = new SQLObjectFactory(FIELDS);
+
+        assertEquals(SQLBooleanLiteral.TRUE, equality("=", 5, factory.field(1), 5).optimize());
+        assertEquals("5 = id", equality("=", 5, 6, factory.field(1), 7).optimize().generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("5 NOT IN (id, name)", equality("!=", 5, factory.field(1), 6, factory.field(2)).optimize()
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test
+    public void test_nilMeansNull() {
+        SQLObjectFactory factory = new SQLObjectFactory(FIELDS);
+
+        assertEquals("id IS NULL", in(SQLInListOptions.DEFAULT, "=", (Object) null).optimize()
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("id IS NULL OR id IN (1, 2)", in(SQLInListOptions.DEFAULT, "=", 1, null, 2).optimize()
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("id IS NOT NULL AND id <> 1", in(SQLInListOptions.DEFAULT, "!=", null, 1).optimize()
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("id IS NULL OR name IS NULL", equality("=", null, factory.field(1), factory.field(2)).optimize()
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals(SQLBooleanLiteral.TRUE, equality("=", null, null).optimize());
+        assertEquals(SQLBooleanLiteral.TRUE, equality("!=", null, 0).optimize());
+    }
+
+    /**
+     * Builds an equality whose operands are either already built objects or literal values.
+     */
+    private static SQLObjectTranspiler equality(String op, Object... operands) {
+        SQLObjectFactory factory = new SQLObjectFactory(FIELDS);
+        SQLObjectTranspiler[] objects = new SQLObjectTranspiler[operands.length];
+        for (int i = 0; i < operands.length; i++) {
+            objects[i] = operands[i] instanceof SQLObjectTranspiler
+                    ? (SQLObjectTranspiler) operands[i]
+                    : factory.literal(operands[i]);
+        }
+        return factory.operator(op, objects);
+    }
+}
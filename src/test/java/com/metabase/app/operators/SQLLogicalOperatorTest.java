@@ -0,0 +1,117 @@
+package com.metabase.app.operators;
+
+import com.metabase.app.SQLDialectBuffers;
+import com.metabase.app.SQLObjectTranspiler;
+import com.metabase.app.Utils;
+import com.metabase.app.variables.SQLBooleanLiteral;
+import com.metabase.app.variables.SQLVariable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SQLLogicalOperatorTest {
+
+    private static final int NESTING_DEPTH = 30;
+
+    /**
+     * Leaf node that counts how many times it has been rendered.
+     */
+    private static final class CountingLeaf implements SQLObjectTranspiler {
+        private final SQLObjectTranspiler leaf;
+        private int renders = 0;
+
+        CountingLeaf(SQLObjectTranspiler leaf) {
+            this.leaf = leaf;
+        }
+
+        @Override
+        public String transpileToPostgreSQL() {
+            this.renders++;
+            return this.leaf.transpileToPostgreSQL();
+        }
+
+        @Override
+        public String transpileToMySQL() {
+            this.renders++;
+            return this.leaf.transpileToMySQL();
+        }
+
+        @Override
+        public String transpileToServerSQL() {
+            this.renders++;
+            return this.leaf.transpileToServerSQL();
+        }
+    }
+
+    /**
+     * Builds [:and [:or [:and [:or ... leaf leaf] leaf] leaf] leaf] with the given number of levels,
+     * which is the shape our dashboard builder produces.
+     */
+    private static SQLObjectTranspiler buildNestedFilter(int depth, List<CountingLeaf> leaves) {
+        CountingLeaf innermost = new CountingLeaf(new SQLVariable("id", false));
+        leaves.add(innermost);
+        SQLObjectTranspiler node = innermost;
+
+        for (int level = 0; level < depth; level++) {
+            CountingLeaf sibling = new CountingLeaf(new SQLVariable("name", false));
+            leaves.add(sibling);
+            node = new SQLLogicalOperator(
+                    SQLLogicalOperator.StringToSQLLogicalOperatorType(level % 2 == 0 ? Utils.OR_OP : Utils.AND_OP),
+                    new SQLObjectTranspiler[]{node, sibling}
+            );
+        }
+        return node;
+    }
+
+    @Test
+    public void test_nestedFilterRendersEachLeafOncePerDialect() {
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            List<CountingLeaf> leaves = new ArrayList<>();
+            SQLObjectTranspiler filter = buildNestedFilter(NESTING_DEPTH, leaves);
+
+            filter.generateSQL(type);
+
+            for (CountingLeaf leaf : leaves) {
+                assertEquals("Leaf rendered more than once for " + type, 1, leaf.renders);
+            }
+        }
+    }
+
+    @Test
+    public void test_nestedFilterWrapsOrInsideAnd() {
+        List<CountingLeaf> leaves = new ArrayList<>();
+        SQLObjectTranspiler filter = buildNestedFilter(3, leaves);
+
+        assertEquals("(id OR name) AND name OR name", filter.generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test
+    public void test_allDialectsDropAlwaysTrueOperandsLikeSingleDialectRendering() {
+        SQLObjectTranspiler field = new SQLVariable("update-at", false);
+        SQLObjectTranspiler[] filters = new SQLObjectTranspiler[]{
+                and(or(field, SQLBooleanLiteral.TRUE), field),
+                and(SQLBooleanLiteral.TRUE, or(field, field), SQLBooleanLiteral.TRUE),
+                or(and(field, SQLBooleanLiteral.TRUE), SQLBooleanLiteral.TRUE),
+        };
+
+        for (SQLObjectTranspiler filter : filters) {
+            SQLDialectBuffers out = new SQLDialectBuffers(Utils.SQLTranspilerType.values());
+            filter.appendSQL(out);
+
+            for (int i = 0; i < out.size(); i++) {
+                assertEquals(filter.generateSQL(out.getType(i)), out.get(i).toString());
+            }
+        }
+    }
+
+    private static SQLObjectTranspiler and(SQLObjectTranspiler... operands) {
+        return new SQLLogicalOperator(SQLLogicalOperator.StringToSQLLogicalOperatorType(Utils.AND_OP), operands);
+    }
+
+    private static SQLObjectTranspiler or(SQLObjectTranspiler... operands) {
+        return new SQLLogicalOperator(SQLLogicalOperator.StringToSQLLogicalOperatorType(Utils.OR_OP), operands);
+    }
+}
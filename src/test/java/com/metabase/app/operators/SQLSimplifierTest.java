@@ -0,0 +1,92 @@
+package com.metabase.app.operators;
+
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SQLSimplifierTest {
+
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(4, "age");
+    }};
+
+    private String postgreSQL(Object where) {
+        Map<String, Object> argsMap = new HashMap<>();
+        argsMap.put(Utils.WHERE_CLAUSE, where);
+        return new SQLTranspiler(this.fieldMap, argsMap).generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+    }
+
+    private static Object[] field(int id) {
+        return new Object[]{"field", id};
+    }
+
+    @Test
+    public void test_nestedOperatorsAreFlattenedAndDuplicatesLeftOut() {
+        assertEquals(
+                "SELECT * FROM data WHERE id = 1 AND name = 'cam';",
+                postgreSQL(new Object[]{"and",
+                        new Object[]{"=", field(1), 1},
+                        new Object[]{"and", new Object[]{"=", field(2), "cam"}, new Object[]{"=", field(1), 1}}
+                })
+        );
+    }
+
+    @Test
+    public void test_equalitiesOfAnOrAreMergedIntoIn() {
+        assertEquals(
+                "SELECT * FROM data WHERE id IN (1, 2, 3) OR name = 'cam';",
+                postgreSQL(new Object[]{"or",
+                        new Object[]{"=", field(1), 1},
+                        new Object[]{"=", field(2), "cam"},
+                        new Object[]{"=", field(1), 2, 3}
+                })
+        );
+        assertEquals(
+                "SELECT * FROM data WHERE id NOT IN (1, 2);",
+                postgreSQL(new Object[]{"and", new Object[]{"!=", field(1), 1}, new Object[]{"!=", field(1), 2}})
+        );
+    }
+
+    @Test
+    public void test_onlyTheTightestBoundsAreKept() {
+        assertEquals(
+                "SELECT * FROM data WHERE age > 18 AND age < 65;",
+                postgreSQL(new Object[]{"and",
+                        new Object[]{">", field(4), 10},
+                        new Object[]{">", field(4), 18},
+                        new Object[]{"<", field(4), 65},
+                        new Object[]{">", 80, field(4)}
+                })
+        );
+    }
+
+    @Test
+    public void test_contradictionsMakeTheWhereClauseFalse() {
+        assertEquals(
+                "SELECT * FROM data WHERE NOT TRUE;",
+                postgreSQL(new Object[]{"and", new Object[]{"<", field(4), 5}, new Object[]{">", field(4), 10}})
+        );
+        assertEquals(
+                "SELECT * FROM data WHERE name = 'cam';",
+                postgreSQL(new Object[]{"or",
+                        new Object[]{"and", new Object[]{"=", field(4), 1, 30}, new Object[]{">", field(4), 5}, new Object[]{"<", field(4), 10}},
+                        new Object[]{"=", field(2), "cam"}
+                })
+        );
+    }
+
+    @Test
+    public void test_contradictionsUnderNotAreKept() {
+        // NOT (NULL) is NULL rather than true, so the AND can't be folded into false there
+        String sql = postgreSQL(new Object[]{"not", new Object[]{"and", new Object[]{"<", field(4), 5}, new Object[]{">", field(4), 10}}});
+        assertTrue(sql, sql.contains("age < 5 AND age > 10"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.metabase.app.parser;
+
+import com.metabase.app.SQLTranspiler;
+import com.metabase.app.Utils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SQLQueryParserTest {
+
+    private static final Map<Integer, String> FIELD_MAP = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+        put(3, "date_joined");
+        put(4, "age");
+    }};
+
+    private final SQLQueryParser parser = new SQLQueryParser(FIELD_MAP);
+
+    @Test
+    public void test_parsesTheSameQueriesAsTheObjectDsl() {
+        assertEquals("SELECT * FROM data WHERE date_joined IS NULL;",
+                this.postgres("{:where [:is-empty [:field 3]]}"));
+        assertEquals("SELECT * FROM data WHERE id < 5 AND name = 'joe';",
+                this.postgres("{:where [:and [:< [:field 1] 5] [:= [:field 2] \"joe\"]]}"));
+        assertEquals("SELECT * FROM data WHERE name IN ('cam', 'jen') LIMIT 10;",
+                this.postgres("{:where [:= [:field 2] \"cam\" \"jen\"] :limit 10}"));
+        assertEquals("SELECT * FROM data LIMIT 20;", this.postgres("{:limit 20}"));
+        assertEquals("SELECT * FROM data;", this.postgres("{}"));
+    }
+
+    @Test
+    public void test_commasAndCommentsAreWhitespace() {
+        String query = "; active users\n{:where [:> [:field 4], 35], ; adults only\n :limit 5}\n";
+
+        assertEquals("SELECT * FROM data WHERE age > 35 LIMIT 5;", this.postgres(query));
+    }
+
+    @Test
+    public void test_parsesLiterals() {
+        assertEquals("SELECT * FROM data WHERE age = 4000000000;",
+                this.postgres("{:where [:= [:field 4] 4000000000]}"));
+        assertEquals("SELECT * FROM data WHERE age < -2.5;",
+                this.postgres("{:where [:< [:field 4] -2.5]}"));
+        assertEquals("SELECT * FROM data WHERE name = 'say \"hi\"\n';",
+                this.postgres("{:where [:= [:field 2] \"say \\\"hi\\\"\\n\"]}"));
+        assertEquals("SELECT * FROM data WHERE name IS NULL;",
+                this.postgres("{:where [:= [:field 2] nil]}"));
+    }
+
+    @Test
+    public void test_readerAndBytesGiveTheSameResult() throws IOException {
+        StringBuilder query = new StringBuilder("{:where [:= [:field 2]");
+        for (int i = 0; i < 2000; i++) {
+            query.append(" \"ñame-").append(i).append('"');
+        }
+        query.append("]}");
+
+        String expected = this.postgres(query.toString());
+        ByteBuffer bytes = ByteBuffer.wrap(query.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(expected, this.parser.parse(new StringReader(query.toString()))
+                .generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals(expected, this.parser.parse(bytes).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals(0, bytes.position());
+    }
+
+    @Test
+    public void test_errorsReportTheirPosition() {
+        this.assertError("{:where [:= [:field 2] \"joe]}", 1, 24);
+        this.assertError("{:where [:between [:field 4] 1]}", 1, 9);
+        this.assertError("{:where\n  [:= [:field 9] 1]}", 2, 7);
+        this.assertError("{:where [:= [:field 2] 1}", 1, 25);
+        this.assertError("{:order 1}", 1, 2);
+        this.assertError("{:limit 1} 2", 1, 12);
+        this.assertError("{:where [:= [:field 2] joe]}", 1, 24);
+    }
+
+    @Test
+    public void test_invalidUtf8IsReported() {
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[]{'{', ':', 'l', 'i', 'm', 'i', 't', ' ', (byte) 0xC3, '}'});
+        try {
+            this.parser.parse(bytes);
+            fail("Expected a parse error");
+        } catch (SQLParseException e) {
+            assertEquals(1, e.getLine());
+        }
+    }
+
+    private String postgres(String query) {
+        SQLTranspiler transpiler = this.parser.parse(query);
+        return transpiler.generateSQL(Utils.SQLTranspilerType.POSTGRESQL);
+    }
+
+    private void assertError(String query, int line, int column) {
+        try {
+            this.parser.parse(query);
+            fail("Expected a parse error for " + query);
+        } catch (SQLParseException e) {
+            assertEquals(e.getMessage(), line, e.getLine());
+            assertEquals(e.getMessage(), column, e.getColumn());
+        }
+    }
+}
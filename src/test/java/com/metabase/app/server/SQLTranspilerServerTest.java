@@ -0,0 +1,121 @@
+package com.metabase.app.server;
+
+import com.metabase.app.parser.SQLQueryParser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SQLTranspilerServerTest {
+    private final Map<Integer, String> fieldMap = new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "name");
+    }};
+
+    private SQLTranspilerServer server;
+
+    private int start(SQLTranspilerServer.Protocol protocol) throws IOException {
+        this.server = new SQLTranspilerServer(new SQLQueryParser(this.fieldMap), protocol, 2);
+        this.server.start(new InetSocketAddress("localhost", 0));
+        return this.server.getPort();
+    }
+
+    @After
+    public void close() throws IOException {
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    /**
+     * Sends the requests at once, then reads until the server closes the connection.
+     */
+    private static String exchange(int port, String requests) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream answers = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                answers.write(buffer, 0, read);
+            }
+            return new String(answers.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void test_pipelinedLinesAreAnsweredInOrder() throws IOException {
+        int port = start(SQLTranspilerServer.Protocol.LINE);
+        assertEquals(
+                "+SELECT * FROM data WHERE name = 'cam' LIMIT 10;\n"
+                        + "-Unknown dialect oracle\n"
+                        + "+SELECT TOP 5 * FROM data WHERE id > 35;\n"
+                        + "-Expected a dialect and a query\n"
+                        + "+SELECT * FROM data WHERE name = 'caf\u00e9\\\\\\\\';\n",
+                exchange(port, "postgresql {:where [:= [:field 2] \"cam\"] :limit 10}\n"
+                        + "oracle {:where [:= [:field 2] \"cam\"]}\r\n"
+                        + "sqlserver {:where [:> [:field 1] 35] :limit 5}\n"
+                        + "\n"
+                        + "mysql\n"
+                        + "mysql {:where [:= [:field 2] \"caf\u00e9\\\\\"]}\n")
+        );
+    }
+
+    @Test
+    public void test_invalidQueriesAreAnsweredWithTheirPosition() throws IOException {
+        int port = start(SQLTranspilerServer.Protocol.LINE);
+        String answer = exchange(port, "postgresql {:where [:= [:field 2] \"cam\"\n");
+        assertEquals('-', answer.charAt(0));
+        assertTrue(answer.contains(" at line 1, column "));
+    }
+
+    @Test
+    public void test_pipelinedHttpRequestsAreAnsweredInOrder() throws IOException {
+        int port = start(SQLTranspilerServer.Protocol.HTTP);
+        String valid = "{:where [:= [:field 1] 7]}";
+        String answers = exchange(port, "POST /postgresql HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + valid.length() + "\r\n\r\n" + valid
+                + "POST /duckdb HTTP/1.1\r\nContent-Length: 9\r\n\r\n{:where ]"
+                + "GET /mysql HTTP/1.1\r\n\r\n"
+                + "POST /mysql HTTP/1.1\r\nConnection: close\r\nContent-Length: " + valid.length() + "\r\n\r\n" + valid
+                + "POST /mysql HTTP/1.1\r\nContent-Length: " + valid.length() + "\r\n\r\n" + valid);
+        String[] responses = answers.split("(?=HTTP/1\\.1 )");
+        assertEquals(4, responses.length);
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: 32\r\n\r\n"
+                + "SELECT * FROM data WHERE id = 7;", responses[0]);
+        assertTrue(responses[1].startsWith("HTTP/1.1 400 Bad Request\r\n"));
+        assertTrue(responses[2].startsWith("HTTP/1.1 405 Method Not Allowed\r\n"));
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: 32\r\nConnection: close\r\n\r\n"
+                + "SELECT * FROM data WHERE id = 7;", responses[3]);
+    }
+
+    @Test
+    public void test_loadGeneratorCountsEveryAnswer() throws Exception {
+        int port = start(SQLTranspilerServer.Protocol.HTTP);
+        SQLLoadGenerator generator = new SQLLoadGenerator(
+                "localhost", port, SQLTranspilerServer.Protocol.HTTP, "sqlite", "{:where [:= [:field 2] \"cam\"] :limit 1}", 8);
+        generator.run(2, 200);
+        assertEquals(0, generator.getAnswers() % 8);
+        assertTrue(generator.getAnswers() > 0);
+        assertEquals(0, generator.getErrors());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_serverNeedsAnEventLoop() {
+        new SQLTranspilerServer(new SQLQueryParser(this.fieldMap), SQLTranspilerServer.Protocol.LINE, 0);
+    }
+}
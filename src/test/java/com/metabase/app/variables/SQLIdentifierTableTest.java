@@ -0,0 +1,69 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.Utils;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SQLIdentifierTableTest {
+
+    private final SQLIdentifierTable fields = new SQLIdentifierTable(new HashMap<Integer, String>() {{
+        put(1, "id");
+        put(2, "update-at");
+        put(3, "first name");
+        put(4, "a|b");
+    }});
+
+    @Test
+    public void test_plainFieldNamesAreNotQuoted() {
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            assertEquals("id", this.fields.getField(1).generateSQL(type));
+        }
+    }
+
+    @Test
+    public void test_fieldNamesAreQuotedPerDialect() {
+        Map<Utils.SQLTranspilerType, String> quotes = new HashMap<Utils.SQLTranspilerType, String>() {{
+            put(Utils.SQLTranspilerType.POSTGRESQL, "\"");
+            put(Utils.SQLTranspilerType.MY_SQL, "`");
+            put(Utils.SQLTranspilerType.SQL_SERVER, "\"");
+        }};
+
+        quotes.forEach((type, quote) -> {
+            assertEquals(quote + "update-at" + quote, this.fields.getField(2).generateSQL(type));
+            assertEquals(quote + "first name" + quote, this.fields.getField(3).generateSQL(type));
+            assertEquals(quote + "a|b" + quote, this.fields.getField(4).generateSQL(type));
+        });
+    }
+
+    @Test
+    public void test_fieldsAreResolvedOnce() {
+        assertSame(this.fields.getField(2), this.fields.getField(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknownFieldIsRejected() {
+        this.fields.getField(42);
+    }
+
+    @Test
+    public void test_sparseFieldIdsAreFound() {
+        SQLIdentifierTable sparse = new SQLIdentifierTable(
+                new int[]{1_000_000, -3, 7},
+                new String[]{"created_at", "id", "name"}
+        );
+
+        assertEquals("id", sparse.getField(-3).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("name", sparse.getField(7).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+        assertEquals("created_at", sparse.getField(1_000_000).generateSQL(Utils.SQLTranspilerType.POSTGRESQL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknownSparseFieldIsRejected() {
+        new SQLIdentifierTable(new int[]{1_000_000}, new String[]{"id"}).getField(999_999);
+    }
+}
@@ -0,0 +1,43 @@
+package com.metabase.app.variables;
+
+import com.metabase.app.SQLDialectBuffers;
+import com.metabase.app.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SQLNumberLiteralTest {
+
+    @Test
+    public void test_numbersRenderLikeTheirBoxedValues() {
+        for (Utils.SQLTranspilerType type : Utils.SQLTranspilerType.values()) {
+            assertEquals("-42", new SQLLongLiteral(-42).generateSQL(type));
+            assertEquals(String.valueOf(Long.MAX_VALUE), new SQLLongLiteral(Long.MAX_VALUE).generateSQL(type));
+            assertEquals("2.5", new SQLDoubleLiteral(2.5).generateSQL(type));
+            assertEquals("1.0E20", new SQLDoubleLiteral(1e20).generateSQL(type));
+        }
+    }
+
+    @Test
+    public void test_numbersAreCopiedToEveryDialectBuffer() {
+        SQLDialectBuffers out = new SQLDialectBuffers(Utils.SQLTranspilerType.values());
+        out.append("x = ");
+        new SQLLongLiteral(123456789L).appendSQL(out);
+        out.append(" OR y = ");
+        new SQLDoubleLiteral(0.125).appendSQL(out);
+
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals("x = 123456789 OR y = 0.125", out.get(i).toString());
+        }
+    }
+
+    @Test
+    public void test_integralNumbersCompareExactly() {
+        SQLNumberLiteral big = new SQLLongLiteral(Long.MAX_VALUE);
+        SQLNumberLiteral bigMinusOne = new SQLLongLiteral(Long.MAX_VALUE - 1);
+
+        assertTrue(bigMinusOne.compareTo(big) < 0);
+        assertTrue(new SQLDoubleLiteral(2.5).compareTo(new SQLLongLiteral(2)) > 0);
+    }
+}